@@ -0,0 +1,127 @@
+package benchmarks;
+
+import analysis.CallGraph;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.signatures.PackageName;
+import sootup.core.types.PrimitiveType;
+import sootup.java.core.types.JavaClassType;
+
+/**
+ * Measures the operations of {@link CallGraph} on a random graph with four edges per node on
+ * average. The queries cycle through precomputed arguments; half of the {@code hasEdge} queries ask
+ * for an edge that is absent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallGraphBenchmark {
+
+  @Param({"1000", "100000"})
+  public int edges;
+
+  private MethodSignature[] methods;
+  private MethodSignature[] sources;
+  private MethodSignature[] targets;
+  private CallGraph graph;
+
+  private MethodSignature[] querySources;
+  private MethodSignature[] queryTargets;
+  private int next = 0;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(42);
+    methods = new MethodSignature[Math.max(2, edges / 4)];
+    for (int i = 0; i < methods.length; i++) {
+      JavaClassType type = new JavaClassType("Class" + i / 16, new PackageName("benchmark"));
+      methods[i] =
+          new MethodSignature(
+              type, "method" + i, Collections.emptyList(), PrimitiveType.getBoolean());
+    }
+
+    Set<Long> added = new HashSet<>();
+    sources = new MethodSignature[edges];
+    targets = new MethodSignature[edges];
+    for (int i = 0; i < edges; ) {
+      int source = random.nextInt(methods.length);
+      int target = random.nextInt(methods.length);
+      if (added.add((long) source * methods.length + target)) {
+        sources[i] = methods[source];
+        targets[i] = methods[target];
+        i++;
+      }
+    }
+    graph = addEdges();
+
+    querySources = new MethodSignature[edges];
+    queryTargets = new MethodSignature[edges];
+    for (int i = 0; i < edges; i++) {
+      boolean present = i % 2 == 0;
+      querySources[i] = present ? sources[i] : methods[random.nextInt(methods.length)];
+      queryTargets[i] = present ? targets[i] : methods[random.nextInt(methods.length)];
+    }
+  }
+
+  private int nextQuery() {
+    int query = next;
+    next = next + 1 == edges ? 0 : next + 1;
+    return query;
+  }
+
+  /** Builds the whole graph: all nodes, then all edges. */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public CallGraph addEdges() {
+    CallGraph cg = new CallGraph("Benchmark");
+    for (MethodSignature method : methods) {
+      cg.addNode(method);
+    }
+    for (int i = 0; i < edges; i++) {
+      cg.addEdge(sources[i], targets[i]);
+    }
+    return cg;
+  }
+
+  @Benchmark
+  public boolean hasEdge() {
+    int query = nextQuery();
+    return graph.hasEdge(querySources[query], queryTargets[query]);
+  }
+
+  /** Iterates over the callees, since the returned view alone costs nothing. */
+  @Benchmark
+  public void edgesOutOf(Blackhole blackhole) {
+    for (MethodSignature callee : graph.edgesOutOf(sources[nextQuery()])) {
+      blackhole.consume(callee);
+    }
+  }
+
+  /** Iterates over the callers, since the returned view alone costs nothing. */
+  @Benchmark
+  public void edgesInto(Blackhole blackhole) {
+    for (MethodSignature caller : graph.edgesInto(targets[nextQuery()])) {
+      blackhole.consume(caller);
+    }
+  }
+}
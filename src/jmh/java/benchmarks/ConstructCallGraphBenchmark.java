@@ -0,0 +1,73 @@
+package benchmarks;
+
+import analysis.CallGraph;
+import analysis.CallGraphAlgorithm;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
+import analysis.exercise3.VTAAlgorithm;
+import analysis.exercise4.SparkLikeAlgorithm;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sootup.java.core.views.JavaView;
+
+/**
+ * Measures {@link CallGraphAlgorithm#constructCallGraph} per algorithm on the {@link Inputs}. The
+ * view is loaded and warmed up before measuring, so the numbers cover the algorithm rather than
+ * reading bytecode; every invocation starts with a fresh algorithm and thus fresh caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConstructCallGraphBenchmark {
+
+  @Param({"CHA", "RTA", "VTA", "SparkLike"})
+  public String algorithm;
+
+  @Param({Inputs.EXERCISE2, Inputs.TARGETS, Inputs.TESTS, Inputs.TESTS_AND_ANALYSIS})
+  public String input;
+
+  private JavaView view;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    view = Inputs.view(input);
+    newAlgorithm().constructCallGraph(view);
+  }
+
+  @Benchmark
+  public CallGraph constructCallGraph() {
+    return newAlgorithm().constructCallGraph(view);
+  }
+
+  @Nonnull
+  private CallGraphAlgorithm newAlgorithm() {
+    switch (algorithm) {
+      case "CHA":
+        return new CHAAlgorithm();
+      case "RTA":
+        return new RTAAlgorithm();
+      case "VTA":
+        return new VTAAlgorithm();
+      case "SparkLike":
+        return new SparkLikeAlgorithm();
+      default:
+        throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+    }
+  }
+}
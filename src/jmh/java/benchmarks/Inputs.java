@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import sootup.java.bytecode.inputlocation.JavaClassPathAnalysisInputLocation;
+import sootup.java.core.views.JavaView;
+
+/**
+ * The input programs of the benchmarks, from small to large, taken from the build output:
+ *
+ * <ul>
+ *   <li>{@code exercise2}: the target program of the RTA exercise, a dozen classes
+ *   <li>{@code targets}: the target programs of all exercises
+ *   <li>{@code tests}: all test classes, the targets included
+ *   <li>{@code tests+analysis}: the test classes and the analyses themselves
+ * </ul>
+ *
+ * Each input is copied to its own directory below {@code target/jmh-inputs}, leaving out the
+ * benchmarks, so it does not change with them.
+ */
+final class Inputs {
+  static final String EXERCISE2 = "exercise2";
+  static final String TARGETS = "targets";
+  static final String TESTS = "tests";
+  static final String TESTS_AND_ANALYSIS = "tests+analysis";
+
+  private static final Path CLASSES = Paths.get("target", "classes");
+  private static final Path TEST_CLASSES = Paths.get("target", "test-classes");
+
+  private Inputs() {}
+
+  @Nonnull
+  static JavaView view(@Nonnull String input) throws IOException {
+    Path copy = Paths.get("target", "jmh-inputs", input.replace('+', '-'));
+    delete(copy);
+    switch (input) {
+      case EXERCISE2:
+        copyClasses(TEST_CLASSES, "target/exercise2/", copy);
+        break;
+      case TARGETS:
+        copyClasses(TEST_CLASSES, "target/", copy);
+        break;
+      case TESTS:
+        copyClasses(TEST_CLASSES, "", copy);
+        break;
+      case TESTS_AND_ANALYSIS:
+        copyClasses(TEST_CLASSES, "", copy);
+        copyClasses(CLASSES, "", copy);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown input: " + input);
+    }
+    return new JavaView(new JavaClassPathAnalysisInputLocation(copy.toString()));
+  }
+
+  /** Copies the class files below {@code root} whose relative path starts with {@code prefix}. */
+  private static void copyClasses(@Nonnull Path root, @Nonnull String prefix, @Nonnull Path copy)
+      throws IOException {
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(root)) {
+      files = walk.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      String name = root.relativize(file).toString().replace('\\', '/');
+      if (name.startsWith(prefix) && !name.startsWith("benchmarks/")) {
+        Path target = copy.resolve(name);
+        Files.createDirectories(target.getParent());
+        Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+  }
+
+  private static void delete(@Nonnull Path directory) throws IOException {
+    if (!Files.exists(directory)) {
+      return;
+    }
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(directory)) {
+      files = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,219 @@
+package analysis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.core.jimple.common.stmt.Stmt;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.types.ClassType;
+import sootup.java.core.JavaSootMethod;
+import sootup.java.core.views.JavaView;
+
+/**
+ * Memoizes the statements of method bodies and their {@link MethodSummary}, so a body is looked up
+ * in the view, its statement list built and summarized once instead of on every scan. The cache
+ * holds bodies up to a total weight, one unit per statement, and evicts the least recently used
+ * ones beyond it. One instance can be shared by all {@link CallGraphAlgorithm}s analyzing the same
+ * {@link JavaView}, see {@link CallGraphAlgorithm#setBodyCache(BodyCache)}.
+ *
+ * <p>In summary mode only the summary of each body is kept, weighing one unit per entry. {@link
+ * #statementsOf} then reads the body from the view every time.
+ *
+ * <p>Safe for concurrent use. Two threads missing on the same method may both load it; the bodies
+ * are equal, so it does not matter whose entry stays.
+ */
+public class BodyCache {
+  /** Enough for the bodies of a mid-sized application, about 64k statements. */
+  public static final long DEFAULT_MAX_WEIGHT = 1 << 16;
+
+  /** Cached for methods without a body, so they are not looked up again. */
+  @Nonnull private static final Entry NO_BODY = new Entry(null, null, 1);
+
+  @Nonnull private final JavaView view;
+  private final long maxWeight;
+  private final boolean summariesOnly;
+
+  /** In access order, the least recently used entry first. Guarded by {@code this}. */
+  @Nonnull
+  private final LinkedHashMap<MethodSignature, Entry> entries =
+      new LinkedHashMap<>(64, 0.75f, true);
+
+  private long weight = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  private static final class Entry {
+    /** Null in summary mode. */
+    @Nullable final List<Stmt> statements;
+
+    @Nullable final MethodSummary summary;
+    final long weight;
+
+    Entry(@Nullable List<Stmt> statements, @Nullable MethodSummary summary, long weight) {
+      this.statements = statements;
+      this.summary = summary;
+      this.weight = weight;
+    }
+  }
+
+  public BodyCache(@Nonnull JavaView view) {
+    this(view, DEFAULT_MAX_WEIGHT, false);
+  }
+
+  /**
+   * @param maxWeight total weight of the cached entries; the most recent entry is kept even if it
+   *     weighs more
+   * @param summariesOnly whether to keep the summary of a body without its statements
+   */
+  public BodyCache(@Nonnull JavaView view, long maxWeight, boolean summariesOnly) {
+    if (maxWeight < 1) {
+      throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+    }
+    this.view = view;
+    this.maxWeight = maxWeight;
+    this.summariesOnly = summariesOnly;
+  }
+
+  public boolean isFor(@Nonnull JavaView view) {
+    return this.view == view;
+  }
+
+  /**
+   * Returns a cache for {@code view}, a later version of the program of this cache, holding the
+   * bodies of this cache except those of the methods of {@code changedTypes}.
+   */
+  @Nonnull
+  public synchronized BodyCache retainedFor(
+      @Nonnull JavaView view, @Nonnull Collection<ClassType> changedTypes) {
+    Set<ClassType> changed = new HashSet<>(changedTypes);
+    BodyCache retained = new BodyCache(view, maxWeight, summariesOnly);
+    entries.forEach(
+        (method, entry) -> {
+          if (!changed.contains(method.getDeclClassType())) {
+            retained.entries.put(method, entry);
+            retained.weight += entry.weight;
+          }
+        });
+    return retained;
+  }
+
+  public boolean isSummariesOnly() {
+    return summariesOnly;
+  }
+
+  /** The statements of the body of {@code method}, read-only; null if it has none. */
+  @Nullable
+  public List<Stmt> statementsOf(@Nonnull MethodSignature method) {
+    if (!summariesOnly) {
+      return entryOf(method).statements;
+    }
+    synchronized (this) {
+      misses++;
+    }
+    return loadStatements(method);
+  }
+
+  /** The summary of the body of {@code method}; null if it has none. */
+  @Nullable
+  public MethodSummary summaryOf(@Nonnull MethodSignature method) {
+    return entryOf(method).summary;
+  }
+
+  @Nonnull
+  private Entry entryOf(@Nonnull MethodSignature method) {
+    synchronized (this) {
+      Entry entry = entries.get(method);
+      if (entry != null) {
+        hits++;
+        return entry;
+      }
+      misses++;
+    }
+    Entry loaded = load(method);
+    synchronized (this) {
+      Entry previous = entries.put(method, loaded);
+      if (previous != null) {
+        weight -= previous.weight;
+      }
+      weight += loaded.weight;
+      evict();
+    }
+    return loaded;
+  }
+
+  /** Drops the least recently used entries until the cache fits, keeping the newest one. */
+  private void evict() {
+    Iterator<Entry> eldest = entries.values().iterator();
+    while (weight > maxWeight && entries.size() > 1) {
+      weight -= eldest.next().weight;
+      eldest.remove();
+      evictions++;
+    }
+  }
+
+  @Nonnull
+  private Entry load(@Nonnull MethodSignature method) {
+    List<Stmt> statements = loadStatements(method);
+    if (statements == null) {
+      return NO_BODY;
+    }
+    MethodSummary summary = MethodSummary.of(statements);
+    if (summariesOnly) {
+      return new Entry(null, summary, summary.size() + 1);
+    }
+    return new Entry(statements, summary, statements.size() + 1);
+  }
+
+  @Nullable
+  private List<Stmt> loadStatements(@Nonnull MethodSignature method) {
+    Optional<JavaSootMethod> javaMethod = view.getMethod(method);
+    if (!javaMethod.isPresent() || !javaMethod.get().hasBody()) {
+      return null;
+    }
+    return Collections.unmodifiableList(javaMethod.get().getBody().getStmts());
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /** The total weight of the cached entries. */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "BodyCache{entries="
+        + entries.size()
+        + ", weight="
+        + weight
+        + ", hits="
+        + hits
+        + ", misses="
+        + misses
+        + ", evictions="
+        + evictions
+        + '}';
+  }
+}
@@ -1,9 +1,12 @@
 package analysis;
 
+import java.util.AbstractSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import sootup.core.signatures.MethodSignature;
 
@@ -13,11 +16,28 @@ public class CallGraph {
 
   @Nonnull private final Set<Edge<MethodSignature, MethodSignature>> edges;
 
+  /** Adjacency indexes kept in sync with {@link #edges}, so neighbor queries cost O(degree). */
+  @Nonnull private final Map<MethodSignature, Set<MethodSignature>> successors;
+
+  @Nonnull private final Map<MethodSignature, Set<MethodSignature>> predecessors;
+
   public CallGraph(@Nonnull String algorithm) {
+    this(algorithm, new HashSet<>(), new HashSet<>(), new HashMap<>(), new HashMap<>());
+  }
+
+  /** Lets subclasses choose the backing collections, e.g. concurrent ones. */
+  protected CallGraph(
+      @Nonnull String algorithm,
+      @Nonnull Set<MethodSignature> nodes,
+      @Nonnull Set<Edge<MethodSignature, MethodSignature>> edges,
+      @Nonnull Map<MethodSignature, Set<MethodSignature>> successors,
+      @Nonnull Map<MethodSignature, Set<MethodSignature>> predecessors) {
     this.algorithm = algorithm;
 
-    nodes = new HashSet<>();
-    edges = new HashSet<>();
+    this.nodes = nodes;
+    this.edges = edges;
+    this.successors = successors;
+    this.predecessors = predecessors;
   }
 
   public CallGraph(@Nonnull String algorithm, @Nonnull CallGraph cg) {
@@ -25,25 +45,59 @@ public class CallGraph {
 
     nodes.addAll(cg.nodes);
     edges.addAll(cg.edges);
+    cg.successors.forEach((m, targets) -> adjacencySetOf(m, successors).addAll(targets));
+    cg.predecessors.forEach((m, sources) -> adjacencySetOf(m, predecessors).addAll(sources));
   }
 
+  /** Returns the adjacency set of {@code m} in {@code index}, creating it if needed. */
+  @Nonnull
+  protected Set<MethodSignature> adjacencySetOf(
+      @Nonnull MethodSignature m, @Nonnull Map<MethodSignature, Set<MethodSignature>> index) {
+    return index.computeIfAbsent(m, k -> new HashSet<>());
+  }
+
+  /**
+   * Read-only view; use {@link #addNode(MethodSignature)}, {@link #removeNode(MethodSignature)} and
+   * {@link #clear()} to modify.
+   */
   public Set<MethodSignature> getNodes() {
-    return this.nodes;
+    return Collections.unmodifiableSet(this.nodes);
   }
 
-    public Set<Edge<MethodSignature, MethodSignature>> getEdges() {
-        return this.edges;
-    }
+  /** Read-only view; use {@link #addEdge(MethodSignature, MethodSignature)} to modify. */
+  public Set<Edge<MethodSignature, MethodSignature>> getEdges() {
+    return Collections.unmodifiableSet(this.edges);
+  }
 
   public void addNode(@Nonnull MethodSignature method) {
-    if (nodes.contains(method)) {
+    if (!addNodeIfAbsent(method)) {
       throw new IllegalArgumentException(
           "Call graph already contains method: " + method.toString());
     }
-    nodes.add(method);
+  }
+
+  /**
+   * Adds {@code method} unless it is already a node.
+   *
+   * @return whether the node was added by this call
+   */
+  public boolean addNodeIfAbsent(@Nonnull MethodSignature method) {
+    return nodes.add(method);
   }
 
   public void addEdge(@Nonnull MethodSignature source, @Nonnull MethodSignature target) {
+    if (!addEdgeIfAbsent(source, target)) {
+      throw new IllegalArgumentException(
+          "Call graph already contains edge: " + new Edge<>(source, target));
+    }
+  }
+
+  /**
+   * Adds the edge unless it is already present. Both nodes must have been added before.
+   *
+   * @return whether the edge was added by this call
+   */
+  public boolean addEdgeIfAbsent(@Nonnull MethodSignature source, @Nonnull MethodSignature target) {
     if (!nodes.contains(source)) {
       throw new IllegalArgumentException(
           "Call graph does not contain source node. Please add source node first. "
@@ -55,12 +109,71 @@ public class CallGraph {
               + target.toString());
     }
 
-    Edge<MethodSignature, MethodSignature> edge = new Edge<>(source, target);
-    if (edges.contains(edge)) {
-      throw new IllegalArgumentException("Call graph already contains edge: " + edge);
+    // the successor row decides who wins, so hasEdge and edgesOutOf agree at all times
+    if (!adjacencySetOf(source, successors).add(target)) {
+      return false;
     }
+    adjacencySetOf(target, predecessors).add(source);
+    edges.add(new Edge<>(source, target));
+    return true;
+  }
 
-    edges.add(edge);
+  /**
+   * Returns an immutable, int-interned snapshot of this call graph for read-only use once
+   * construction has finished. Later changes to this call graph are not reflected.
+   */
+  @Nonnull
+  public FrozenCallGraph freeze() {
+    return new FrozenCallGraph(algorithm, nodes, successors);
+  }
+
+  /**
+   * Removes {@code method} and the edges from and to it.
+   *
+   * @return whether it was a node
+   */
+  public boolean removeNode(@Nonnull MethodSignature method) {
+    if (!nodes.contains(method)) {
+      return false;
+    }
+    Set<MethodSignature> targets = successors.remove(method);
+    if (targets != null) {
+      for (MethodSignature target : targets) {
+        predecessors.get(target).remove(method);
+        edges.remove(new Edge<>(method, target));
+      }
+    }
+    Set<MethodSignature> sources = predecessors.remove(method);
+    if (sources != null) {
+      for (MethodSignature source : sources) {
+        successors.get(source).remove(method);
+        edges.remove(new Edge<>(source, method));
+      }
+    }
+    return nodes.remove(method);
+  }
+
+  /**
+   * Removes the edge if it is present; its nodes stay.
+   *
+   * @return whether the edge was removed by this call
+   */
+  public boolean removeEdge(@Nonnull MethodSignature source, @Nonnull MethodSignature target) {
+    Set<MethodSignature> targets = successors.get(source);
+    if (targets == null || !targets.remove(target)) {
+      return false;
+    }
+    predecessors.get(target).remove(source);
+    edges.remove(new Edge<>(source, target));
+    return true;
+  }
+
+  /** Removes all nodes and edges. */
+  public void clear() {
+    nodes.clear();
+    edges.clear();
+    successors.clear();
+    predecessors.clear();
   }
 
   public boolean hasNode(@Nonnull MethodSignature m) {
@@ -68,30 +181,63 @@ public class CallGraph {
   }
 
   public boolean hasEdge(@Nonnull MethodSignature source, @Nonnull MethodSignature target) {
-    return edges.contains(new Edge<>(source, target));
+    Set<MethodSignature> targets = successors.get(source);
+    return targets != null && targets.contains(target);
   }
 
+  /**
+   * Returns a live, read-only view of the callees of {@code origin}. It follows later changes to
+   * this call graph, also if {@code origin} had no callees or was no node when it was returned.
+   */
   @Nonnull
   public Set<MethodSignature> edgesOutOf(@Nonnull MethodSignature origin) {
-    if (!nodes.contains(origin)) {
-      return Collections.emptySet();
-    }
-
-    return edges.stream()
-        .filter(edge -> edge.source.equals(origin))
-        .map(edge -> edge.target)
-        .collect(Collectors.toSet());
+    return new AdjacencyView(successors, origin);
   }
 
+  /** Returns a live, read-only view of the callers of {@code target}, like {@link #edgesOutOf}. */
   @Nonnull
   public Set<MethodSignature> edgesInto(MethodSignature target) {
-    if (!nodes.contains(target)) {
-      return Collections.emptySet();
+    return new AdjacencyView(predecessors, target);
+  }
+
+  /**
+   * Read-only view of the adjacency set of one node. The set is looked up on every access, as it
+   * is only created with the first edge and dropped again when the node is removed.
+   */
+  private static final class AdjacencyView extends AbstractSet<MethodSignature> {
+    @Nonnull private final Map<MethodSignature, Set<MethodSignature>> index;
+    @Nonnull private final MethodSignature node;
+
+    AdjacencyView(
+        @Nonnull Map<MethodSignature, Set<MethodSignature>> index, @Nonnull MethodSignature node) {
+      this.index = index;
+      this.node = node;
+    }
+
+    @Nonnull
+    private Set<MethodSignature> row() {
+      Set<MethodSignature> row = index.get(node);
+      return row == null ? Collections.emptySet() : row;
+    }
+
+    @Override
+    public Iterator<MethodSignature> iterator() {
+      return Collections.unmodifiableSet(row()).iterator();
     }
 
-    return edges.stream()
-        .filter(edge -> edge.target.equals(target))
-        .map(edge -> edge.source)
-        .collect(Collectors.toSet());
+    @Override
+    public int size() {
+      return row().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return row().isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return row().contains(o);
+    }
   }
 }
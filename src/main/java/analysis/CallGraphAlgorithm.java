@@ -1,32 +1,137 @@
 package analysis;
 
+import java.util.Collection;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import sootup.core.model.SootClassMember;
+import sootup.core.model.SootMethod;
 import sootup.core.signatures.MethodSignature;
+import sootup.core.types.ClassType;
 import sootup.java.core.views.JavaView;
 
 public abstract class CallGraphAlgorithm {
   protected JavaView view;
 
+  @Nullable private DispatchCache dispatchCache;
+  @Nullable private BodyCache bodyCache;
+  @Nullable private ResultCache resultCache;
+
+  @Nonnull protected ReachableMethods reachableMethods = new ReachableMethods();
+
   @Nonnull
   public CallGraph constructCallGraph(@Nonnull JavaView view) {
     this.view = view;
-    CallGraph cg = new CallGraph(getAlgorithm());
+    this.reachableMethods = new ReachableMethods();
+    if (resultCache != null) {
+      CallGraph cached = resultCache.load(view, getAlgorithm(), getOptions());
+      if (cached != null) {
+        cached.getNodes().forEach(reachableMethods::markReachable);
+        return cached;
+      }
+    }
+    CallGraph cg = createCallGraph();
     populateCallGraph(view, cg);
+    if (resultCache != null) {
+      resultCache.store(view, getOptions(), cg);
+    }
     return cg;
   }
 
+  /**
+   * Patches {@code cg}, constructed by this algorithm for an earlier version of the program, to the
+   * program in {@code view}, in which {@code changedTypes} were added, removed or modified. {@link
+   * #getReachableMethods()} then holds the bodies the update scanned.
+   *
+   * <p>By default the graph is rebuilt in place; algorithms that can limit the work to the methods
+   * affected by the change override this.
+   */
+  public void updateCallGraph(
+      @Nonnull JavaView view, @Nonnull CallGraph cg, @Nonnull Collection<ClassType> changedTypes) {
+    rebuildCallGraph(view, cg);
+  }
+
+  /** Clears {@code cg} and populates it for {@code view}, bypassing the result cache. */
+  protected void rebuildCallGraph(@Nonnull JavaView view, @Nonnull CallGraph cg) {
+    this.view = view;
+    this.reachableMethods = new ReachableMethods();
+    cg.clear();
+    populateCallGraph(view, cg);
+  }
+
+  /** Creates the empty call graph that {@link #constructCallGraph(JavaView)} populates. */
+  @Nonnull
+  protected CallGraph createCallGraph() {
+    return new CallGraph(getAlgorithm());
+  }
+
+  /** Reachable methods and body-visit statistics of the last run. */
+  @Nonnull
+  public ReachableMethods getReachableMethods() {
+    return reachableMethods;
+  }
+
+  /** Shares dispatch results with other algorithms that analyze the same view. */
+  public void setDispatchCache(@Nonnull DispatchCache dispatchCache) {
+    this.dispatchCache = dispatchCache;
+  }
+
+  /** Returns the shared dispatch cache, or a fresh one if none was set for {@code view}. */
+  @Nonnull
+  protected DispatchCache getDispatchCache(@Nonnull JavaView view) {
+    if (dispatchCache == null || !dispatchCache.isFor(view)) {
+      dispatchCache = new DispatchCache(view);
+    }
+    return dispatchCache;
+  }
+
+  /** Shares method bodies with other algorithms that analyze the same view. */
+  public void setBodyCache(@Nonnull BodyCache bodyCache) {
+    this.bodyCache = bodyCache;
+  }
+
+  /** Returns the shared body cache, or a fresh one if none was set for {@code view}. */
+  @Nonnull
+  protected BodyCache getBodyCache(@Nonnull JavaView view) {
+    if (bodyCache == null || !bodyCache.isFor(view)) {
+      bodyCache = new BodyCache(view);
+    }
+    return bodyCache;
+  }
+
+  /**
+   * Reads the call graph from {@code resultCache} if it holds one for this algorithm and options,
+   * and stores it there otherwise. The analyzed views must be created by {@link
+   * ResultCache#createView()}. A call graph read from the cache leaves no body visits or other
+   * intermediate results.
+   */
+  public void setResultCache(@Nonnull ResultCache resultCache) {
+    this.resultCache = resultCache;
+  }
+
   @Nonnull
   protected Stream<MethodSignature> getEntryPoints(@Nonnull JavaView view) {
     return view.getClasses().stream()
         .flatMap(c -> c.getMethods().stream())
-        .filter(m -> m.getName().contains("main") && m.hasBody())
+        .filter(this::isEntryPoint)
         .map(SootClassMember::getSignature);
   }
 
+  protected boolean isEntryPoint(@Nonnull SootMethod method) {
+    return method.getName().contains("main") && method.hasBody();
+  }
+
   protected abstract void populateCallGraph(@Nonnull JavaView view, @Nonnull CallGraph cg);
 
   @Nonnull
   protected abstract String getAlgorithm();
+
+  /**
+   * Describes the options that change the call graph, for the key of the {@link ResultCache}.
+   * Options that only change how it is computed, such as the number of threads, are left out.
+   */
+  @Nonnull
+  protected String getOptions() {
+    return "";
+  }
 }
@@ -0,0 +1,442 @@
+package analysis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import javax.annotation.Nonnull;
+import sootup.core.signatures.MethodSignature;
+import sootup.java.core.JavaIdentifierFactory;
+
+/**
+ * A {@link CallGraph} saved to a file, read through a memory mapping. Queries decode only the
+ * bytes they need: a method is found by binary search over the string table and an adjacency row
+ * is decoded when asked for, so opening a file costs the same for any graph size.
+ *
+ * <p>The format, all integers big-endian:
+ *
+ * <pre>
+ *   header     magic "CGRF", version, node count, edge count, algorithm length (5 ints)
+ *   algorithm  UTF-8 bytes
+ *   strings    node count + 1 offsets (ints) into the UTF-8 signature bytes that follow; the
+ *              signatures are sorted by their bytes, a method's id is its position
+ *   callees    node count + 1 offsets (ints) into the rows that follow
+ *   callers    the same for the callers
+ * </pre>
+ *
+ * A row is the varint-encoded number of neighbors followed by the ascending neighbor ids, each
+ * varint-encoded as the difference to the previous one. Files are limited to 2 GiB.
+ */
+public final class CallGraphFile {
+  private static final int MAGIC = 0x43475246;
+  public static final int VERSION = 1;
+  private static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+  private static final Comparator<byte[]> BYTE_ORDER =
+      (a, b) -> {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+          int difference = (a[i] & 0xff) - (b[i] & 0xff);
+          if (difference != 0) {
+            return difference;
+          }
+        }
+        return a.length - b.length;
+      };
+
+  @Nonnull public final String algorithm;
+
+  @Nonnull private final ByteBuffer buffer;
+  private final int nodeCount;
+  private final int edgeCount;
+  private final int stringsStart;
+  private final int outStart;
+  private final int inStart;
+
+  /** Signatures decoded so far, by id. */
+  @Nonnull private final MethodSignature[] signatures;
+
+  private CallGraphFile(@Nonnull ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a call graph file");
+    }
+    int version = buffer.getInt(4);
+    if (version != VERSION) {
+      throw new IOException("Unsupported call graph file version: " + version);
+    }
+    nodeCount = buffer.getInt(8);
+    edgeCount = buffer.getInt(12);
+    int algorithmLength = buffer.getInt(16);
+    if (nodeCount < 0
+        || edgeCount < 0
+        || algorithmLength < 0
+        || HEADER_SIZE + (long) algorithmLength > buffer.capacity()) {
+      throw truncated();
+    }
+    algorithm = decode(HEADER_SIZE, algorithmLength);
+
+    stringsStart = HEADER_SIZE + algorithmLength;
+    outStart = sectionEnd(stringsStart);
+    inStart = sectionEnd(outStart);
+    sectionEnd(inStart);
+    signatures = new MethodSignature[nodeCount];
+  }
+
+  /**
+   * Returns where the section at {@code sectionStart} ends, after checking that its offset table
+   * and its last offset lie within the buffer.
+   */
+  private int sectionEnd(int sectionStart) throws IOException {
+    long dataStart = sectionStart + (nodeCount + 1L) * Integer.BYTES;
+    if (dataStart > buffer.capacity()) {
+      throw truncated();
+    }
+    int size = buffer.getInt(offsetPosition(sectionStart, nodeCount));
+    if (size < 0 || dataStart + size > buffer.capacity()) {
+      throw truncated();
+    }
+    return (int) dataStart + size;
+  }
+
+  @Nonnull
+  private static IOException truncated() {
+    return new IOException("Truncated call graph file");
+  }
+
+  /** Maps {@code file} into memory; the mapping stays valid after the file is closed. */
+  @Nonnull
+  public static CallGraphFile open(@Nonnull Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new CallGraphFile(buffer);
+    }
+  }
+
+  /** Writes {@code cg} to {@code file}, replacing its content. */
+  public static void write(@Nonnull CallGraph cg, @Nonnull Path file) throws IOException {
+    Map<MethodSignature, byte[]> encoded = new HashMap<>();
+    for (MethodSignature method : cg.getNodes()) {
+      encoded.put(method, method.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    MethodSignature[] methods = encoded.keySet().toArray(new MethodSignature[0]);
+    Arrays.sort(methods, (a, b) -> BYTE_ORDER.compare(encoded.get(a), encoded.get(b)));
+    byte[][] strings = new byte[methods.length][];
+    Map<MethodSignature, Integer> ids = new HashMap<>();
+    for (int id = 0; id < methods.length; id++) {
+      strings[id] = encoded.get(methods[id]);
+      ids.put(methods[id], id);
+    }
+
+    ByteBuffer[] sections = {
+      null,
+      ByteBuffer.wrap(cg.algorithm.getBytes(StandardCharsets.UTF_8)),
+      strings(strings),
+      rows(methods, ids, cg::edgesOutOf),
+      rows(methods, ids, cg::edgesInto)
+    };
+    sections[0] =
+        ByteBuffer.allocate(HEADER_SIZE)
+            .putInt(MAGIC)
+            .putInt(VERSION)
+            .putInt(methods.length)
+            .putInt(cg.getEdges().size())
+            .putInt(sections[1].remaining());
+    sections[0].flip();
+
+    try (FileChannel channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      long remaining = 0;
+      for (ByteBuffer section : sections) {
+        remaining += section.remaining();
+      }
+      while (remaining > 0) {
+        remaining -= channel.write(sections);
+      }
+    }
+  }
+
+  @Nonnull
+  private static ByteBuffer strings(@Nonnull byte[][] strings) {
+    int size = 0;
+    for (byte[] string : strings) {
+      size += string.length;
+    }
+    ByteBuffer section = ByteBuffer.allocate((strings.length + 1) * Integer.BYTES + size);
+    int offset = 0;
+    for (byte[] string : strings) {
+      section.putInt(offset);
+      offset += string.length;
+    }
+    section.putInt(offset);
+    for (byte[] string : strings) {
+      section.put(string);
+    }
+    section.flip();
+    return section;
+  }
+
+  private interface Neighbors {
+    @Nonnull
+    Set<MethodSignature> of(@Nonnull MethodSignature method);
+  }
+
+  /** Encodes one row per method, see the class comment. */
+  @Nonnull
+  private static ByteBuffer rows(
+      @Nonnull MethodSignature[] methods,
+      @Nonnull Map<MethodSignature, Integer> ids,
+      @Nonnull Neighbors neighbors) {
+    int[] offsets = new int[methods.length + 1];
+    ByteBuffer rows = ByteBuffer.allocate(64);
+    for (int id = 0; id < methods.length; id++) {
+      Set<MethodSignature> row = neighbors.of(methods[id]);
+      int[] neighborIds = new int[row.size()];
+      int i = 0;
+      for (MethodSignature neighbor : row) {
+        neighborIds[i++] = ids.get(neighbor);
+      }
+      Arrays.sort(neighborIds);
+      // a varint takes at most five bytes
+      int maxRowSize = (neighborIds.length + 1) * 5;
+      if (rows.remaining() < maxRowSize) {
+        ByteBuffer grown =
+            ByteBuffer.allocate(Math.max(rows.capacity() * 2, rows.position() + maxRowSize));
+        rows.flip();
+        rows = grown.put(rows);
+      }
+      putVarInt(rows, neighborIds.length);
+      int previous = 0;
+      for (int neighbor : neighborIds) {
+        putVarInt(rows, neighbor - previous);
+        previous = neighbor;
+      }
+      offsets[id + 1] = rows.position();
+    }
+    rows.flip();
+
+    ByteBuffer section = ByteBuffer.allocate(offsets.length * Integer.BYTES + rows.remaining());
+    for (int offset : offsets) {
+      section.putInt(offset);
+    }
+    section.put(rows).flip();
+    return section;
+  }
+
+  private static void putVarInt(@Nonnull ByteBuffer buffer, int value) {
+    while ((value & ~0x7f) != 0) {
+      buffer.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private int offsetsSize() {
+    return (nodeCount + 1) * Integer.BYTES;
+  }
+
+  private static int offsetPosition(int sectionStart, int index) {
+    return sectionStart + index * Integer.BYTES;
+  }
+
+  @Nonnull
+  private String decode(int position, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(position + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public int nodeCount() {
+    return nodeCount;
+  }
+
+  public int edgeCount() {
+    return edgeCount;
+  }
+
+  /** Returns the id of {@code m}, or -1 if it is not part of the call graph. */
+  public int idOf(@Nonnull MethodSignature m) {
+    byte[] key = m.toString().getBytes(StandardCharsets.UTF_8);
+    int bytesStart = stringsStart + offsetsSize();
+    int low = 0;
+    int high = nodeCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int from = buffer.getInt(offsetPosition(stringsStart, mid));
+      int to = buffer.getInt(offsetPosition(stringsStart, mid + 1));
+      int comparison = compare(bytesStart + from, to - from, key);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /** Compares the stored bytes at {@code position} with {@code key}, like {@link #BYTE_ORDER}. */
+  private int compare(int position, int length, @Nonnull byte[] key) {
+    int common = Math.min(length, key.length);
+    for (int i = 0; i < common; i++) {
+      int difference = (buffer.get(position + i) & 0xff) - (key[i] & 0xff);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return length - key.length;
+  }
+
+  @Nonnull
+  public MethodSignature signatureOf(int id) {
+    MethodSignature signature = signatures[id];
+    if (signature == null) {
+      int from = buffer.getInt(offsetPosition(stringsStart, id));
+      int to = buffer.getInt(offsetPosition(stringsStart, id + 1));
+      String string = decode(stringsStart + offsetsSize() + from, to - from);
+      signature = JavaIdentifierFactory.getInstance().parseMethodSignature(string);
+      signatures[id] = signature;
+    }
+    return signature;
+  }
+
+  public boolean hasNode(@Nonnull MethodSignature m) {
+    return idOf(m) >= 0;
+  }
+
+  public boolean hasEdge(@Nonnull MethodSignature source, @Nonnull MethodSignature target) {
+    int sourceId = idOf(source);
+    int targetId = idOf(target);
+    return sourceId >= 0 && targetId >= 0 && hasEdge(sourceId, targetId);
+  }
+
+  /** Scans the callee row of {@code sourceId} up to {@code targetId}; rows are sorted. */
+  public boolean hasEdge(int sourceId, int targetId) {
+    int[] position = {rowPosition(outStart, sourceId)};
+    int degree = getVarInt(position);
+    int neighbor = 0;
+    for (int i = 0; i < degree; i++) {
+      neighbor += getVarInt(position);
+      if (neighbor >= targetId) {
+        return neighbor == targetId;
+      }
+    }
+    return false;
+  }
+
+  public int outDegree(int id) {
+    return degree(outStart, id);
+  }
+
+  public int inDegree(int id) {
+    return degree(inStart, id);
+  }
+
+  private int degree(int sectionStart, int id) {
+    return getVarInt(new int[] {rowPosition(sectionStart, id)});
+  }
+
+  public void forEachSuccessor(int id, @Nonnull IntConsumer action) {
+    forEachNeighbor(outStart, id, action);
+  }
+
+  public void forEachPredecessor(int id, @Nonnull IntConsumer action) {
+    forEachNeighbor(inStart, id, action);
+  }
+
+  private void forEachNeighbor(int sectionStart, int id, @Nonnull IntConsumer action) {
+    int[] position = {rowPosition(sectionStart, id)};
+    int degree = getVarInt(position);
+    int neighbor = 0;
+    for (int i = 0; i < degree; i++) {
+      neighbor += getVarInt(position);
+      action.accept(neighbor);
+    }
+  }
+
+  /** Where the data of entry {@code id} of a section starts; the node count yields its end. */
+  private int rowPosition(int sectionStart, int id) {
+    return sectionStart + offsetsSize() + buffer.getInt(offsetPosition(sectionStart, id));
+  }
+
+  /** Reads the varint at {@code position[0]} and advances past it. */
+  private int getVarInt(@Nonnull int[] position) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get(position[0]++);
+      value |= (b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  /** The callees of {@code origin}, decoded from their row; empty if it is no node. */
+  @Nonnull
+  public Set<MethodSignature> edgesOutOf(@Nonnull MethodSignature origin) {
+    return neighbors(outStart, origin);
+  }
+
+  /** The callers of {@code target}, decoded from their row; empty if it is no node. */
+  @Nonnull
+  public Set<MethodSignature> edgesInto(@Nonnull MethodSignature target) {
+    return neighbors(inStart, target);
+  }
+
+  @Nonnull
+  private Set<MethodSignature> neighbors(int sectionStart, @Nonnull MethodSignature method) {
+    int id = idOf(method);
+    if (id < 0) {
+      return Collections.emptySet();
+    }
+    Set<MethodSignature> neighbors = new LinkedHashSet<>();
+    forEachNeighbor(sectionStart, id, neighbor -> neighbors.add(signatureOf(neighbor)));
+    return Collections.unmodifiableSet(neighbors);
+  }
+
+  /** Decodes the whole file into a modifiable call graph. */
+  @Nonnull
+  public CallGraph toCallGraph() {
+    CallGraph cg = new CallGraph(algorithm);
+    for (int id = 0; id < nodeCount; id++) {
+      cg.addNode(signatureOf(id));
+    }
+    for (int id = 0; id < nodeCount; id++) {
+      MethodSignature source = signatureOf(id);
+      forEachSuccessor(id, target -> cg.addEdge(source, signatureOf(target)));
+    }
+    return cg;
+  }
+
+  @Override
+  public String toString() {
+    return "CallGraphFile{algorithm="
+        + algorithm
+        + ", nodes="
+        + nodeCount
+        + ", edges="
+        + edgeCount
+        + ", bytes="
+        + buffer.capacity()
+        + '}';
+  }
+}
@@ -0,0 +1,46 @@
+package analysis;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import sootup.core.signatures.MethodSignature;
+
+/**
+ * Thread-safe {@link CallGraph} for parallel construction. All collections are backed by {@link
+ * ConcurrentHashMap}s, so insertion is lock-free on reads and striped on writes, and {@link
+ * #addNodeIfAbsent(MethodSignature)} / {@link #addEdgeIfAbsent(MethodSignature, MethodSignature)}
+ * report atomically which thread inserted an element.
+ *
+ * <p>Iterators are weakly consistent: they never throw {@link
+ * java.util.ConcurrentModificationException} and see every element that was present when they
+ * were created. An edge becomes visible in {@link #hasEdge} and {@link #edgesOutOf} at the same
+ * moment, slightly before it shows up in {@link #edgesInto} and {@link #getEdges()}; its nodes are
+ * always visible before the edge. {@link #freeze()}, {@link #clear()} and the removals must only
+ * be called once all writers have finished.
+ */
+public class ConcurrentCallGraph extends CallGraph {
+
+  public ConcurrentCallGraph(@Nonnull String algorithm) {
+    super(
+        algorithm,
+        ConcurrentHashMap.newKeySet(),
+        ConcurrentHashMap.newKeySet(),
+        new ConcurrentHashMap<>(),
+        new ConcurrentHashMap<>());
+  }
+
+  public ConcurrentCallGraph(@Nonnull String algorithm, @Nonnull CallGraph cg) {
+    this(algorithm);
+
+    cg.getNodes().forEach(this::addNodeIfAbsent);
+    cg.getEdges().forEach(edge -> addEdgeIfAbsent(edge.source, edge.target));
+  }
+
+  @Nonnull
+  @Override
+  protected Set<MethodSignature> adjacencySetOf(
+      @Nonnull MethodSignature m, @Nonnull Map<MethodSignature, Set<MethodSignature>> index) {
+    return index.computeIfAbsent(m, k -> ConcurrentHashMap.newKeySet());
+  }
+}
@@ -0,0 +1,246 @@
+package analysis;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.signatures.MethodSubSignature;
+import sootup.core.types.ClassType;
+import sootup.java.core.JavaSootClass;
+import sootup.java.core.JavaSootMethod;
+import sootup.java.core.views.JavaView;
+
+/**
+ * Memoizes method resolution per (class type, method sub-signature), so the type hierarchy is
+ * walked once per pair instead of once per call site. One instance can be shared by all {@link
+ * CallGraphAlgorithm}s analyzing the same {@link JavaView}, see {@link
+ * CallGraphAlgorithm#setDispatchCache(DispatchCache)}.
+ *
+ * <p>Safe for concurrent use. Two threads missing on the same pair may both resolve it; resolution
+ * is deterministic, so they agree and the first stored result wins.
+ */
+public class DispatchCache {
+  @Nonnull private final JavaView view;
+  @Nonnull private final TypeHierarchyIndex hierarchy;
+
+  @Nonnull
+  private final ConcurrentMap<ClassType, ConcurrentMap<MethodSubSignature, Optional<MethodSignature>>>
+      dispatched = new ConcurrentHashMap<>();
+
+  @Nonnull
+  private final ConcurrentMap<ClassType, ConcurrentMap<MethodSubSignature, Optional<MethodSignature>>>
+      declared = new ConcurrentHashMap<>();
+
+  @Nonnull
+  private final ConcurrentMap<ClassType, ConcurrentMap<MethodSubSignature, Set<MethodSignature>>>
+      virtualTargets = new ConcurrentHashMap<>();
+
+  @Nonnull private final LongAdder hits = new LongAdder();
+  @Nonnull private final LongAdder misses = new LongAdder();
+
+  public DispatchCache(@Nonnull JavaView view) {
+    this(view, new TypeHierarchyIndex(view));
+  }
+
+  public DispatchCache(@Nonnull JavaView view, @Nonnull TypeHierarchyIndex hierarchy) {
+    this.view = view;
+    this.hierarchy = hierarchy;
+  }
+
+  public boolean isFor(@Nonnull JavaView view) {
+    return this.view == view;
+  }
+
+  @Nonnull
+  public TypeHierarchyIndex getHierarchy() {
+    return hierarchy;
+  }
+
+  /**
+   * Returns the implementation that runs when {@code subSignature} is invoked on an object of
+   * runtime type {@code type}. Empty for abstract types, interfaces and unknown types.
+   */
+  @Nonnull
+  public Optional<MethodSignature> dispatch(
+      @Nonnull ClassType type, @Nonnull MethodSubSignature subSignature) {
+    Optional<MethodSignature> target = cached(dispatched, type, subSignature);
+    if (target == null) {
+      target = store(dispatched, type, subSignature, findMethod(type, subSignature, true));
+    }
+    return target;
+  }
+
+  /**
+   * Returns the method a call site naming {@code type} refers to: the declaration in {@code type}
+   * or the one it inherits. The result may be abstract.
+   */
+  @Nonnull
+  public Optional<MethodSignature> resolveDeclared(
+      @Nonnull ClassType type, @Nonnull MethodSubSignature subSignature) {
+    Optional<MethodSignature> target = cached(declared, type, subSignature);
+    if (target == null) {
+      target = store(declared, type, subSignature, findMethod(type, subSignature, false));
+    }
+    return target;
+  }
+
+  /**
+   * Returns the CHA targets of a virtual or interface call: the declared method plus the
+   * implementation of every concrete subtype of {@code declaredType}. The set is read-only.
+   */
+  @Nonnull
+  public Set<MethodSignature> virtualTargets(
+      @Nonnull ClassType declaredType, @Nonnull MethodSubSignature subSignature) {
+    Set<MethodSignature> targets = cached(virtualTargets, declaredType, subSignature);
+    if (targets == null) {
+      Set<MethodSignature> resolved = new HashSet<>();
+      resolveDeclared(declaredType, subSignature).ifPresent(resolved::add);
+      for (ClassType subtype : hierarchy.allConcreteSubtypes(declaredType)) {
+        dispatch(subtype, subSignature).ifPresent(resolved::add);
+      }
+      targets =
+          store(
+              virtualTargets, declaredType, subSignature, Collections.unmodifiableSet(resolved));
+    }
+    return targets;
+  }
+
+  /**
+   * Returns the types whose results may differ between two versions of a program in which {@code
+   * changedTypes} were added, removed or modified: the changed types and their subtypes, which
+   * inherit from them, plus all supertypes of those, whose virtual targets include them. Both
+   * hierarchies are taken into account, so types that left a subtree are included.
+   */
+  @Nonnull
+  public static Set<ClassType> affectedTypes(
+      @Nonnull TypeHierarchyIndex before,
+      @Nonnull TypeHierarchyIndex after,
+      @Nonnull Collection<ClassType> changedTypes) {
+    Set<ClassType> inheriting = new HashSet<>(changedTypes);
+    for (ClassType type : changedTypes) {
+      inheriting.addAll(before.allSubtypes(type));
+      inheriting.addAll(after.allSubtypes(type));
+    }
+    Set<ClassType> affected = new HashSet<>(inheriting);
+    for (ClassType type : inheriting) {
+      for (TypeHierarchyIndex hierarchy : Arrays.asList(before, after)) {
+        affected.addAll(hierarchy.superclassesOf(type));
+        affected.addAll(hierarchy.superInterfacesOf(type));
+      }
+    }
+    return affected;
+  }
+
+  /**
+   * Returns a cache for {@code view}, a later version of the program of this cache, holding the
+   * results of this cache for all types but {@code affectedTypes}.
+   *
+   * @param hierarchy the hierarchy of {@code view}
+   * @param affectedTypes see {@link #affectedTypes}
+   */
+  @Nonnull
+  public DispatchCache retainedFor(
+      @Nonnull JavaView view,
+      @Nonnull TypeHierarchyIndex hierarchy,
+      @Nonnull Set<ClassType> affectedTypes) {
+    DispatchCache retained = new DispatchCache(view, hierarchy);
+    retain(dispatched, retained.dispatched, affectedTypes);
+    retain(declared, retained.declared, affectedTypes);
+    retain(virtualTargets, retained.virtualTargets, affectedTypes);
+    return retained;
+  }
+
+  private static <V> void retain(
+      @Nonnull ConcurrentMap<ClassType, ConcurrentMap<MethodSubSignature, V>> from,
+      @Nonnull ConcurrentMap<ClassType, ConcurrentMap<MethodSubSignature, V>> to,
+      @Nonnull Set<ClassType> affectedTypes) {
+    from.forEach(
+        (type, byType) -> {
+          if (!affectedTypes.contains(type)) {
+            to.put(type, new ConcurrentHashMap<>(byType));
+          }
+        });
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "DispatchCache{hits=" + getHits() + ", misses=" + getMisses() + '}';
+  }
+
+  @Nullable
+  private <V> V cached(
+      @Nonnull ConcurrentMap<ClassType, ConcurrentMap<MethodSubSignature, V>> cache,
+      @Nonnull ClassType type,
+      @Nonnull MethodSubSignature subSignature) {
+    ConcurrentMap<MethodSubSignature, V> byType = cache.get(type);
+    V value = byType == null ? null : byType.get(subSignature);
+    if (value == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return value;
+  }
+
+  @Nonnull
+  private <V> V store(
+      @Nonnull ConcurrentMap<ClassType, ConcurrentMap<MethodSubSignature, V>> cache,
+      @Nonnull ClassType type,
+      @Nonnull MethodSubSignature subSignature,
+      @Nonnull V value) {
+    V previous =
+        cache
+            .computeIfAbsent(type, k -> new ConcurrentHashMap<>())
+            .putIfAbsent(subSignature, value);
+    return previous == null ? value : previous;
+  }
+
+  /**
+   * Looks up {@code subSignature} in {@code type}, its superclasses and finally its interfaces.
+   *
+   * @param dispatch if set, {@code type} is a runtime type: abstract types yield nothing and
+   *     abstract declarations are skipped
+   */
+  @Nonnull
+  private Optional<MethodSignature> findMethod(
+      @Nonnull ClassType type, @Nonnull MethodSubSignature subSignature, boolean dispatch) {
+    JavaSootClass typeClass = hierarchy.classOf(type);
+    if (typeClass == null || (dispatch && !hierarchy.isConcrete(type))) {
+      return Optional.empty();
+    }
+
+    for (JavaSootClass current = typeClass;
+        current != null;
+        current = current.getSuperclass().map(hierarchy::classOf).orElse(null)) {
+      Optional<JavaSootMethod> method = current.getMethod(subSignature);
+      if (method.isPresent() && !(dispatch && method.get().isAbstract())) {
+        return Optional.of(method.get().getSignature());
+      }
+    }
+
+    // default methods, or the abstract declaration of an interface method
+    for (ClassType interfaceType : hierarchy.superInterfacesOf(type)) {
+      Optional<JavaSootMethod> method = hierarchy.classOf(interfaceType).getMethod(subSignature);
+      if (method.isPresent() && !(dispatch && method.get().isAbstract())) {
+        return Optional.of(method.get().getSignature());
+      }
+    }
+    return Optional.empty();
+  }
+}
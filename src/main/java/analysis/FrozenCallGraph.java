@@ -0,0 +1,337 @@
+package analysis;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import javax.annotation.Nonnull;
+import sootup.core.signatures.MethodSignature;
+
+/**
+ * Immutable snapshot of a {@link CallGraph}. Every method is interned to a dense int id (ids follow
+ * the natural order of the signatures) and the edges are stored as compressed-sparse-row arrays in
+ * both directions, i.e. 8 bytes per edge instead of one {@link Edge} object per edge.
+ *
+ * <p>Offers the query API of {@link CallGraph} plus primitive variants working on ids.
+ */
+public final class FrozenCallGraph {
+  @Nonnull public final String algorithm;
+
+  /** id -> signature */
+  @Nonnull private final MethodSignature[] signatures;
+
+  /** Open-addressing table of id + 1 (0 marks a free slot), keyed by the signature hash. */
+  @Nonnull private final int[] idTable;
+
+  /** Row i of the callees is {@code outTargets[outOffsets[i] .. outOffsets[i + 1])}, sorted. */
+  @Nonnull private final int[] outOffsets;
+
+  @Nonnull private final int[] outTargets;
+
+  /** Row i of the callers is {@code inSources[inOffsets[i] .. inOffsets[i + 1])}, sorted. */
+  @Nonnull private final int[] inOffsets;
+
+  @Nonnull private final int[] inSources;
+
+  FrozenCallGraph(
+      @Nonnull String algorithm,
+      @Nonnull Collection<MethodSignature> nodes,
+      @Nonnull Map<MethodSignature, ? extends Collection<MethodSignature>> successors) {
+    this.algorithm = algorithm;
+
+    signatures = nodes.toArray(new MethodSignature[0]);
+    Arrays.sort(signatures);
+    idTable = new int[tableSizeFor(signatures.length)];
+    for (int id = 0; id < signatures.length; id++) {
+      int slot = slotOf(signatures[id]);
+      while (idTable[slot] != 0) {
+        slot = (slot + 1) & (idTable.length - 1);
+      }
+      idTable[slot] = id + 1;
+    }
+
+    outOffsets = new int[signatures.length + 1];
+    inOffsets = new int[signatures.length + 1];
+    int edgeCount = 0;
+    for (int id = 0; id < signatures.length; id++) {
+      Collection<MethodSignature> targets = successors.get(signatures[id]);
+      int degree = targets == null ? 0 : targets.size();
+      outOffsets[id + 1] = outOffsets[id] + degree;
+      edgeCount += degree;
+    }
+
+    outTargets = new int[edgeCount];
+    for (int id = 0; id < signatures.length; id++) {
+      Collection<MethodSignature> targets = successors.get(signatures[id]);
+      if (targets == null) {
+        continue;
+      }
+      int pos = outOffsets[id];
+      for (MethodSignature target : targets) {
+        int targetId = idOf(target);
+        if (targetId < 0) {
+          throw new IllegalArgumentException(
+              "Edge target is not a node of the call graph: " + target);
+        }
+        outTargets[pos++] = targetId;
+        inOffsets[targetId + 1]++;
+      }
+      Arrays.sort(outTargets, outOffsets[id], outOffsets[id + 1]);
+    }
+
+    for (int id = 0; id < signatures.length; id++) {
+      inOffsets[id + 1] += inOffsets[id];
+    }
+    // sources are visited in increasing id order, so every caller row ends up sorted
+    inSources = new int[edgeCount];
+    int[] fill = Arrays.copyOf(inOffsets, signatures.length);
+    for (int source = 0; source < signatures.length; source++) {
+      for (int i = outOffsets[source]; i < outOffsets[source + 1]; i++) {
+        inSources[fill[outTargets[i]]++] = source;
+      }
+    }
+  }
+
+  private static int tableSizeFor(int entries) {
+    int size = 2;
+    while (size < entries * 2) {
+      size <<= 1;
+    }
+    return size;
+  }
+
+  private int slotOf(@Nonnull MethodSignature m) {
+    int h = m.hashCode();
+    return (h ^ (h >>> 16)) & (idTable.length - 1);
+  }
+
+  public int nodeCount() {
+    return signatures.length;
+  }
+
+  public int edgeCount() {
+    return outTargets.length;
+  }
+
+  /** Returns the dense id of {@code m}, or -1 if it is not part of the call graph. */
+  public int idOf(@Nonnull MethodSignature m) {
+    int slot = slotOf(m);
+    int entry;
+    while ((entry = idTable[slot]) != 0) {
+      if (signatures[entry - 1].equals(m)) {
+        return entry - 1;
+      }
+      slot = (slot + 1) & (idTable.length - 1);
+    }
+    return -1;
+  }
+
+  @Nonnull
+  public MethodSignature signatureOf(int id) {
+    return signatures[id];
+  }
+
+  @Nonnull
+  public Set<MethodSignature> getNodes() {
+    return new AbstractSet<MethodSignature>() {
+      @Override
+      public Iterator<MethodSignature> iterator() {
+        return Arrays.asList(signatures).iterator();
+      }
+
+      @Override
+      public int size() {
+        return signatures.length;
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return o instanceof MethodSignature && idOf((MethodSignature) o) >= 0;
+      }
+    };
+  }
+
+  @Nonnull
+  public Set<Edge<MethodSignature, MethodSignature>> getEdges() {
+    return new AbstractSet<Edge<MethodSignature, MethodSignature>>() {
+      @Override
+      public Iterator<Edge<MethodSignature, MethodSignature>> iterator() {
+        return new Iterator<Edge<MethodSignature, MethodSignature>>() {
+          private int source = 0;
+          private int next = 0;
+
+          @Override
+          public boolean hasNext() {
+            return next < outTargets.length;
+          }
+
+          @Override
+          public Edge<MethodSignature, MethodSignature> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            while (outOffsets[source + 1] <= next) {
+              source++;
+            }
+            return new Edge<>(signatures[source], signatures[outTargets[next++]]);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return outTargets.length;
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        if (!(o instanceof Edge)) {
+          return false;
+        }
+        Edge<?, ?> edge = (Edge<?, ?>) o;
+        return edge.source instanceof MethodSignature
+            && edge.target instanceof MethodSignature
+            && hasEdge((MethodSignature) edge.source, (MethodSignature) edge.target);
+      }
+    };
+  }
+
+  public boolean hasNode(@Nonnull MethodSignature m) {
+    return idOf(m) >= 0;
+  }
+
+  public boolean hasEdge(@Nonnull MethodSignature source, @Nonnull MethodSignature target) {
+    int sourceId = idOf(source);
+    int targetId = idOf(target);
+    return sourceId >= 0 && targetId >= 0 && hasEdge(sourceId, targetId);
+  }
+
+  public boolean hasEdge(int sourceId, int targetId) {
+    return Arrays.binarySearch(outTargets, outOffsets[sourceId], outOffsets[sourceId + 1], targetId)
+        >= 0;
+  }
+
+  @Nonnull
+  public Set<MethodSignature> edgesOutOf(@Nonnull MethodSignature origin) {
+    int id = idOf(origin);
+    if (id < 0) {
+      return Collections.emptySet();
+    }
+    return new RowView(outTargets, outOffsets[id], outOffsets[id + 1]);
+  }
+
+  @Nonnull
+  public Set<MethodSignature> edgesInto(@Nonnull MethodSignature target) {
+    int id = idOf(target);
+    if (id < 0) {
+      return Collections.emptySet();
+    }
+    return new RowView(inSources, inOffsets[id], inOffsets[id + 1]);
+  }
+
+  public int outDegree(int id) {
+    return outOffsets[id + 1] - outOffsets[id];
+  }
+
+  public int inDegree(int id) {
+    return inOffsets[id + 1] - inOffsets[id];
+  }
+
+  /** Iterates the callee ids of {@code id} in increasing order without boxing. */
+  @Nonnull
+  public PrimitiveIterator.OfInt successors(int id) {
+    return new RowIterator(outTargets, outOffsets[id], outOffsets[id + 1]);
+  }
+
+  /** Iterates the caller ids of {@code id} in increasing order without boxing. */
+  @Nonnull
+  public PrimitiveIterator.OfInt predecessors(int id) {
+    return new RowIterator(inSources, inOffsets[id], inOffsets[id + 1]);
+  }
+
+  public void forEachSuccessor(int id, @Nonnull IntConsumer action) {
+    for (int i = outOffsets[id]; i < outOffsets[id + 1]; i++) {
+      action.accept(outTargets[i]);
+    }
+  }
+
+  public void forEachPredecessor(int id, @Nonnull IntConsumer action) {
+    for (int i = inOffsets[id]; i < inOffsets[id + 1]; i++) {
+      action.accept(inSources[i]);
+    }
+  }
+
+  private static final class RowIterator implements PrimitiveIterator.OfInt {
+    private final int[] row;
+    private final int end;
+    private int next;
+
+    RowIterator(int[] row, int from, int to) {
+      this.row = row;
+      this.next = from;
+      this.end = to;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < end;
+    }
+
+    @Override
+    public int nextInt() {
+      if (next >= end) {
+        throw new NoSuchElementException();
+      }
+      return row[next++];
+    }
+  }
+
+  /** Read-only set view over one sorted CSR row. */
+  private final class RowView extends AbstractSet<MethodSignature> {
+    private final int[] row;
+    private final int from;
+    private final int to;
+
+    RowView(int[] row, int from, int to) {
+      this.row = row;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public Iterator<MethodSignature> iterator() {
+      RowIterator ids = new RowIterator(row, from, to);
+      return new Iterator<MethodSignature>() {
+        @Override
+        public boolean hasNext() {
+          return ids.hasNext();
+        }
+
+        @Override
+        public MethodSignature next() {
+          return signatures[ids.nextInt()];
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof MethodSignature)) {
+        return false;
+      }
+      int id = idOf((MethodSignature) o);
+      return id >= 0 && Arrays.binarySearch(row, from, to, id) >= 0;
+    }
+  }
+}
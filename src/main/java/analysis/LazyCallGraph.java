@@ -0,0 +1,81 @@
+package analysis;
+
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import sootup.core.signatures.MethodSignature;
+
+/**
+ * A {@link CallGraph} that resolves a method the first time its callees are asked for. {@link
+ * #edgesOutOf} and {@link #hasEdge} load the body of their source and dispatch its call sites,
+ * nothing else; the edges stay, so every method is resolved at most once. Callers can walk outward
+ * step by step and pay only for the methods they visit.
+ *
+ * <p>The graph holds the resolved methods, their callees and whatever edges the resolver added:
+ * {@link #edgesInto}, {@link #getNodes()} and {@link #getEdges()} only know the part walked so far.
+ * Not thread-safe.
+ */
+public class LazyCallGraph extends CallGraph {
+
+  /** Adds the edges out of one method, see {@link CallGraphAlgorithm}s offering a lazy mode. */
+  public interface Resolver {
+    /**
+     * Adds the callees of {@code method} to {@code cg}. They must not depend on the methods resolved
+     * before, as the edges out of those are not revisited.
+     */
+    void resolve(@Nonnull MethodSignature method, @Nonnull CallGraph cg);
+  }
+
+  @Nonnull private final Resolver resolver;
+  @Nonnull private final Set<MethodSignature> resolved = new HashSet<>();
+
+  public LazyCallGraph(@Nonnull String algorithm, @Nonnull Resolver resolver) {
+    super(algorithm);
+    this.resolver = resolver;
+  }
+
+  /** Resolves {@code method} unless it has been already, and adds it as a node. */
+  public void resolve(@Nonnull MethodSignature method) {
+    if (resolved.add(method)) {
+      addNodeIfAbsent(method);
+      resolver.resolve(method, this);
+    }
+  }
+
+  public boolean isResolved(@Nonnull MethodSignature method) {
+    return resolved.contains(method);
+  }
+
+  /** The number of methods resolved so far. */
+  public int getResolvedCount() {
+    return resolved.size();
+  }
+
+  /** Resolves {@code origin} first. */
+  @Override
+  @Nonnull
+  public Set<MethodSignature> edgesOutOf(@Nonnull MethodSignature origin) {
+    resolve(origin);
+    return super.edgesOutOf(origin);
+  }
+
+  /** Resolves {@code source} first. */
+  @Override
+  public boolean hasEdge(@Nonnull MethodSignature source, @Nonnull MethodSignature target) {
+    resolve(source);
+    return super.hasEdge(source, target);
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    resolved.clear();
+  }
+
+  @Override
+  public boolean removeNode(@Nonnull MethodSignature method) {
+    boolean removed = super.removeNode(method);
+    resolved.remove(method);
+    return removed;
+  }
+}
@@ -0,0 +1,369 @@
+package analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.core.jimple.basic.Immediate;
+import sootup.core.jimple.basic.Local;
+import sootup.core.jimple.basic.Value;
+import sootup.core.jimple.common.constant.StringConstant;
+import sootup.core.jimple.common.expr.AbstractInstanceInvokeExpr;
+import sootup.core.jimple.common.expr.AbstractInvokeExpr;
+import sootup.core.jimple.common.expr.JCastExpr;
+import sootup.core.jimple.common.expr.JDynamicInvokeExpr;
+import sootup.core.jimple.common.expr.JInterfaceInvokeExpr;
+import sootup.core.jimple.common.expr.JNewArrayExpr;
+import sootup.core.jimple.common.expr.JNewExpr;
+import sootup.core.jimple.common.expr.JNewMultiArrayExpr;
+import sootup.core.jimple.common.expr.JSpecialInvokeExpr;
+import sootup.core.jimple.common.expr.JVirtualInvokeExpr;
+import sootup.core.jimple.common.ref.JArrayRef;
+import sootup.core.jimple.common.ref.JFieldRef;
+import sootup.core.jimple.common.ref.JParameterRef;
+import sootup.core.jimple.common.ref.JThisRef;
+import sootup.core.jimple.common.stmt.JAssignStmt;
+import sootup.core.jimple.common.stmt.JIdentityStmt;
+import sootup.core.jimple.common.stmt.JReturnStmt;
+import sootup.core.jimple.common.stmt.Stmt;
+import sootup.core.types.ReferenceType;
+import sootup.core.types.Type;
+
+/**
+ * The statements of a method body the call graph algorithms care about, extracted in one pass and
+ * kept in arrays per kind, each in statement order:
+ *
+ * <ul>
+ *   <li>call sites with their kind, receiver and result local,
+ *   <li>the locals receiving {@code this} and the parameters,
+ *   <li>allocations: {@code new}, array creation and string constants,
+ *   <li>copies between locals, casts, loads from and stores into fields and arrays,
+ *   <li>returned locals.
+ * </ul>
+ *
+ * Copies, casts, loads, stores and allocations are only recorded if the assigned value is a
+ * reference. Call results, parameters and returned locals are recorded whatever their type.
+ * Summaries are built by {@link BodyCache#summaryOf}.
+ */
+public final class MethodSummary {
+
+  public enum CallKind {
+    /** Virtual and interface invocations, dispatched on the receiver. */
+    VIRTUAL,
+    SPECIAL,
+    STATIC,
+    DYNAMIC
+  }
+
+  @Nonnull private final AbstractInvokeExpr[] invokes;
+  @Nonnull private final CallKind[] callKinds;
+  @Nonnull private final Local[] receivers;
+  @Nonnull private final Local[] results;
+
+  @Nonnull private final Local[] identityLocals;
+  @Nonnull private final int[] identityParameters;
+
+  @Nonnull private final Value[] allocationTargets;
+  @Nonnull private final Value[] allocations;
+
+  @Nonnull private final Local[] copyTargets;
+  @Nonnull private final Local[] copySources;
+
+  @Nonnull private final Local[] castTargets;
+  @Nonnull private final JCastExpr[] casts;
+
+  @Nonnull private final Local[] loadTargets;
+  @Nonnull private final Value[] loadSources;
+
+  @Nonnull private final Value[] storeTargets;
+  @Nonnull private final Local[] storeSources;
+
+  @Nonnull private final Local[] returnedLocals;
+
+  private MethodSummary(@Nonnull Extractor extractor) {
+    invokes = extractor.invokes.toArray(new AbstractInvokeExpr[0]);
+    callKinds = extractor.callKinds.toArray(new CallKind[0]);
+    receivers = extractor.receivers.toArray(new Local[0]);
+    results = extractor.results.toArray(new Local[0]);
+    identityLocals = extractor.identityLocals.toArray(new Local[0]);
+    identityParameters = new int[extractor.identityParameters.size()];
+    for (int i = 0; i < identityParameters.length; i++) {
+      identityParameters[i] = extractor.identityParameters.get(i);
+    }
+    allocationTargets = extractor.allocationTargets.toArray(new Value[0]);
+    allocations = extractor.allocations.toArray(new Value[0]);
+    copyTargets = extractor.copyTargets.toArray(new Local[0]);
+    copySources = extractor.copySources.toArray(new Local[0]);
+    castTargets = extractor.castTargets.toArray(new Local[0]);
+    casts = extractor.casts.toArray(new JCastExpr[0]);
+    loadTargets = extractor.loadTargets.toArray(new Local[0]);
+    loadSources = extractor.loadSources.toArray(new Value[0]);
+    storeTargets = extractor.storeTargets.toArray(new Value[0]);
+    storeSources = extractor.storeSources.toArray(new Local[0]);
+    returnedLocals = extractor.returnedLocals.toArray(new Local[0]);
+  }
+
+  /** Summarizes {@code stmts} in one pass. */
+  @Nonnull
+  public static MethodSummary of(@Nonnull List<Stmt> stmts) {
+    Extractor extractor = new Extractor();
+    for (Stmt stmt : stmts) {
+      extractor.add(stmt);
+    }
+    return new MethodSummary(extractor);
+  }
+
+  /** The number of recorded entries of all kinds, a measure of the summary's size. */
+  public int size() {
+    return invokes.length
+        + identityLocals.length
+        + allocations.length
+        + copyTargets.length
+        + casts.length
+        + loadTargets.length
+        + storeTargets.length
+        + returnedLocals.length;
+  }
+
+  public int getCallSiteCount() {
+    return invokes.length;
+  }
+
+  @Nonnull
+  public AbstractInvokeExpr getInvoke(int callSite) {
+    return invokes[callSite];
+  }
+
+  @Nonnull
+  public CallKind getCallKind(int callSite) {
+    return callKinds[callSite];
+  }
+
+  /** The receiver of an instance invocation; null for static and dynamic ones. */
+  @Nullable
+  public Local getReceiver(int callSite) {
+    return receivers[callSite];
+  }
+
+  /** The local the result is assigned to; null if the call is a statement of its own. */
+  @Nullable
+  public Local getResult(int callSite) {
+    return results[callSite];
+  }
+
+  public int getIdentityCount() {
+    return identityLocals.length;
+  }
+
+  @Nonnull
+  public Local getIdentityLocal(int identity) {
+    return identityLocals[identity];
+  }
+
+  /** The index of the parameter assigned to the identity local; -1 for {@code this}. */
+  public int getIdentityParameter(int identity) {
+    return identityParameters[identity];
+  }
+
+  public int getAllocationCount() {
+    return allocations.length;
+  }
+
+  /**
+   * Where the allocated object is stored: a local, or a field or array element for string
+   * constants.
+   */
+  @Nonnull
+  public Value getAllocationTarget(int allocation) {
+    return allocationTargets[allocation];
+  }
+
+  /**
+   * The {@link JNewExpr}, {@link JNewArrayExpr}, {@link JNewMultiArrayExpr} or {@link
+   * StringConstant}.
+   */
+  @Nonnull
+  public Value getAllocation(int allocation) {
+    return allocations[allocation];
+  }
+
+  public int getCopyCount() {
+    return copyTargets.length;
+  }
+
+  @Nonnull
+  public Local getCopyTarget(int copy) {
+    return copyTargets[copy];
+  }
+
+  @Nonnull
+  public Local getCopySource(int copy) {
+    return copySources[copy];
+  }
+
+  public int getCastCount() {
+    return casts.length;
+  }
+
+  @Nonnull
+  public Local getCastTarget(int cast) {
+    return castTargets[cast];
+  }
+
+  @Nonnull
+  public JCastExpr getCast(int cast) {
+    return casts[cast];
+  }
+
+  public int getLoadCount() {
+    return loadTargets.length;
+  }
+
+  @Nonnull
+  public Local getLoadTarget(int load) {
+    return loadTargets[load];
+  }
+
+  /** The {@link JFieldRef} or {@link JArrayRef} read. */
+  @Nonnull
+  public Value getLoadSource(int load) {
+    return loadSources[load];
+  }
+
+  public int getStoreCount() {
+    return storeTargets.length;
+  }
+
+  /** The {@link JFieldRef} or {@link JArrayRef} written. */
+  @Nonnull
+  public Value getStoreTarget(int store) {
+    return storeTargets[store];
+  }
+
+  @Nonnull
+  public Local getStoreSource(int store) {
+    return storeSources[store];
+  }
+
+  public int getReturnCount() {
+    return returnedLocals.length;
+  }
+
+  @Nonnull
+  public Local getReturnedLocal(int ret) {
+    return returnedLocals[ret];
+  }
+
+  @Nonnull
+  public static CallKind kindOf(@Nonnull AbstractInvokeExpr invoke) {
+    if (invoke instanceof JVirtualInvokeExpr || invoke instanceof JInterfaceInvokeExpr) {
+      return CallKind.VIRTUAL;
+    }
+    if (invoke instanceof JSpecialInvokeExpr) {
+      return CallKind.SPECIAL;
+    }
+    return invoke instanceof JDynamicInvokeExpr ? CallKind.DYNAMIC : CallKind.STATIC;
+  }
+
+  @Override
+  public String toString() {
+    return "MethodSummary{callSites="
+        + invokes.length
+        + ", allocations="
+        + allocations.length
+        + ", copies="
+        + copyTargets.length
+        + ", casts="
+        + casts.length
+        + ", loads="
+        + loadTargets.length
+        + ", stores="
+        + storeTargets.length
+        + '}';
+  }
+
+  /** Collects the entries of one body. */
+  private static final class Extractor {
+    final List<AbstractInvokeExpr> invokes = new ArrayList<>();
+    final List<CallKind> callKinds = new ArrayList<>();
+    final List<Local> receivers = new ArrayList<>();
+    final List<Local> results = new ArrayList<>();
+    final List<Local> identityLocals = new ArrayList<>();
+    final List<Integer> identityParameters = new ArrayList<>();
+    final List<Value> allocationTargets = new ArrayList<>();
+    final List<Value> allocations = new ArrayList<>();
+    final List<Local> copyTargets = new ArrayList<>();
+    final List<Local> copySources = new ArrayList<>();
+    final List<Local> castTargets = new ArrayList<>();
+    final List<JCastExpr> casts = new ArrayList<>();
+    final List<Local> loadTargets = new ArrayList<>();
+    final List<Value> loadSources = new ArrayList<>();
+    final List<Value> storeTargets = new ArrayList<>();
+    final List<Local> storeSources = new ArrayList<>();
+    final List<Local> returnedLocals = new ArrayList<>();
+
+    void add(@Nonnull Stmt stmt) {
+      if (stmt instanceof JIdentityStmt) {
+        JIdentityStmt identity = (JIdentityStmt) stmt;
+        if (identity.getRightOp() instanceof JThisRef) {
+          identityLocals.add(identity.getLeftOp());
+          identityParameters.add(-1);
+        } else if (identity.getRightOp() instanceof JParameterRef) {
+          identityLocals.add(identity.getLeftOp());
+          identityParameters.add(((JParameterRef) identity.getRightOp()).getIndex());
+        }
+      } else if (stmt instanceof JAssignStmt) {
+        addAssignment(((JAssignStmt) stmt).getLeftOp(), ((JAssignStmt) stmt).getRightOp());
+      } else if (stmt instanceof JReturnStmt) {
+        Immediate op = ((JReturnStmt) stmt).getOp();
+        if (op instanceof Local) {
+          returnedLocals.add((Local) op);
+        }
+      } else if (stmt.containsInvokeExpr()) {
+        addCallSite(stmt.getInvokeExpr(), null);
+      }
+    }
+
+    private void addAssignment(@Nonnull Value left, @Nonnull Value right) {
+      if (right instanceof AbstractInvokeExpr) {
+        addCallSite((AbstractInvokeExpr) right, left instanceof Local ? (Local) left : null);
+        return;
+      }
+      Type type = left.getType();
+      if (!(type instanceof ReferenceType)) {
+        return;
+      }
+      if (right instanceof JNewExpr
+          || right instanceof JNewArrayExpr
+          || right instanceof JNewMultiArrayExpr
+          || right instanceof StringConstant) {
+        allocationTargets.add(left);
+        allocations.add(right);
+      } else if (left instanceof Local) {
+        if (right instanceof Local) {
+          copyTargets.add((Local) left);
+          copySources.add((Local) right);
+        } else if (right instanceof JCastExpr) {
+          castTargets.add((Local) left);
+          casts.add((JCastExpr) right);
+        } else if (right instanceof JFieldRef || right instanceof JArrayRef) {
+          loadTargets.add((Local) left);
+          loadSources.add(right);
+        }
+      } else if (right instanceof Local) {
+        storeTargets.add(left);
+        storeSources.add((Local) right);
+      }
+    }
+
+    private void addCallSite(@Nonnull AbstractInvokeExpr invoke, @Nullable Local result) {
+      invokes.add(invoke);
+      callKinds.add(kindOf(invoke));
+      receivers.add(
+          invoke instanceof AbstractInstanceInvokeExpr
+              ? ((AbstractInstanceInvokeExpr) invoke).getBase()
+              : null);
+      results.add(result);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package analysis;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.core.signatures.MethodSignature;
+
+/**
+ * Worklist of the methods a {@link CallGraphAlgorithm} found reachable. Every method enters the
+ * worklist at most once, so its body is processed once no matter how many call paths lead to it.
+ *
+ * <p>Also counts how often method bodies were scanned, to spot algorithms that re-read bodies.
+ * Thread-safe; parallel algorithms may use {@link #markReachable} as their visited set and skip the
+ * queue.
+ */
+public class ReachableMethods {
+  @Nonnull private final Set<MethodSignature> reachable = ConcurrentHashMap.newKeySet();
+  @Nonnull private final Queue<MethodSignature> worklist = new ConcurrentLinkedQueue<>();
+  @Nonnull private final Map<MethodSignature, LongAdder> bodyVisits = new ConcurrentHashMap<>();
+
+  /**
+   * Marks {@code method} reachable and queues it if it was not reachable before.
+   *
+   * @return whether the method was newly reachable
+   */
+  public boolean add(@Nonnull MethodSignature method) {
+    if (!reachable.add(method)) {
+      return false;
+    }
+    worklist.add(method);
+    return true;
+  }
+
+  /**
+   * Marks {@code method} reachable without queueing it.
+   *
+   * @return whether the method was newly reachable
+   */
+  public boolean markReachable(@Nonnull MethodSignature method) {
+    return reachable.add(method);
+  }
+
+  /** Returns the next queued method, or null once the worklist is empty. */
+  @Nullable
+  public MethodSignature poll() {
+    return worklist.poll();
+  }
+
+  public boolean contains(@Nonnull MethodSignature method) {
+    return reachable.contains(method);
+  }
+
+  /** Records that the body of {@code method} was scanned once more. */
+  public void recordBodyVisit(@Nonnull MethodSignature method) {
+    bodyVisits.computeIfAbsent(method, k -> new LongAdder()).increment();
+  }
+
+  @Nonnull
+  public Set<MethodSignature> getReachable() {
+    return Collections.unmodifiableSet(reachable);
+  }
+
+  /** Number of distinct method bodies that were scanned. */
+  public int getVisitedBodyCount() {
+    return bodyVisits.size();
+  }
+
+  /** Total number of body scans; equals {@link #getVisitedBodyCount()} if none was re-read. */
+  public long getBodyVisitCount() {
+    return bodyVisits.values().stream().mapToLong(LongAdder::sum).sum();
+  }
+
+  /** How often the body of {@code method} was scanned. */
+  public long getBodyVisitCount(@Nonnull MethodSignature method) {
+    LongAdder visits = bodyVisits.get(method);
+    return visits == null ? 0 : visits.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "ReachableMethods{reachable="
+        + reachable.size()
+        + ", visitedBodies="
+        + getVisitedBodyCount()
+        + ", bodyVisits="
+        + getBodyVisitCount()
+        + '}';
+  }
+}
@@ -0,0 +1,350 @@
+package analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.java.bytecode.inputlocation.JavaClassPathAnalysisInputLocation;
+import sootup.java.core.views.JavaView;
+
+/**
+ * Keeps call graphs in a local directory across runs, so an analysis of unchanged input is read
+ * back instead of recomputed. An entry is keyed by a content hash of the input files, {@link
+ * #ANALYSIS_VERSION}, the name of the algorithm and its options, see {@link
+ * CallGraphAlgorithm#setResultCache(ResultCache)}, and stored as a {@link CallGraphFile}.
+ *
+ * <p>A {@link JavaView} does not tell which files it reads, so the cache creates the views of its
+ * inputs itself, see {@link #createView()}, and serves no others.
+ *
+ * <p>The directory is bounded in size: after a store, the least recently used entries are deleted
+ * until the total fits, keeping the new one.
+ *
+ * <p>Hashing the content of every input file for each view would cost as much as reading the
+ * input. The directory also remembers the content hash for the names, sizes and modification times
+ * of the input files; as long as those are unchanged, only the file attributes are read. A fresh
+ * checkout changes the times, so its content is hashed once and then finds the entries of earlier
+ * runs.
+ *
+ * <p>A damaged or unreadable entry counts as a miss and is deleted; a failed store leaves the
+ * directory as it was.
+ */
+public class ResultCache {
+  /**
+   * Bumped with every change to an algorithm that changes the call graphs it computes, so entries of
+   * an older analysis are not read back.
+   */
+  public static final int ANALYSIS_VERSION = 1;
+
+  /** 64 MiB, room for a few hundred call graphs of a mid-sized application. */
+  public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+  private static final String SUFFIX = ".cg";
+  private static final String FINGERPRINTS = "fingerprints";
+
+  /** How many input states the fingerprints file remembers. */
+  private static final int MAX_FINGERPRINTS = 64;
+
+  @Nonnull private final Path directory;
+  @Nonnull private final List<Path> inputs;
+  private final long maxBytes;
+
+  /** The fingerprint of the input when each view was created. */
+  @Nonnull private final Map<JavaView, String> fingerprints = new WeakHashMap<>();
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  public ResultCache(@Nonnull Path directory, @Nonnull Collection<Path> inputs)
+      throws IOException {
+    this(directory, inputs, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * @param inputs the class path the cached call graphs are computed from, directories or archives
+   * @param maxBytes total size of the entries; the newest entry is kept even if it is larger
+   */
+  public ResultCache(@Nonnull Path directory, @Nonnull Collection<Path> inputs, long maxBytes)
+      throws IOException {
+    if (maxBytes < 1) {
+      throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+    }
+    this.directory = directory;
+    this.inputs = new ArrayList<>(inputs);
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory);
+  }
+
+  /**
+   * Creates a view of the inputs. The fingerprint of their content is taken now, so a view created
+   * after an input changed finds the entries of the new content; the inputs must not change while
+   * the view is in use.
+   */
+  @Nonnull
+  public synchronized JavaView createView() throws IOException {
+    String fingerprint = fingerprint(inputs);
+    String classPath =
+        inputs.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator));
+    JavaView view = new JavaView(new JavaClassPathAnalysisInputLocation(classPath));
+    fingerprints.put(view, fingerprint);
+    return view;
+  }
+
+  /** The content hash of the input files when {@code view} was created. */
+  @Nonnull
+  public synchronized String getFingerprint(@Nonnull JavaView view) {
+    String fingerprint = fingerprints.get(view);
+    if (fingerprint == null) {
+      throw new IllegalArgumentException(
+          "View was not created by this cache, its input is unknown: " + view);
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Returns the cached call graph of {@code algorithm} with {@code options} for {@code view}, which
+   * must have been created by {@link #createView()}, or null.
+   */
+  @Nullable
+  public synchronized CallGraph load(
+      @Nonnull JavaView view, @Nonnull String algorithm, @Nonnull String options) {
+    Path file = entryFile(getFingerprint(view), algorithm, options);
+    if (Files.isRegularFile(file)) {
+      try {
+        CallGraphFile entry = CallGraphFile.open(file);
+        if (entry.algorithm.equals(algorithm)) {
+          CallGraph cg = entry.toCallGraph();
+          Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+          hits++;
+          return cg;
+        }
+      } catch (IOException | RuntimeException e) {
+        // damaged, e.g. cut off or with an unparsable signature; recomputed and stored again
+        deleteQuietly(file);
+      }
+    }
+    misses++;
+    return null;
+  }
+
+  /**
+   * Stores {@code cg} as the result of its algorithm with {@code options} for {@code view}, which
+   * must have been created by {@link #createView()}.
+   */
+  public synchronized void store(
+      @Nonnull JavaView view, @Nonnull String options, @Nonnull CallGraph cg) {
+    Path file = entryFile(getFingerprint(view), cg.algorithm, options);
+    Path temporary = null;
+    try {
+      // written aside and moved, so a concurrent run never reads a partial entry
+      temporary = Files.createTempFile(directory, "entry", ".tmp");
+      CallGraphFile.write(cg, temporary);
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+      evict(file);
+    } catch (IOException e) {
+      deleteQuietly(temporary);
+    }
+  }
+
+  /** Deletes the least recently used entries beyond the size limit, except {@code newest}. */
+  private void evict(@Nonnull Path newest) throws IOException {
+    List<Path> entries = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      stream.forEach(entries::add);
+    }
+    Map<Path, FileTime> times = new LinkedHashMap<>();
+    long size = 0;
+    for (Path entry : entries) {
+      times.put(entry, Files.getLastModifiedTime(entry));
+      size += Files.size(entry);
+    }
+    entries.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+    for (Path entry : entries) {
+      if (size <= maxBytes) {
+        break;
+      }
+      if (!entry.equals(newest)) {
+        size -= Files.size(entry);
+        Files.deleteIfExists(entry);
+        evictions++;
+      }
+    }
+  }
+
+  @Nonnull
+  private Path entryFile(
+      @Nonnull String fingerprint, @Nonnull String algorithm, @Nonnull String options) {
+    MessageDigest digest = sha256();
+    update(digest, fingerprint);
+    update(digest, Integer.toString(ANALYSIS_VERSION));
+    update(digest, algorithm);
+    update(digest, options);
+    update(digest, Integer.toString(CallGraphFile.VERSION));
+    return directory.resolve(hex(digest.digest()) + SUFFIX);
+  }
+
+  /**
+   * Hashes the names and contents of the input files, or looks the hash up by their names, sizes
+   * and modification times.
+   */
+  @Nonnull
+  private String fingerprint(@Nonnull Collection<Path> inputs) throws IOException {
+    List<Path> files = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    for (Path input : inputs) {
+      if (Files.isDirectory(input)) {
+        List<Path> found;
+        try (Stream<Path> walk = Files.walk(input)) {
+          found = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : found) {
+          files.add(file);
+          names.add(input.relativize(file).toString().replace('\\', '/'));
+        }
+      } else {
+        files.add(input);
+        names.add(input.getFileName().toString());
+      }
+    }
+
+    MessageDigest attributes = sha256();
+    for (int i = 0; i < files.size(); i++) {
+      update(attributes, names.get(i));
+      update(attributes, Files.size(files.get(i)) + ":" + Files.getLastModifiedTime(files.get(i)));
+    }
+    String stamp = hex(attributes.digest());
+
+    Map<String, String> known = readFingerprints();
+    String content = known.remove(stamp);
+    if (content == null) {
+      MessageDigest digest = sha256();
+      byte[] buffer = new byte[1 << 16];
+      for (int i = 0; i < files.size(); i++) {
+        // with the size, the end of one file's content is unambiguous
+        update(digest, names.get(i) + ":" + Files.size(files.get(i)));
+        try (InputStream in = Files.newInputStream(files.get(i))) {
+          int read;
+          while ((read = in.read(buffer)) > 0) {
+            digest.update(buffer, 0, read);
+          }
+        }
+      }
+      content = hex(digest.digest());
+    }
+    known.put(stamp, content);
+    writeFingerprints(known);
+    return content;
+  }
+
+  /** The remembered input states, the least recently seen first. */
+  @Nonnull
+  private Map<String, String> readFingerprints() {
+    Map<String, String> known = new LinkedHashMap<>();
+    try {
+      for (String line : Files.readAllLines(directory.resolve(FINGERPRINTS))) {
+        String[] columns = line.split(" ");
+        if (columns.length == 2) {
+          known.put(columns[0], columns[1]);
+        }
+      }
+    } catch (IOException e) {
+      // nothing remembered yet
+    }
+    return known;
+  }
+
+  private void writeFingerprints(@Nonnull Map<String, String> known) {
+    List<String> lines = new ArrayList<>();
+    known.forEach((stamp, content) -> lines.add(stamp + " " + content));
+    Path temporary = null;
+    try {
+      temporary = Files.createTempFile(directory, FINGERPRINTS, ".tmp");
+      int from = Math.max(0, lines.size() - MAX_FINGERPRINTS);
+      Files.write(temporary, lines.subList(from, lines.size()));
+      Files.move(temporary, directory.resolve(FINGERPRINTS), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      // the content is hashed again on the next start
+      deleteQuietly(temporary);
+    }
+  }
+
+  private static void deleteQuietly(@Nullable Path file) {
+    if (file == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      // left for the next cleanup
+    }
+  }
+
+  @Nonnull
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Adds {@code value} to {@code digest}, terminated so consecutive values cannot run together. */
+  private static void update(@Nonnull MessageDigest digest, @Nonnull String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+  @Nonnull
+  private static String hex(@Nonnull byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ResultCache{directory="
+        + directory
+        + ", inputs="
+        + inputs
+        + ", hits="
+        + hits
+        + ", misses="
+        + misses
+        + ", evictions="
+        + evictions
+        + '}';
+  }
+}
@@ -0,0 +1,347 @@
+package analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.core.types.ClassType;
+import sootup.java.core.JavaSootClass;
+import sootup.java.core.views.JavaView;
+
+/**
+ * One-time index over all classes of a {@link JavaView}, replacing the lazy stream queries of
+ * sootup's {@code TypeHierarchy}.
+ *
+ * <p>Every type gets a dense id. Classes are numbered in depth-first preorder of the superclass
+ * tree, so the transitive subclasses of a class form the id interval {@code [id, lastSubclass]}.
+ * Interfaces follow the classes and keep their transitive subtypes (sub-interfaces and every
+ * implementing class with its subclasses) as a {@link BitSet}. {@link #isSubtype} is therefore a
+ * range check or a single bit test.
+ *
+ * <p>Immutable after construction apart from the memoized {@link #allConcreteSubtypes} lists, so it
+ * may be queried from several threads.
+ */
+public class TypeHierarchyIndex {
+  private static final String OBJECT = "java.lang.Object";
+
+  /** id -> type / class */
+  @Nonnull private final ClassType[] types;
+
+  @Nonnull private final JavaSootClass[] classes;
+
+  @Nonnull private final Map<ClassType, Integer> ids;
+
+  /** Number of non-interface types; they own the ids below this bound. */
+  private final int classCount;
+
+  /** For a class id, the largest id in its subtree. */
+  @Nonnull private final int[] lastSubclass;
+
+  /** For an interface id minus {@link #classCount}, all transitive subtypes including itself. */
+  @Nonnull private final BitSet[] interfaceSubtypes;
+
+  /** Transitive super-interfaces of every type, most specific first. */
+  @Nonnull private final List<ClassType>[] superInterfaces;
+
+  @Nonnull private final BitSet concrete;
+
+  @Nonnull
+  private final Map<ClassType, List<ClassType>> concreteSubtypesCache = new ConcurrentHashMap<>();
+
+  public TypeHierarchyIndex(@Nonnull JavaView view) {
+    this(view.getClasses());
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private TypeHierarchyIndex(@Nonnull Collection<JavaSootClass> allClasses) {
+    Map<ClassType, JavaSootClass> byType = new HashMap<>();
+    for (JavaSootClass sootClass : allClasses) {
+      byType.put(sootClass.getType(), sootClass);
+    }
+
+    Comparator<ClassType> byName = Comparator.comparing(ClassType::getFullyQualifiedName);
+    Map<ClassType, List<ClassType>> subclasses = new HashMap<>();
+    List<ClassType> roots = new ArrayList<>();
+    List<ClassType> interfaces = new ArrayList<>();
+    for (JavaSootClass sootClass : byType.values()) {
+      if (sootClass.isInterface()) {
+        interfaces.add(sootClass.getType());
+        continue;
+      }
+      Optional<? extends ClassType> superclass = sootClass.getSuperclass();
+      if (superclass.isPresent() && byType.containsKey(superclass.get())) {
+        subclasses
+            .computeIfAbsent(superclass.get(), k -> new ArrayList<>())
+            .add(sootClass.getType());
+      } else {
+        roots.add(sootClass.getType());
+      }
+    }
+    roots.sort(byName);
+    interfaces.sort(byName);
+    subclasses.values().forEach(children -> children.sort(byName));
+
+    classCount = byType.size() - interfaces.size();
+    types = new ClassType[byType.size()];
+    classes = new JavaSootClass[byType.size()];
+    lastSubclass = new int[classCount];
+    ids = new HashMap<>();
+
+    // preorder numbering; an explicit stack keeps deep hierarchies off the call stack
+    int nextId = 0;
+    int[] parent = new int[classCount];
+    Deque<ClassType> stack = new ArrayDeque<>();
+    for (int i = roots.size() - 1; i >= 0; i--) {
+      stack.push(roots.get(i));
+    }
+    while (!stack.isEmpty()) {
+      ClassType type = stack.pop();
+      int id = nextId++;
+      assign(id, type, byType.get(type));
+      Integer parentId = byType.get(type).getSuperclass().map(ids::get).orElse(null);
+      parent[id] = parentId == null ? -1 : parentId;
+      List<ClassType> children = subclasses.getOrDefault(type, Collections.emptyList());
+      for (int i = children.size() - 1; i >= 0; i--) {
+        stack.push(children.get(i));
+      }
+    }
+    // children have larger ids than their parent, so a descending sweep sees whole subtrees
+    for (int id = classCount - 1; id >= 0; id--) {
+      lastSubclass[id] = Math.max(lastSubclass[id], id);
+      if (parent[id] >= 0) {
+        lastSubclass[parent[id]] = Math.max(lastSubclass[parent[id]], lastSubclass[id]);
+      }
+    }
+    for (ClassType interfaceType : interfaces) {
+      assign(nextId++, interfaceType, byType.get(interfaceType));
+    }
+
+    concrete = new BitSet(types.length);
+    superInterfaces = new List[types.length];
+    interfaceSubtypes = new BitSet[interfaces.size()];
+    for (int i = 0; i < interfaceSubtypes.length; i++) {
+      interfaceSubtypes[i] = new BitSet(types.length);
+      interfaceSubtypes[i].set(classCount + i);
+    }
+    for (int id = 0; id < types.length; id++) {
+      if (!classes[id].isInterface() && !classes[id].isAbstract()) {
+        concrete.set(id);
+      }
+      for (ClassType superInterface : superInterfacesOf(id)) {
+        int interfaceId = ids.get(superInterface);
+        if (id < classCount) {
+          interfaceSubtypes[interfaceId - classCount].set(id, lastSubclass[id] + 1);
+        } else {
+          interfaceSubtypes[interfaceId - classCount].set(id);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the index of {@code view}, a later version of the program of this index in which {@code
+   * changedTypes} were added, removed or modified. Only the changed classes are loaded from {@code
+   * view}; the others are taken over from this index and merely renumbered.
+   */
+  @Nonnull
+  public TypeHierarchyIndex retainedFor(
+      @Nonnull JavaView view, @Nonnull Collection<ClassType> changedTypes) {
+    Map<ClassType, JavaSootClass> byType = new HashMap<>();
+    for (JavaSootClass sootClass : classes) {
+      byType.put(sootClass.getType(), sootClass);
+    }
+    for (ClassType type : changedTypes) {
+      byType.remove(type);
+      view.getClass(type).ifPresent(sootClass -> byType.put(type, sootClass));
+    }
+    return new TypeHierarchyIndex(byType.values());
+  }
+
+  private void assign(int id, @Nonnull ClassType type, @Nonnull JavaSootClass sootClass) {
+    types[id] = type;
+    classes[id] = sootClass;
+    ids.put(type, id);
+  }
+
+  /** Computes (and memoizes) the transitive super-interfaces of {@code id}. */
+  @Nonnull
+  private List<ClassType> superInterfacesOf(int id) {
+    if (superInterfaces[id] != null) {
+      return superInterfaces[id];
+    }
+    Set<ClassType> result = new LinkedHashSet<>();
+    List<ClassType> direct = new ArrayList<>(classes[id].getInterfaces());
+    direct.sort(Comparator.comparing(ClassType::getFullyQualifiedName));
+    for (ClassType directInterface : direct) {
+      Integer interfaceId = ids.get(directInterface);
+      if (interfaceId != null) {
+        result.add(directInterface);
+        result.addAll(superInterfacesOf(interfaceId));
+      }
+    }
+    Integer superclassId = classes[id].getSuperclass().map(ids::get).orElse(null);
+    if (superclassId != null) {
+      result.addAll(superInterfacesOf(superclassId));
+    }
+    superInterfaces[id] = Collections.unmodifiableList(new ArrayList<>(result));
+    return superInterfaces[id];
+  }
+
+  public int size() {
+    return types.length;
+  }
+
+  public boolean contains(@Nonnull ClassType type) {
+    return ids.containsKey(type);
+  }
+
+  /** Returns the dense id of {@code type}, or -1 if the type is not part of the view. */
+  public int idOf(@Nonnull ClassType type) {
+    Integer id = ids.get(type);
+    return id == null ? -1 : id;
+  }
+
+  @Nonnull
+  public ClassType typeOf(int id) {
+    return types[id];
+  }
+
+  @Nullable
+  public JavaSootClass classOf(@Nonnull ClassType type) {
+    Integer id = ids.get(type);
+    return id == null ? null : classes[id];
+  }
+
+  public boolean isInterface(@Nonnull ClassType type) {
+    int id = idOf(type);
+    return id >= classCount;
+  }
+
+  /** Whether objects of exactly this type can exist, i.e. it is a non-abstract class. */
+  public boolean isConcrete(@Nonnull ClassType type) {
+    int id = idOf(type);
+    return id >= 0 && concrete.get(id);
+  }
+
+  /**
+   * Reflexive subtype test. Every type is a subtype of {@code java.lang.Object}; otherwise types
+   * outside the view are only subtypes of themselves.
+   */
+  public boolean isSubtype(@Nonnull ClassType subtype, @Nonnull ClassType supertype) {
+    if (subtype.equals(supertype) || supertype.getFullyQualifiedName().equals(OBJECT)) {
+      return true;
+    }
+    int sub = idOf(subtype);
+    int sup = idOf(supertype);
+    if (sub < 0 || sup < 0) {
+      return false;
+    }
+    if (sup >= classCount) {
+      return interfaceSubtypes[sup - classCount].get(sub);
+    }
+    return sub < classCount && sup <= sub && sub <= lastSubclass[sup];
+  }
+
+  /** Returns the transitive super-interfaces of {@code type}, most specific first. */
+  @Nonnull
+  public List<ClassType> superInterfacesOf(@Nonnull ClassType type) {
+    int id = idOf(type);
+    return id < 0 ? Collections.emptyList() : superInterfaces[id];
+  }
+
+  /**
+   * Returns every non-abstract class of the view that is a subtype of {@code type}, including
+   * itself, ordered by id.
+   */
+  @Nonnull
+  public List<ClassType> allConcreteSubtypes(@Nonnull ClassType type) {
+    List<ClassType> cached = concreteSubtypesCache.get(type);
+    if (cached != null) {
+      return cached;
+    }
+    List<ClassType> result = new ArrayList<>();
+    forEachConcreteSubtype(type, result);
+    cached = Collections.unmodifiableList(result);
+    List<ClassType> previous = concreteSubtypesCache.putIfAbsent(type, cached);
+    return previous == null ? cached : previous;
+  }
+
+  /**
+   * Returns every type of the view that is a subtype of {@code type}, including itself and
+   * abstract classes and interfaces, ordered by id.
+   */
+  @Nonnull
+  public List<ClassType> allSubtypes(@Nonnull ClassType type) {
+    int id = idOf(type);
+    if (id < 0) {
+      return type.getFullyQualifiedName().equals(OBJECT)
+          ? Collections.unmodifiableList(Arrays.asList(types))
+          : Collections.emptyList();
+    }
+    List<ClassType> result = new ArrayList<>();
+    if (id < classCount) {
+      result.addAll(Arrays.asList(types).subList(id, lastSubclass[id] + 1));
+    } else {
+      BitSet subtypes = interfaceSubtypes[id - classCount];
+      for (int sub = subtypes.nextSetBit(0); sub >= 0; sub = subtypes.nextSetBit(sub + 1)) {
+        result.add(types[sub]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the superclasses of {@code type}, the direct one first, up to the first one outside the
+   * view, which is included.
+   */
+  @Nonnull
+  public List<ClassType> superclassesOf(@Nonnull ClassType type) {
+    List<ClassType> result = new ArrayList<>();
+    JavaSootClass current = classOf(type);
+    while (current != null && current.getSuperclass().isPresent()) {
+      ClassType superclass = current.getSuperclass().get();
+      result.add(superclass);
+      current = classOf(superclass);
+    }
+    return result;
+  }
+
+  private void forEachConcreteSubtype(@Nonnull ClassType type, @Nonnull Collection<ClassType> out) {
+    int id = idOf(type);
+    if (id < 0) {
+      if (type.getFullyQualifiedName().equals(OBJECT)) {
+        for (int sub = concrete.nextSetBit(0); sub >= 0; sub = concrete.nextSetBit(sub + 1)) {
+          out.add(types[sub]);
+        }
+      }
+      return;
+    }
+    if (id < classCount) {
+      for (int sub = concrete.nextSetBit(id);
+          sub >= 0 && sub <= lastSubclass[id];
+          sub = concrete.nextSetBit(sub + 1)) {
+        out.add(types[sub]);
+      }
+      return;
+    }
+    BitSet subtypes = interfaceSubtypes[id - classCount];
+    for (int sub = subtypes.nextSetBit(0); sub >= 0; sub = subtypes.nextSetBit(sub + 1)) {
+      if (concrete.get(sub)) {
+        out.add(types[sub]);
+      }
+    }
+  }
+}
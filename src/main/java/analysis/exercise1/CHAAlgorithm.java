@@ -2,162 +2,390 @@ package analysis.exercise1;
 
 import analysis.CallGraph;
 import analysis.CallGraphAlgorithm;
+import analysis.ConcurrentCallGraph;
+import analysis.DispatchCache;
+import analysis.LazyCallGraph;
+import analysis.MethodSummary;
+import analysis.MethodSummary.CallKind;
+import analysis.ReachableMethods;
+import analysis.TypeHierarchyIndex;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
-import sootup.core.jimple.common.stmt.JInvokeStmt;
-import sootup.core.jimple.common.stmt.Stmt;
+import sootup.core.jimple.common.expr.AbstractInvokeExpr;
 import sootup.core.signatures.MethodSignature;
-import sootup.core.typehierarchy.TypeHierarchy;
 import sootup.core.types.ClassType;
+import sootup.java.core.JavaSootClass;
 import sootup.java.core.JavaSootMethod;
 import sootup.java.core.views.JavaView;
 
 public class CHAAlgorithm extends CallGraphAlgorithm {
 
+    private final int parallelism;
+
+    /** The entry points of the call graph constructed or updated last. */
+    private final Set<MethodSignature> entryPoints = new HashSet<>();
+
+    /** For every type named at a call site, the methods containing such a site; see {@link #updateCallGraph}. */
+    private final Map<ClassType, Set<MethodSignature>> callersByDeclaredType = new ConcurrentHashMap<>();
+
+    /**
+     * The call graph and view that {@link #entryPoints} and {@link #callersByDeclaredType} describe, the only
+     * ones {@link #updateCallGraph} patches incrementally.
+     */
+    @Nullable
+    private CallGraph populatedGraph;
+    @Nullable
+    private JavaView populatedView;
+
+    public CHAAlgorithm() {
+        this(1);
+    }
+
+    /**
+     * @param parallelism number of worker threads. Values above 1 process the reachable methods on a
+     *                    {@link ForkJoinPool}; the resulting call graph is the same as the sequential one.
+     */
+    public CHAAlgorithm(final int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     @Nonnull
     @Override
     protected String getAlgorithm() {
         return "CHA";
     }
 
+    @Nonnull
+    @Override
+    protected CallGraph createCallGraph() {
+        return parallelism > 1 ? new ConcurrentCallGraph(getAlgorithm()) : super.createCallGraph();
+    }
+
+    /** A call graph read from the result cache leaves the entry points and call sites unknown. */
+    @Nonnull
+    @Override
+    public CallGraph constructCallGraph(final @Nonnull JavaView view) {
+        clearPopulated();
+        return super.constructCallGraph(view);
+    }
+
     @Override
     public void populateCallGraph(@Nonnull JavaView view, @Nonnull CallGraph cg) {
 
-        final Collection<MethodSignature> entryPoints = getEntryPoints(view).collect(Collectors.toList());
+        final List<MethodSignature> entryPoints = getEntryPoints(view).sorted().collect(Collectors.toList());
+        clearPopulated();
+        this.entryPoints.addAll(entryPoints);
 
-        for (MethodSignature entryPoint : entryPoints) {
-            processMethod(entryPoint, view, cg);
+        if (parallelism > 1) {
+            populateInParallel(entryPoints, view, cg);
+        } else {
+            final DispatchCache dispatchCache = getDispatchCache(view);
+            entryPoints.forEach(reachableMethods::add);
+            MethodSignature method;
+            while ((method = reachableMethods.poll()) != null) {
+                cg.addNodeIfAbsent(method);
+                for (final MethodSignature target : resolveCallees(method, dispatchCache, view, reachableMethods)) {
+                    cg.addNodeIfAbsent(target);
+                    cg.addEdgeIfAbsent(method, target);
+                    reachableMethods.add(target);
+                }
+            }
         }
+        populatedGraph = cg;
+        populatedView = view;
+    }
+
+    private void clearPopulated() {
+        populatedGraph = null;
+        populatedView = null;
+        entryPoints.clear();
+        callersByDeclaredType.clear();
+    }
+
+    /**
+     * Returns a call graph that resolves a method when its callees are first asked for, for callers interested
+     * in a few methods only. Each resolution scans one body; {@link #getReachableMethods()} counts the bodies
+     * scanned so far, until this instance constructs another call graph.
+     */
+    @Nonnull
+    public LazyCallGraph constructLazyCallGraph(final @Nonnull JavaView view) {
+        clearPopulated();
+        this.view = view;
+        this.reachableMethods = new ReachableMethods();
+        return new LazyCallGraph(getAlgorithm(), lazyResolver(view, getDispatchCache(view)));
     }
 
-    private void processMethod(final @Nonnull MethodSignature method, final @Nonnull JavaView view, final @Nonnull CallGraph cg) {
+    /** Resolves a single method of a {@link LazyCallGraph}. */
+    @Nonnull
+    protected LazyCallGraph.Resolver lazyResolver(final @Nonnull JavaView view,
+                                                  final @Nonnull DispatchCache dispatchCache) {
+        final ReachableMethods reachable = reachableMethods;
+        return (method, cg) -> {
+            reachable.markReachable(method);
+            for (final MethodSignature target : resolveCallees(method, dispatchCache, view, reachable)) {
+                cg.addNodeIfAbsent(target);
+                cg.addEdgeIfAbsent(method, target);
+            }
+        };
+    }
 
-        final TypeHierarchy typeHierarchy = view.getTypeHierarchy();
+    /**
+     * Re-resolves only the methods the change may affect: those declared in a changed type and those with a call
+     * site naming a type whose dispatch results may differ (see {@link DispatchCache#affectedTypes}). Their old
+     * edges are replaced, newly reachable methods are added, and methods no entry point reaches anymore are
+     * removed. Dispatch results and bodies of unaffected types are kept, and so are their classes: only the
+     * changed types are loaded from {@code view}. Falls back to a rebuild unless {@code cg} is the graph this
+     * instance populated or updated last, for its current view: a graph read from the result cache, a lazy one,
+     * or one of another instance does not come with the entry points and call sites the update starts from.
+     */
+    @Override
+    public void updateCallGraph(final @Nonnull JavaView view, final @Nonnull CallGraph cg,
+                                final @Nonnull Collection<ClassType> changedTypes) {
 
-        final Optional<JavaSootMethod> javaMethodOpt = view.getMethod(method);
-        if (!javaMethodOpt.isPresent()) {
+        if (cg != populatedGraph || this.view != populatedView) {
+            rebuildCallGraph(view, cg);
             return;
         }
+        // restored below; an update that fails halfway leaves the graph to a rebuild
+        populatedGraph = null;
 
-        final JavaSootMethod javaMethod = javaMethodOpt.get();
-        if (!javaMethod.hasBody()) {
-            return;
+        final DispatchCache previous = getDispatchCache(this.view);
+        final TypeHierarchyIndex hierarchy = previous.getHierarchy().retainedFor(view, changedTypes);
+        final Set<ClassType> affectedTypes = DispatchCache.affectedTypes(previous.getHierarchy(), hierarchy,
+                changedTypes);
+        final DispatchCache dispatchCache = previous.retainedFor(view, hierarchy, affectedTypes);
+        setDispatchCache(dispatchCache);
+        setBodyCache(getBodyCache(this.view).retainedFor(view, changedTypes));
+
+        final Set<MethodSignature> affected = new LinkedHashSet<>();
+        for (final ClassType type : changedTypes) {
+            final JavaSootClass before = previous.getHierarchy().classOf(type);
+            if (before != null) {
+                before.getMethods().forEach(m -> affected.add(m.getSignature()));
+            }
+            entryPoints.removeIf(m -> m.getDeclClassType().equals(type));
+        }
+        for (final ClassType type : affectedTypes) {
+            final Set<MethodSignature> callers = callersByDeclaredType.remove(type);
+            if (callers != null) {
+                affected.addAll(callers);
+            }
         }
+        affected.removeIf(m -> !cg.hasNode(m));
 
-        for (final Stmt instruction : javaMethod.getBody().getStmts()) {
-            if (instruction instanceof JInvokeStmt) {
-                final MethodSignature invocation = instruction.getInvokeExpr().getMethodSignature();
-                final Set<Optional<JavaSootMethod>> possibleTargets = resolveTargets(invocation, typeHierarchy, view, cg);
+        this.view = view;
+        this.reachableMethods = new ReachableMethods();
+        populatedView = view;
 
-                // Add edges to the call graph
-                for (final Optional<JavaSootMethod> target : possibleTargets) {
-                    if (!cg.hasNode(method)) {
-                        cg.addNode(method);
-                    }
-                    if (target.isPresent() && !cg.hasNode(target.get().getSignature())) {
-                        cg.addNode(target.get().getSignature());
-                    }
-                    if (!cg.hasEdge(method, target.get().getSignature())) {
-                        target.ifPresent(javaSootMethod -> cg.addEdge(method, javaSootMethod.getSignature()));
+        // the former callees may have become unreachable
+        final Set<MethodSignature> formerCallees = new HashSet<>();
+        final Deque<MethodSignature> worklist = new ArrayDeque<>();
+        for (final MethodSignature method : affected) {
+            for (final MethodSignature target : new ArrayList<>(cg.edgesOutOf(method))) {
+                cg.removeEdge(method, target);
+                formerCallees.add(target);
+            }
+            final JavaSootClass declaring = hierarchy.classOf(method.getDeclClassType());
+            if (declaring != null && declaring.getMethod(method.getSubSignature()).isPresent()) {
+                worklist.add(method);
+            } else {
+                cg.removeNode(method);
+            }
+        }
+        for (final ClassType type : changedTypes) {
+            final JavaSootClass after = hierarchy.classOf(type);
+            if (after == null) {
+                continue;
+            }
+            for (final JavaSootMethod method : after.getMethods()) {
+                if (isEntryPoint(method)) {
+                    entryPoints.add(method.getSignature());
+                    if (cg.addNodeIfAbsent(method.getSignature())) {
+                        worklist.add(method.getSignature());
                     }
                 }
             }
         }
+
+        MethodSignature method;
+        while ((method = worklist.poll()) != null) {
+            reachableMethods.markReachable(method);
+            for (final MethodSignature target : resolveCallees(method, dispatchCache, view, reachableMethods)) {
+                if (cg.addNodeIfAbsent(target)) {
+                    worklist.add(target);
+                }
+                cg.addEdgeIfAbsent(method, target);
+            }
+        }
+        removeUnreachable(cg, formerCallees);
+        populatedGraph = cg;
     }
 
-    private Set<Optional<JavaSootMethod>> resolveTargets(final @Nonnull MethodSignature invocation,
-                                                         final @Nonnull TypeHierarchy typeHierarchy,
-                                                         final @Nonnull JavaView view, final @Nonnull CallGraph cg) {
+    /**
+     * Removes the methods no entry point reaches anymore. Only {@code candidates} and their transitive callees
+     * can be affected; a method among them is still reachable if it is an entry point, has a caller outside
+     * them, or is called by one that is.
+     */
+    private void removeUnreachable(final @Nonnull CallGraph cg, final @Nonnull Set<MethodSignature> candidates) {
+        final Set<MethodSignature> region = new HashSet<>();
+        final Deque<MethodSignature> worklist = new ArrayDeque<>();
+        for (final MethodSignature candidate : candidates) {
+            if (cg.hasNode(candidate) && region.add(candidate)) {
+                worklist.add(candidate);
+            }
+        }
+        MethodSignature method;
+        while ((method = worklist.poll()) != null) {
+            for (final MethodSignature target : cg.edgesOutOf(method)) {
+                if (region.add(target)) {
+                    worklist.add(target);
+                }
+            }
+        }
 
-        final Set<Optional<JavaSootMethod>> targets = new HashSet<>();
-        final Set<ClassType> processedClasses = new HashSet<>();
+        final Set<MethodSignature> live = new HashSet<>();
+        for (final MethodSignature member : region) {
+            if (entryPoints.contains(member) || !region.containsAll(cg.edgesInto(member))) {
+                live.add(member);
+                worklist.add(member);
+            }
+        }
+        while ((method = worklist.poll()) != null) {
+            for (final MethodSignature target : cg.edgesOutOf(method)) {
+                if (region.contains(target) && live.add(target)) {
+                    worklist.add(target);
+                }
+            }
+        }
+        for (final MethodSignature member : region) {
+            if (!live.contains(member)) {
+                cg.removeNode(member);
+            }
+        }
+    }
 
-        final MethodSignature signature = invocation.getDeclClassType().getStaticInitializer();
+    private void populateInParallel(final @Nonnull List<MethodSignature> entryPoints, final @Nonnull JavaView view,
+                                    final @Nonnull CallGraph cg) {
 
-        final ClassType receiverType = invocation.getDeclClassType();
+        // loads all classes and indexes the hierarchy before the workers start, which share one body cache
+        final DispatchCache dispatchCache = getDispatchCache(view);
+        getBodyCache(view);
 
-        // Get all possible classes in the hierarchy that match the receiver type
-        final Queue<ClassType> toProcess = new LinkedList<>();
-        toProcess.add(receiverType);
+        final CallGraph concurrentCg = cg instanceof ConcurrentCallGraph ? cg : new ConcurrentCallGraph(cg.algorithm);
+        final ReachableMethods reachable = reachableMethods;
+        entryPoints.forEach(reachable::markReachable);
 
-        while (!toProcess.isEmpty() && (!signature.toString().contains("java"))) {
-            ClassType currentType = toProcess.poll();
-            if (!processedClasses.add(currentType)) {
-                continue;
-            }
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new CountedCompleter<Void>() {
+                @Override
+                public void compute() {
+                    for (final MethodSignature entryPoint : entryPoints) {
+                        addToPendingCount(1);
+                        new ProcessMethodTask(this, entryPoint, dispatchCache, view, concurrentCg, reachable).fork();
+                    }
+                    tryComplete();
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
 
-            // Check if the current type declares or inherits the target method
-            final List<Optional<JavaSootMethod>> resolvedMethods = new ArrayList<>(Collections.singletonList(view.getMethod(invocation)));
+        if (concurrentCg != cg) {
+            concurrentCg.getNodes().forEach(cg::addNodeIfAbsent);
+            concurrentCg.getEdges().forEach(edge -> cg.addEdgeIfAbsent(edge.source, edge.target));
+        }
+    }
 
-            if (!typeHierarchy.superClassesOf(receiverType).toString().contains("Object")) {
-                resolvedMethods.add(view.getMethod(withDeclClassType(invocation, typeHierarchy.superClassOf(receiverType).get())));
-            }
+    /**
+     * Processes the body of one reachable method and forks a task for every callee that was not reachable
+     * before. {@link ReachableMethods#markReachable} decides which worker owns a newly reachable method.
+     */
+    private final class ProcessMethodTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
 
-            if (typeHierarchy.isInterface(currentType)) {
-                resolvedMethods.add(view.getMethod(withDeclClassType(invocation, typeHierarchy.implementersOf(receiverType).findAny().get())));
-            }
+        private final MethodSignature method;
+        private final DispatchCache dispatchCache;
+        private final JavaView view;
+        private final CallGraph cg;
+        private final ReachableMethods reachable;
 
-//            if (!typeHierarchy.subclassesOf(receiverType).collect(Collectors.toList()).isEmpty() && !typeHierarchy.subclassesOf(receiverType).toString().contains("Object")) {
-//                resolvedMethods.add(view.getMethod(withDeclClassType(invocation, typeHierarchy.subclassesOf(receiverType).findAny().get())));
-//            }
-
-            if (!resolvedMethods.isEmpty() && resolvedMethods.stream().allMatch(Optional::isPresent)) {
-                // Traverse the superclass and interfaces to check if they declare the method
-                Optional<ClassType> superClass = typeHierarchy.superClassOf(currentType);
-                while (superClass.isPresent() && !superClass.get().getClassName().equals("Object")) {
-                    MethodSignature updatedInvocation = withDeclClassType(invocation, superClass.get());
-                    resolvedMethods.add(view.getMethod(updatedInvocation));
-                    if (resolvedMethods.isEmpty()) {
-                        break;
-                    }
-                    superClass = typeHierarchy.superClassOf(superClass.get());
+        ProcessMethodTask(final CountedCompleter<?> parent, final MethodSignature method,
+                          final DispatchCache dispatchCache, final JavaView view, final CallGraph cg,
+                          final ReachableMethods reachable) {
+            super(parent);
+            this.method = method;
+            this.dispatchCache = dispatchCache;
+            this.view = view;
+            this.cg = cg;
+            this.reachable = reachable;
+        }
+
+        @Override
+        public void compute() {
+            cg.addNodeIfAbsent(method);
+            for (final MethodSignature target : resolveCallees(method, dispatchCache, view, reachable)) {
+                cg.addNodeIfAbsent(target);
+                cg.addEdgeIfAbsent(method, target);
+                if (reachable.markReachable(target)) {
+                    addToPendingCount(1);
+                    new ProcessMethodTask(this, target, dispatchCache, view, cg, reachable).fork();
                 }
             }
-            if (!resolvedMethods.isEmpty()) {
-                resolvedMethods.forEach(rm -> {
-                    if (rm.isPresent()) {
-                        targets.add(rm);
-                    }
-                });
-            }
+            tryComplete();
+        }
+    }
 
-            // Add subclasses and implemented interfaces if present
-            if (typeHierarchy.isInterface(currentType)) {
-                toProcess.addAll(typeHierarchy.implementersOf(currentType).collect(Collectors.toSet()));
-            } else {
-                toProcess.addAll(typeHierarchy.subclassesOf(currentType).collect(Collectors.toSet()));
-            }
+    /**
+     * Resolves every call site in the body of {@code method}, counting the visit in {@code reachable}. Apart from
+     * that and recording the types the sites name, side-effect free, so it may run on several threads at once.
+     */
+    @Nonnull
+    protected Set<MethodSignature> resolveCallees(final @Nonnull MethodSignature method,
+                                                  final @Nonnull DispatchCache dispatchCache,
+                                                  final @Nonnull JavaView view,
+                                                  final @Nonnull ReachableMethods reachable) {
 
-            final Optional<ClassType> superClass = typeHierarchy.superClassOf(currentType);
-            superClass.ifPresent(sc -> {
-                if (!sc.getClassName().equals("Object")) {
-                    toProcess.add(sc);
-                }
-            });
+        final MethodSummary summary = getBodyCache(view).summaryOf(method);
+        if (summary == null) {
+            return Collections.emptySet();
         }
 
-        // for the methods inside the current method
-        if (!invocation.getDeclClassType().toString().contains("Object") && invocation.toString().contains("exercise1")) {
-            if (!view.getMethod(invocation).isPresent() && !typeHierarchy.superClassesOf(receiverType).toString().contains("Object")) {
-                processMethod(withDeclClassType(invocation, typeHierarchy.superClassOf(receiverType).get()), view, cg);
-            } else {
-                processMethod(invocation, view, cg);
-            }
-            processMethod(withDeclClassType(invocation, typeHierarchy.superClassOf(receiverType).get()), view, cg);
+        reachable.recordBodyVisit(method);
+        final Set<MethodSignature> callees = new HashSet<>();
+        for (int i = 0; i < summary.getCallSiteCount(); i++) {
+            final AbstractInvokeExpr invoke = summary.getInvoke(i);
+            callersByDeclaredType.computeIfAbsent(invoke.getMethodSignature().getDeclClassType(),
+                    k -> ConcurrentHashMap.newKeySet()).add(method);
+            callees.addAll(resolveTargets(invoke, summary.getCallKind(i), dispatchCache));
         }
-        return targets;
+        return callees;
     }
 
-    private MethodSignature withDeclClassType(final MethodSignature original, final ClassType newDeclClassType) {
-        return new MethodSignature(
-                newDeclClassType,
-                original.getName(),
-                original.getParameterTypes(),
-                original.getType()
-        );
+    /**
+     * Static and special invocations call the method they name (or the one it inherits). Virtual and
+     * interface invocations may additionally reach the implementation of every concrete subtype of the
+     * declaring class.
+     */
+    @Nonnull
+    protected Set<MethodSignature> resolveTargets(final @Nonnull AbstractInvokeExpr invoke,
+                                                  final @Nonnull CallKind kind,
+                                                  final @Nonnull DispatchCache dispatchCache) {
+
+        final MethodSignature invocation = invoke.getMethodSignature();
+        if (kind == CallKind.VIRTUAL) {
+            return dispatchCache.virtualTargets(invocation.getDeclClassType(), invocation.getSubSignature());
+        }
+        return dispatchCache.resolveDeclared(invocation.getDeclClassType(), invocation.getSubSignature())
+                .map(Collections::singleton)
+                .orElse(Collections.emptySet());
     }
 
-}
\ No newline at end of file
+}
@@ -1,26 +1,45 @@
 package analysis.exercise2;
 
 import analysis.CallGraph;
+import analysis.DispatchCache;
+import analysis.LazyCallGraph;
+import analysis.MethodSummary;
+import analysis.ReachableMethods;
+import analysis.TypeHierarchyIndex;
 import analysis.exercise1.CHAAlgorithm;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
-import sootup.core.jimple.common.expr.JStaticInvokeExpr;
-import sootup.core.jimple.common.stmt.JAssignStmt;
-import sootup.core.jimple.common.stmt.JInvokeStmt;
-import sootup.core.jimple.common.stmt.Stmt;
+import sootup.core.jimple.common.expr.AbstractInvokeExpr;
+import sootup.core.jimple.common.expr.JNewExpr;
 import sootup.core.signatures.MethodSignature;
+import sootup.core.signatures.MethodSubSignature;
 import sootup.core.types.ClassType;
-import sootup.java.core.JavaSootMethod;
-import sootup.java.core.jimple.basic.JavaLocal;
-import sootup.java.core.types.JavaClassType;
+import sootup.java.core.JavaIdentifierFactory;
 import sootup.java.core.views.JavaView;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Rapid Type Analysis. Keeps one set of the classes instantiated anywhere in reachable code, which only
+ * grows while the analysis runs. A virtual call site reaches the implementations of the instantiated
+ * subtypes of its declared receiver type; every site is remembered, so a type instantiated later is
+ * dispatched at the sites it affects only. Each reachable body is scanned once.
+ *
+ * <p>Every construction propagates over a state of its own, so a {@link LazyCallGraph} keeps answering alike
+ * while the same instance constructs other call graphs.
+ */
 public class RTAAlgorithm extends CHAAlgorithm {
 
+    /** A supertype of every type, also of those whose superclasses leave the view. */
+    private static final ClassType OBJECT = JavaIdentifierFactory.getInstance().getClassType("java.lang.Object");
+
+    /** The instantiated types of the call graph populated last. */
+    @Nonnull
+    private Set<ClassType> instantiatedTypes = Collections.emptySet();
+
     @Nonnull
     @Override
     protected String getAlgorithm() {
@@ -30,95 +49,216 @@ public class RTAAlgorithm extends CHAAlgorithm {
     @Override
     public void populateCallGraph(@Nonnull JavaView view, @Nonnull CallGraph cg) {
 
-        final Collection<MethodSignature> entryPoints = getEntryPoints(view).filter(e -> e.toString().contains("exercise2")).collect(Collectors.toList());
+        final Propagation propagation = new Propagation(getDispatchCache(view), reachableMethods);
+        instantiatedTypes = propagation.instantiatedTypes;
+
+        getEntryPoints(view).forEach(reachableMethods::add);
 
-        for (final MethodSignature entryPoint : entryPoints) {
-            processMethod(entryPoint, view, cg);
+        MethodSignature method;
+        while ((method = reachableMethods.poll()) != null) {
+            cg.addNodeIfAbsent(method);
+            processMethod(method, propagation, view, cg);
         }
     }
 
-    private void processMethod(final @Nonnull MethodSignature method, final @Nonnull JavaView view, final @Nonnull CallGraph cg) {
+    @Nonnull
+    @Override
+    protected Stream<MethodSignature> getEntryPoints(@Nonnull JavaView view) {
+        return super.getEntryPoints(view).filter(e -> e.toString().contains("exercise2"));
+    }
 
-        final Optional<JavaSootMethod> javaMethodOpt = view.getMethod(method);
-        if (!javaMethodOpt.isPresent()) {
-            return;
+    /**
+     * Rebuilds the call graph: any changed allocation may add or remove targets at call sites anywhere, so the
+     * incremental update of {@link CHAAlgorithm} does not apply.
+     */
+    @Override
+    public void updateCallGraph(final @Nonnull JavaView view, final @Nonnull CallGraph cg,
+                                final @Nonnull Collection<ClassType> changedTypes) {
+        rebuildCallGraph(view, cg);
+    }
+
+    /**
+     * Dispatches virtual call sites on the types instantiated anywhere CHA reaches from the entry points.
+     * Dispatching on the types of the methods resolved so far would make the callees of a method depend on which
+     * methods were asked for first, and miss targets that a later allocation adds. The set is a superset of the
+     * one {@link #populateCallGraph} ends with, so the answers are sound but may hold edges the eager call graph
+     * lacks; they never change once given.
+     *
+     * <p>The set is collected here, before the first resolution, which scans every body CHA reaches once: a lazy
+     * RTA call graph costs one whole-program scan up front, and its queries only the bodies they resolve.
+     */
+    @Nonnull
+    @Override
+    protected LazyCallGraph.Resolver lazyResolver(final @Nonnull JavaView view,
+                                                  final @Nonnull DispatchCache dispatchCache) {
+        final ReachableMethods reachable = reachableMethods;
+        final Propagation propagation = new Propagation(dispatchCache, null);
+        collectInstantiatedTypes(view, propagation, reachable);
+        return (method, cg) -> {
+            reachable.markReachable(method);
+            final MethodSummary summary = getBodyCache(view).summaryOf(method);
+            if (summary != null) {
+                reachable.recordBodyVisit(method);
+                propagation.processCallSites(method, summary, cg);
+            }
+        };
+    }
+
+    /**
+     * Adds the classes allocated in the methods CHA finds reachable from the entry points to the instantiated
+     * types of {@code propagation}. Each of these bodies is scanned once.
+     */
+    private void collectInstantiatedTypes(final @Nonnull JavaView view, final @Nonnull Propagation propagation,
+                                          final @Nonnull ReachableMethods reachable) {
+        final Set<MethodSignature> visited = new HashSet<>();
+        final Deque<MethodSignature> worklist = new ArrayDeque<>();
+        getEntryPoints(view).forEach(worklist::add);
+        MethodSignature method;
+        while ((method = worklist.poll()) != null) {
+            if (!visited.add(method)) {
+                continue;
+            }
+            final MethodSummary summary = getBodyCache(view).summaryOf(method);
+            if (summary == null) {
+                continue;
+            }
+            reachable.recordBodyVisit(method);
+            for (int i = 0; i < summary.getAllocationCount(); i++) {
+                if (summary.getAllocation(i) instanceof JNewExpr) {
+                    propagation.instantiatedTypes.add(((JNewExpr) summary.getAllocation(i)).getType());
+                }
+            }
+            for (int i = 0; i < summary.getCallSiteCount(); i++) {
+                worklist.addAll(resolveTargets(summary.getInvoke(i), summary.getCallKind(i),
+                        propagation.dispatchCache));
+            }
         }
+    }
+
+    /** The classes instantiated in the reachable methods of the call graph populated last. */
+    @Nonnull
+    public Set<ClassType> getInstantiatedTypes() {
+        return Collections.unmodifiableSet(instantiatedTypes);
+    }
 
-        final JavaSootMethod javaMethod = javaMethodOpt.get();
-        if (!javaMethod.hasBody()) {
+    private void processMethod(final @Nonnull MethodSignature method, final @Nonnull Propagation propagation,
+                               final @Nonnull JavaView view, final @Nonnull CallGraph cg) {
+
+        final MethodSummary summary = getBodyCache(view).summaryOf(method);
+        if (summary == null) {
             return;
         }
-        final Map<JavaLocal, List<JavaClassType>> declaringClassesMap = new HashMap<>();
 
-        for (final Stmt instruction : javaMethod.getBody().getStmts()) {
+        reachableMethods.recordBodyVisit(method);
+        for (int i = 0; i < summary.getAllocationCount(); i++) {
+            if (summary.getAllocation(i) instanceof JNewExpr) {
+                propagation.instantiate(((JNewExpr) summary.getAllocation(i)).getType(), cg);
+            }
+        }
+        propagation.processCallSites(method, summary, cg);
+    }
+
+    /** The instantiated types and call sites one construction has seen so far. */
+    private final class Propagation {
 
-            MethodSignature invocation = null;
-            if (instruction instanceof JAssignStmt) {
-                final JAssignStmt assignStmt = (JAssignStmt) instruction;
-                if (assignStmt.getRightOp() instanceof JStaticInvokeExpr) {
-                    invocation = ((JStaticInvokeExpr) assignStmt.getRightOp()).getMethodSignature();
+        @Nonnull
+        private final DispatchCache dispatchCache;
 
-                    declaringClassesMap.put((JavaLocal) assignStmt.getLeftOp(), new ArrayList<>());
-                    if (view.getMethod(invocation).isPresent()) {
-                        for (final Stmt staticInstruction : view.getMethod(invocation).get().getBody().getStmts()) {
+        /** Where the targets of new edges are queued for processing; null if they are resolved on demand. */
+        @Nullable
+        private final ReachableMethods worklist;
 
-                            if (staticInstruction instanceof JInvokeStmt) {
-                                if (staticInstruction.getInvokeExpr().getMethodSignature().getName().equals("<init>")) {
-                                    declaringClassesMap.get(assignStmt.getLeftOp()).add((JavaClassType) staticInstruction.getInvokeExpr().getMethodSignature().getDeclClassType());
-                                }
-                            }
+        @Nonnull
+        private final Set<ClassType> instantiatedTypes = new LinkedHashSet<>();
 
-                        }
-                    }
-                }
-            }
-            if (instruction instanceof JInvokeStmt) {
-
-                if (instruction.getInvokeExpr().getMethodSignature().getName().equals("<init>")) {
-                    final List<JavaClassType> declaringClassList = new ArrayList<>();
-                    declaringClassList.add((JavaClassType) instruction.getInvokeExpr().getMethodSignature().getDeclClassType());
-                    declaringClassesMap.put((JavaLocal) instruction.getInvokeExpr().getUses().collect(Collectors.toList()).get(0), declaringClassList);
-
-                } else if (!declaringClassesMap.isEmpty()) {
-                    if (declaringClassesMap.containsKey(instruction.getInvokeExpr().getUses().collect(Collectors.toList()).get(0))) {
-                        final List<JavaClassType> classes = declaringClassesMap.get(instruction.getInvokeExpr().getUses().collect(Collectors.toList()).get(0));
-                        for (final JavaClassType classType : classes) {
-                            invocation = formNewMethodSignature(instruction.getInvokeExpr().getMethodSignature(), classType);
-                            checkAndFormEdge(view, invocation, method, cg);
-                        }
+        /**
+         * Callers with virtual and interface call sites, by declared receiver type and invoked sub-signature.
+         * Sites of one method that share both always reach the same targets, so they are not told apart.
+         */
+        @Nonnull
+        private final Map<ClassType, Map<MethodSubSignature, Set<MethodSignature>>> virtualCallSites =
+                new HashMap<>();
 
+        Propagation(final @Nonnull DispatchCache dispatchCache, final @Nullable ReachableMethods worklist) {
+            this.dispatchCache = dispatchCache;
+            this.worklist = worklist;
+        }
+
+        void processCallSites(final @Nonnull MethodSignature method, final @Nonnull MethodSummary summary,
+                              final @Nonnull CallGraph cg) {
+
+            for (int i = 0; i < summary.getCallSiteCount(); i++) {
+                final AbstractInvokeExpr invoke = summary.getInvoke(i);
+                final MethodSummary.CallKind kind = summary.getCallKind(i);
+                if (kind == MethodSummary.CallKind.VIRTUAL) {
+                    final MethodSignature invocation = invoke.getMethodSignature();
+                    addVirtualCallSite(method, invocation.getDeclClassType(), invocation.getSubSignature(), cg);
+                } else {
+                    for (final MethodSignature target : resolveTargets(invoke, kind, dispatchCache)) {
+                        addEdge(method, target, cg);
                     }
                 }
             }
-            if (invocation == null) {
-                continue;
-            }
+        }
 
-            checkAndFormEdge(view, invocation, method, cg);
+        /** Records a new call site and dispatches it on the types instantiated so far. */
+        private void addVirtualCallSite(final @Nonnull MethodSignature caller, final @Nonnull ClassType declaredType,
+                                        final @Nonnull MethodSubSignature subSignature, final @Nonnull CallGraph cg) {
 
+            if (!virtualCallSites.computeIfAbsent(declaredType, k -> new HashMap<>())
+                    .computeIfAbsent(subSignature, k -> new HashSet<>()).add(caller)) {
+                return;
+            }
+            for (final ClassType subtype : dispatchCache.getHierarchy().allConcreteSubtypes(declaredType)) {
+                if (instantiatedTypes.contains(subtype)) {
+                    dispatchCache.dispatch(subtype, subSignature).ifPresent(target -> addEdge(caller, target, cg));
+                }
+            }
         }
-    }
-
-    private MethodSignature formNewMethodSignature(final MethodSignature original, final ClassType newDeclClassType) {
-        return new MethodSignature(
-                newDeclClassType,
-                original.getName(),
-                original.getParameterTypes(),
-                original.getType()
-        );
-    }
 
-    private void checkAndFormEdge(final JavaView view, final MethodSignature invocation, final MethodSignature method, final CallGraph cg) {
-        final Optional<JavaSootMethod> target = view.getMethod(invocation);
+        /**
+         * Adds {@code type} to the instantiated types and dispatches it at the known call sites it may reach,
+         * those declared on {@code type} or one of its supertypes.
+         */
+        void instantiate(final @Nonnull ClassType type, final @Nonnull CallGraph cg) {
 
-        if (!cg.hasNode(method)) {
-            cg.addNode(method);
-        }
-        if (target.isPresent() && !cg.hasNode(target.get().getSignature())) {
-            cg.addNode(target.get().getSignature());
+            if (!instantiatedTypes.add(type)) {
+                return;
+            }
+            final TypeHierarchyIndex hierarchy = dispatchCache.getHierarchy();
+            final Set<ClassType> supertypes = new LinkedHashSet<>();
+            supertypes.add(type);
+            // the same supertypes that TypeHierarchyIndex#isSubtype accepts: those in the view, and Object
+            for (final ClassType superclass : hierarchy.superclassesOf(type)) {
+                if (hierarchy.contains(superclass)) {
+                    supertypes.add(superclass);
+                }
+            }
+            supertypes.addAll(hierarchy.superInterfacesOf(type));
+            supertypes.add(OBJECT);
+            for (final ClassType supertype : supertypes) {
+                final Map<MethodSubSignature, Set<MethodSignature>> sites = virtualCallSites.get(supertype);
+                if (sites == null) {
+                    continue;
+                }
+                for (final Map.Entry<MethodSubSignature, Set<MethodSignature>> site : sites.entrySet()) {
+                    final Optional<MethodSignature> target = dispatchCache.dispatch(type, site.getKey());
+                    if (target.isPresent()) {
+                        for (final MethodSignature caller : site.getValue()) {
+                            addEdge(caller, target.get(), cg);
+                        }
+                    }
+                }
+            }
         }
-        if (target.isPresent() && !cg.hasEdge(method, target.get().getSignature())) {
-            target.ifPresent(javaSootMethod -> cg.addEdge(method, javaSootMethod.getSignature()));
+
+        private void addEdge(final @Nonnull MethodSignature caller, final @Nonnull MethodSignature target,
+                             final @Nonnull CallGraph cg) {
+            cg.addNodeIfAbsent(target);
+            cg.addEdgeIfAbsent(caller, target);
+            if (worklist != null) {
+                worklist.add(target);
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,381 @@
+package analysis.exercise3;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+import javax.annotation.Nonnull;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.graph.implementations.MultiGraph;
+import sootup.core.jimple.basic.Value;
+import sootup.core.jimple.common.ref.JFieldRef;
+import sootup.core.types.ClassType;
+
+/**
+ * Type assignment graph of VTA. Every value is interned to a dense int node id, the assignment edges are
+ * kept as one growable int array per node and the type tags of a node as a {@link BitSet} over interned
+ * type ids, so building and querying the graph allocates no strings and boxes no ids. A hashed set of all
+ * edges rejects duplicates in constant time, however many successors a node has.
+ *
+ * <p>Locals are told apart by name (one graph per method body), field references by their printed form,
+ * i.e. all references to the same field share a node. Graphs spanning several methods intern their own
+ * keys with {@link #addKeyedNode(Object)}.
+ *
+ * <p>{@link #propagate()} collapses the strongly connected components and pushes the tags along the edges
+ * in a single topological pass. {@link #draw()} converts the graph to GraphStream for inspection.
+ */
+public class TypeAssignmentGraph {
+
+    private static final int[] NO_SUCCESSORS = new int[0];
+
+    @Nonnull
+    private final Map<Object, Integer> nodeIds = new HashMap<>();
+    @Nonnull
+    private Object[] labels = new Object[16];
+    @Nonnull
+    private int[][] successors = new int[16][];
+    @Nonnull
+    private int[] outDegrees = new int[16];
+    @Nonnull
+    private BitSet[] tags = new BitSet[16];
+    private int nodeCount = 0;
+
+    /** All edges as {@link #edgeKey(int, int)}, open addressing with 0 as the free slot. */
+    @Nonnull
+    private long[] edgeTable = new long[16];
+    private int edgeCount = 0;
+
+    @Nonnull
+    private final Map<ClassType, Integer> typeIds = new HashMap<>();
+    @Nonnull
+    private final List<ClassType> types = new ArrayList<>();
+
+    @Nonnull
+    private static Object keyOf(final @Nonnull Value value) {
+        return value instanceof JFieldRef ? value.toString() : value;
+    }
+
+    /** Returns the node of {@code value}, adding it first if needed. */
+    public int addNode(final @Nonnull Value value) {
+        return addNode(keyOf(value), value);
+    }
+
+    /**
+     * Returns the node of an arbitrary key, adding it first if needed. Keys need value-based {@code equals}
+     * and must not collide with the values added through {@link #addNode(Value)}.
+     */
+    public int addKeyedNode(final @Nonnull Object key) {
+        return addNode(key, key);
+    }
+
+    private int addNode(final @Nonnull Object key, final @Nonnull Object label) {
+        final Integer id = nodeIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        if (nodeCount == labels.length) {
+            final int capacity = nodeCount * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            successors = Arrays.copyOf(successors, capacity);
+            outDegrees = Arrays.copyOf(outDegrees, capacity);
+            tags = Arrays.copyOf(tags, capacity);
+        }
+        labels[nodeCount] = label;
+        successors[nodeCount] = NO_SUCCESSORS;
+        tags[nodeCount] = new BitSet();
+        nodeIds.put(key, nodeCount);
+        return nodeCount++;
+    }
+
+    /** Returns the node of {@code value}, or -1 if it has none. */
+    public int idOf(final @Nonnull Value value) {
+        final Integer id = nodeIds.get(keyOf(value));
+        return id == null ? -1 : id;
+    }
+
+    /** Returns the node of a key added with {@link #addKeyedNode(Object)}, or -1 if it has none. */
+    public int idOfKey(final @Nonnull Object key) {
+        final Integer id = nodeIds.get(key);
+        return id == null ? -1 : id;
+    }
+
+    public boolean containsNode(final @Nonnull Value value) {
+        return idOf(value) >= 0;
+    }
+
+    /** The value or key the node was added for. */
+    @Nonnull
+    public Object labelOf(final int node) {
+        return labels[node];
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Adds the assignment edge {@code source -> target}, i.e. types flow from source to target.
+     *
+     * @return whether the edge is new
+     */
+    public boolean addEdge(final int source, final int target) {
+        if (containsEdge(source, target)) {
+            return false;
+        }
+        int[] row = successors[source];
+        if (outDegrees[source] == row.length) {
+            row = successors[source] = Arrays.copyOf(row, Math.max(4, row.length * 2));
+        }
+        row[outDegrees[source]++] = target;
+        insertEdge(edgeKey(source, target));
+        return true;
+    }
+
+    /** Adds an edge between the nodes of two values, adding the nodes if needed. */
+    public boolean addEdge(final @Nonnull Value source, final @Nonnull Value target) {
+        return addEdge(addNode(source), addNode(target));
+    }
+
+    public boolean containsEdge(final int source, final int target) {
+        final long key = edgeKey(source, target);
+        for (int slot = slotOf(key); edgeTable[slot] != 0; slot = (slot + 1) & (edgeTable.length - 1)) {
+            if (edgeTable[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long edgeKey(final int source, final int target) {
+        // shifted by one, so the self edge of node 0 is not taken for a free slot
+        return (((long) source << 32) | target) + 1;
+    }
+
+    private int slotOf(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (edgeTable.length - 1);
+    }
+
+    private void insertEdge(final long key) {
+        if (++edgeCount * 2 > edgeTable.length) {
+            final long[] old = edgeTable;
+            edgeTable = new long[old.length * 2];
+            for (final long oldKey : old) {
+                if (oldKey != 0) {
+                    int slot = slotOf(oldKey);
+                    while (edgeTable[slot] != 0) {
+                        slot = (slot + 1) & (edgeTable.length - 1);
+                    }
+                    edgeTable[slot] = oldKey;
+                }
+            }
+        }
+        int slot = slotOf(key);
+        while (edgeTable[slot] != 0) {
+            slot = (slot + 1) & (edgeTable.length - 1);
+        }
+        edgeTable[slot] = key;
+    }
+
+    public int outDegree(final int node) {
+        return outDegrees[node];
+    }
+
+    public void forEachSuccessor(final int node, final @Nonnull IntConsumer action) {
+        final int[] row = successors[node];
+        for (int i = 0; i < outDegrees[node]; i++) {
+            action.accept(row[i]);
+        }
+    }
+
+    /** Returns the interned id of {@code type}, interning it first if needed. */
+    public int typeIdOf(final @Nonnull ClassType type) {
+        Integer id = typeIds.get(type);
+        if (id == null) {
+            id = types.size();
+            typeIds.put(type, id);
+            types.add(type);
+        }
+        return id;
+    }
+
+    @Nonnull
+    public ClassType typeOf(final int typeId) {
+        return types.get(typeId);
+    }
+
+    /** @return whether {@code type} is a new tag of {@code node} */
+    public boolean tagNode(final int node, final @Nonnull ClassType type) {
+        final int typeId = typeIdOf(type);
+        final BitSet nodeTags = tags[node];
+        if (nodeTags.get(typeId)) {
+            return false;
+        }
+        nodeTags.set(typeId);
+        return true;
+    }
+
+    /** The live tag set of {@code node}, as type ids. Callers may union into it. */
+    @Nonnull
+    public BitSet tagsOf(final int node) {
+        return tags[node];
+    }
+
+    /** Materializes the tags of the node of {@code value}; empty if the value has no node. */
+    @Nonnull
+    public Set<ClassType> getNodeTags(final @Nonnull Value value) {
+        final int node = idOf(value);
+        return node < 0 ? Collections.emptySet() : typesOf(tags[node]);
+    }
+
+    @Nonnull
+    public Set<ClassType> typesOf(final @Nonnull BitSet typeIds) {
+        final Set<ClassType> result = new LinkedHashSet<>();
+        for (int id = typeIds.nextSetBit(0); id >= 0; id = typeIds.nextSetBit(id + 1)) {
+            result.add(types.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Propagates the tags of every node to all nodes reachable from it. The strongly connected components are
+     * found with an iterative Tarjan walk, which completes them in reverse topological order. Visiting them in
+     * the opposite order, every component has received the tags of all its predecessors before they are
+     * pushed on, so each component and each edge is processed once.
+     *
+     * <p>Afterwards all members of a component share one tag set.
+     *
+     * @return the number of strongly connected components
+     */
+    public int propagate() {
+        final int[] component = computeComponents();
+        int componentCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            componentCount = Math.max(componentCount, component[node] + 1);
+        }
+
+        final BitSet[] componentTags = new BitSet[componentCount];
+        final int[][] members = new int[componentCount][];
+        final int[] memberCount = new int[componentCount];
+        for (int node = 0; node < nodeCount; node++) {
+            memberCount[component[node]]++;
+        }
+        for (int c = 0; c < componentCount; c++) {
+            members[c] = new int[memberCount[c]];
+            memberCount[c] = 0;
+            componentTags[c] = new BitSet();
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            final int c = component[node];
+            members[c][memberCount[c]++] = node;
+            componentTags[c].or(tags[node]);
+        }
+
+        // Tarjan numbers sink components first
+        for (int c = componentCount - 1; c >= 0; c--) {
+            final BitSet componentTypes = componentTags[c];
+            for (final int node : members[c]) {
+                tags[node] = componentTypes;
+                final int[] row = successors[node];
+                for (int i = 0; i < outDegrees[node]; i++) {
+                    final int successorComponent = component[row[i]];
+                    if (successorComponent != c) {
+                        componentTags[successorComponent].or(componentTypes);
+                    }
+                }
+            }
+        }
+        return componentCount;
+    }
+
+    /** Tarjan's algorithm with explicit stacks; returns the component index of every node. */
+    @Nonnull
+    private int[] computeComponents() {
+        final int[] component = new int[nodeCount];
+        final int[] index = new int[nodeCount];
+        final int[] lowLink = new int[nodeCount];
+        Arrays.fill(index, -1);
+        final int[] stack = new int[nodeCount];
+        final boolean[] onStack = new boolean[nodeCount];
+        final int[] callStack = new int[nodeCount];
+        final int[] nextEdge = new int[nodeCount];
+        int stackSize = 0;
+        int nextIndex = 0;
+        int nextComponent = 0;
+
+        for (int root = 0; root < nodeCount; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth] = root;
+            nextEdge[root] = 0;
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                final int node = callStack[depth];
+                if (nextEdge[node] < outDegrees[node]) {
+                    final int successor = successors[node][nextEdge[node]++];
+                    if (index[successor] < 0) {
+                        index[successor] = lowLink[successor] = nextIndex++;
+                        stack[stackSize++] = successor;
+                        onStack[successor] = true;
+                        nextEdge[successor] = 0;
+                        callStack[++depth] = successor;
+                    } else if (onStack[successor]) {
+                        lowLink[node] = Math.min(lowLink[node], index[successor]);
+                    }
+                    continue;
+                }
+
+                if (lowLink[node] == index[node]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        component[member] = nextComponent;
+                    } while (member != node);
+                    nextComponent++;
+                }
+                if (--depth >= 0) {
+                    final int parent = callStack[depth];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+            }
+        }
+        return component;
+    }
+
+    /** Builds a GraphStream copy of the graph and displays it. Debugging only. */
+    public void draw() {
+        toGraphStream().display();
+    }
+
+    @Nonnull
+    Graph toGraphStream() {
+        final Graph graph = new MultiGraph("tag");
+        for (int node = 0; node < nodeCount; node++) {
+            final Node graphNode = graph.addNode(Integer.toString(node));
+            graphNode.setAttribute("value", labels[node]);
+            graphNode.setAttribute("ui.label", labels[node]);
+            graphNode.setAttribute("tags", typesOf(tags[node]));
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            final int source = node;
+            forEachSuccessor(node, target -> graph.addEdge(source + "-" + target,
+                    Integer.toString(source), Integer.toString(target), true));
+        }
+        return graph;
+    }
+
+    @Override
+    public String toString() {
+        return "TypeAssignmentGraph{nodes=" + nodeCount + ", edges=" + edgeCount + ", types=" + types.size() + '}';
+    }
+}
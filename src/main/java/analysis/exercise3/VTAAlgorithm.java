@@ -2,36 +2,38 @@ package analysis.exercise3;
 
 import analysis.CallGraph;
 import analysis.CallGraphAlgorithm;
+import analysis.DispatchCache;
+import analysis.MethodSummary;
 
 import java.util.*;
-import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 
-import analysis.exercise1.CHAAlgorithm;
-import org.graphstream.algorithm.TarjanStronglyConnectedComponents;
-import org.graphstream.graph.Graph;
-import org.graphstream.graph.Node;
-import org.graphstream.graph.implementations.MultiGraph;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import sootup.core.jimple.basic.Local;
 import sootup.core.jimple.basic.Value;
 import sootup.core.jimple.common.expr.JCastExpr;
 import sootup.core.jimple.common.expr.JNewExpr;
-import sootup.core.jimple.common.expr.JStaticInvokeExpr;
-import sootup.core.jimple.common.ref.JFieldRef;
 import sootup.core.jimple.common.ref.JStaticFieldRef;
-import sootup.core.jimple.common.stmt.JAssignStmt;
-import sootup.core.jimple.common.stmt.JInvokeStmt;
-import sootup.core.jimple.common.stmt.Stmt;
 import sootup.core.signatures.MethodSignature;
+import sootup.core.signatures.MethodSubSignature;
 import sootup.core.types.ClassType;
-import sootup.java.core.JavaSootMethod;
-import sootup.java.core.jimple.basic.JavaLocal;
 import sootup.java.core.views.JavaView;
 
 public class VTAAlgorithm extends CallGraphAlgorithm {
 
-    private final Logger log = LoggerFactory.getLogger("VTA");
+    private final boolean wholeProgram;
+
+    public VTAAlgorithm() {
+        this(false);
+    }
+
+    /**
+     * @param wholeProgram whether types flow across methods through one program-wide assignment graph with
+     *                     parameter, return and field nodes (see {@link WholeProgramTypePropagation}). Otherwise
+     *                     every method gets its own graph and types stop at method boundaries.
+     */
+    public VTAAlgorithm(final boolean wholeProgram) {
+        this.wholeProgram = wholeProgram;
+    }
 
     @Nonnull
     @Override
@@ -39,18 +41,25 @@ public class VTAAlgorithm extends CallGraphAlgorithm {
         return "VTA";
     }
 
+    @Nonnull
+    @Override
+    protected String getOptions() {
+        return wholeProgram ? "wholeProgram" : "perMethod";
+    }
+
     @Override
     public void populateCallGraph(@Nonnull JavaView view, @Nonnull CallGraph cg) {
 
-        final CHAAlgorithm chaCg  = new CHAAlgorithm();
-        chaCg.populateCallGraph(view, cg);
+        getEntryPoints(view).forEach(reachableMethods::add);
 
-        final Collection<MethodSignature> entryPoints = getEntryPoints(view).collect(Collectors.toList());
-        cg.getNodes().clear();
-        cg.getEdges().clear();
+        if (wholeProgram) {
+            new WholeProgramTypePropagation(getBodyCache(view), getDispatchCache(view), reachableMethods, cg).solve();
+            return;
+        }
 
-        for (final MethodSignature entryPoint : entryPoints) {
-            processMethod(entryPoint, view, cg);
+        MethodSignature method;
+        while ((method = reachableMethods.poll()) != null) {
+            processMethod(method, view, cg);
         }
     }
 
@@ -58,134 +67,98 @@ public class VTAAlgorithm extends CallGraphAlgorithm {
 
         //create TAG for every var and then, iterate again to process the invokes
 
-        final Optional<JavaSootMethod> javaMethodOpt = view.getMethod(method);
-        if (!javaMethodOpt.isPresent()) {
-            return;
-        }
-
-        final JavaSootMethod javaMethod = javaMethodOpt.get();
-        if (!javaMethod.hasBody()) {
+        final MethodSummary summary = getBodyCache(view).summaryOf(method);
+        if (summary == null) {
             return;
         }
 
+        reachableMethods.recordBodyVisit(method);
         final TypeAssignmentGraph tag = new TypeAssignmentGraph();
 
-        for (final Stmt instruction : javaMethod.getBody().getStmts()) {
-
-            MethodSignature invocation = null;
-            if (instruction instanceof JAssignStmt) {
-                final JAssignStmt assignStmt = (JAssignStmt) instruction;
-                Value leftOp = assignStmt.getLeftOp();
-                tag.addNode(leftOp);
-                if (assignStmt.getRightOp() instanceof JNewExpr) {
-                    tag.tagNode(leftOp, ((JNewExpr) assignStmt.getRightOp()).getType());
-                }
-                if (assignStmt.getRightOp() instanceof JavaLocal) {
-                    tag.addNode(assignStmt.getRightOp());
-                    if (!tag.containsEdge(assignStmt.getRightOp(), leftOp)) {
-                        tag.addEdge(assignStmt.getRightOp(), leftOp);
-                    }
-                }
-                if (assignStmt.getRightOp() instanceof JStaticInvokeExpr) {
-                    invocation = ((JStaticInvokeExpr) assignStmt.getRightOp()).getMethodSignature();
-                    if (view.getMethod(invocation).isPresent()) {
-                        for (final Stmt staticInstruction : view.getMethod(invocation).get().getBody().getStmts()) {
-                            if (staticInstruction instanceof JInvokeStmt) {
-                                if (staticInstruction.getInvokeExpr().getMethodSignature().getName().equals("<init>")) {
-                                    tag.tagNode(leftOp, staticInstruction.getInvokeExpr().getMethodSignature().getDeclClassType());
-                                }
-                            }
-
-                        }
-                    }
-                }
-                if (assignStmt.getRightOp() instanceof JCastExpr) {
-                    tag.tagNode(leftOp, (ClassType) assignStmt.getRightOp().getType());
-                    if (!tag.containsEdge(((JCastExpr) assignStmt.getRightOp()).getOp(), leftOp)) {
-                        tag.addEdge(((JCastExpr) assignStmt.getRightOp()).getOp(), leftOp);
-                    }
-                }
-                if (assignStmt.getRightOp() instanceof JStaticFieldRef) {
-                    if (!tag.containsEdge(assignStmt.getRightOp(), leftOp)) {
-                        tag.addEdge(assignStmt.getRightOp(), leftOp);
+        for (int i = 0; i < summary.getAllocationCount(); i++) {
+            final Value allocation = summary.getAllocation(i);
+            if (allocation instanceof JNewExpr) {
+                tag.tagNode(tag.addNode(summary.getAllocationTarget(i)), ((JNewExpr) allocation).getType());
+            }
+        }
+        for (int i = 0; i < summary.getCopyCount(); i++) {
+            tag.addEdge(summary.getCopySource(i), summary.getCopyTarget(i));
+        }
+        for (int i = 0; i < summary.getLoadCount(); i++) {
+            if (summary.getLoadSource(i) instanceof JStaticFieldRef) {
+                tag.addEdge(summary.getLoadSource(i), summary.getLoadTarget(i));
+            }
+        }
+        for (int i = 0; i < summary.getStoreCount(); i++) {
+            tag.addEdge(summary.getStoreSource(i), summary.getStoreTarget(i));
+        }
+        for (int i = 0; i < summary.getCastCount(); i++) {
+            final JCastExpr cast = summary.getCast(i);
+            if (cast.getType() instanceof ClassType) {
+                final int leftNode = tag.addNode(summary.getCastTarget(i));
+                tag.tagNode(leftNode, (ClassType) cast.getType());
+                tag.addEdge(tag.addNode(cast.getOp()), leftNode);
+            }
+        }
+        for (int i = 0; i < summary.getCallSiteCount(); i++) {
+            final Local result = summary.getResult(i);
+            if (result == null || summary.getCallKind(i) != MethodSummary.CallKind.STATIC) {
+                continue;
+            }
+            // a static factory returns the types its body constructs; only a peek at the cached
+            // summary, the callee's own visit is counted when it is processed
+            final MethodSignature invocation = summary.getInvoke(i).getMethodSignature();
+            final MethodSummary callee = getBodyCache(view).summaryOf(invocation);
+            if (callee != null) {
+                final int leftNode = tag.addNode(result);
+                for (int j = 0; j < callee.getCallSiteCount(); j++) {
+                    final MethodSignature calleeInvocation = callee.getInvoke(j).getMethodSignature();
+                    if (callee.getResult(j) == null && calleeInvocation.getName().equals("<init>")) {
+                        tag.tagNode(leftNode, calleeInvocation.getDeclClassType());
                     }
                 }
             }
         }
 
-        tag.annotateScc();
-
-        //propagating the types of the nodes to the targets
-        tag.graph.getNodeSet().stream().collect(Collectors.toList()).forEach(n -> {
-            Set<Value> tars = tag.getTargetsFor(n.getAttribute("value"));
-            tars.stream().collect(Collectors.toList()).forEach(t -> {
-                tag.tagNode(t, tag.getNodeTags(n.getAttribute("value")).stream().collect(Collectors.toList()).get(0));
-            });
-        });
-
-//        final List<String> temp = new ArrayList<>();
-//        tag.graph.getNodeSet().stream().collect(Collectors.toList()).forEach(n -> {
-//            temp.add(n.getAttribute("value").toString());
-//        });
-//        tag.graph.getEdgeSet().stream().collect(Collectors.toList()).forEach(n -> {
-//            temp.add(n.getSourceNode().getAttribute("value").toString()+"--" +n.getTargetNode().getAttribute("value").toString());
-//        });
+        //propagating the types along the assignments, one pass over the collapsed SCCs
+        tag.propagate();
 
-        tag.getTaggedNodes();
-//        cg.getNodes().clear();
-//        cg.getEdges().clear();
-
-        processInvokes(view, method, cg, tag);
+        processInvokes(view, method, summary, cg, tag);
 
     }
 
-    private void processInvokes(final @Nonnull JavaView view, final @Nonnull MethodSignature method, final @Nonnull CallGraph cg, final TypeAssignmentGraph tag) {
-
-        final Optional<JavaSootMethod> javaMethodOpt = view.getMethod(method);
-        if (!javaMethodOpt.isPresent()) {
-            return;
-        }
-
-        final JavaSootMethod javaMethod = javaMethodOpt.get();
-        if (!javaMethod.hasBody()) {
-            return;
-        }
+    private void processInvokes(final @Nonnull JavaView view, final @Nonnull MethodSignature method, final @Nonnull MethodSummary summary,
+                                final @Nonnull CallGraph cg, final TypeAssignmentGraph tag) {
 
-        for (final Stmt instruction : javaMethod.getBody().getStmts()) {
+        final DispatchCache dispatchCache = getDispatchCache(view);
+        for (int i = 0; i < summary.getCallSiteCount(); i++) {
 
-            if (instruction instanceof JInvokeStmt) {
-                if (instruction.getInvokeExpr().getMethodSignature().getName().equals("<init>")) {
-                    continue;
-                }
-                if (!cg.hasNode(method)) {
-                    cg.addNode(method);
-                }
-                final JInvokeStmt invokeStmt = (JInvokeStmt) instruction;
-                final Value base = invokeStmt.getInvokeExpr().getUses().collect(Collectors.toList()).get(0);
-
-                //creating cg edge for the base
-                final Set<ClassType> baseClassTypes = tag.getNodeTags(base);
-                addCgEdge(cg, baseClassTypes, invokeStmt, method);
-
-                //creating cg edge for all the targets of the base (for alias)
-                final Set<Value> targets = tag.getTargetsFor(base);
-                for (final Value target : targets) {
-                    final Set<ClassType> classTypes = tag.getNodeTags(target);
-                    addCgEdge(cg, classTypes, invokeStmt, method);
-                }
+            final MethodSignature invocation = summary.getInvoke(i).getMethodSignature();
+            final Local receiver = summary.getReceiver(i);
+            if (summary.getResult(i) != null || invocation.getName().equals("<init>") || receiver == null) {
+                continue;
             }
+            cg.addNodeIfAbsent(method);
+            final int base = tag.idOf(receiver);
+            if (base < 0) {
+                continue;
+            }
+
+            //creating cg edges for every type that reaches the base
+            addCgEdge(cg, dispatchCache, tag.typesOf(tag.tagsOf(base)), invocation.getSubSignature(), method);
         }
     }
 
-    private void addCgEdge(final CallGraph cg, final Set<ClassType> classTypes, final JInvokeStmt invokeStmt, final MethodSignature method) {
+    private void addCgEdge(final CallGraph cg, final DispatchCache dispatchCache, final Set<ClassType> classTypes,
+                           final MethodSubSignature subSignature, final MethodSignature method) {
         for (final ClassType classType : classTypes) {
-            final MethodSignature newMethodSignature = formNewMethodSignature(invokeStmt.getInvokeExpr().getMethodSignature(), classType);
-            if (!cg.hasNode(newMethodSignature)) {
-                cg.addNode(newMethodSignature);
-            }
-            if (!cg.hasEdge(method, newMethodSignature)) {
-                cg.addEdge(method, newMethodSignature);
+            final Optional<MethodSignature> target = dispatchCache.dispatch(classType, subSignature);
+            if (!target.isPresent()) {
+                continue;
             }
+            cg.addNodeIfAbsent(target.get());
+            cg.addEdgeIfAbsent(method, target.get());
+            reachableMethods.add(target.get());
         }
     }
 
@@ -222,116 +195,4 @@ public class VTAAlgorithm extends CallGraphAlgorithm {
         }
     }
 
-    /**
-     * You can use this class to represent your type assignment graph. We do not use this data
-     * structure in tests, so you are free to use something else. However, we use this data structure
-     * in our solution and it instantly supports collapsing strong-connected components.
-     */
-    private class TypeAssignmentGraph {
-        private final Graph graph;
-        private final TarjanStronglyConnectedComponents tscc = new TarjanStronglyConnectedComponents();
-
-        public TypeAssignmentGraph() {
-            this.graph = new MultiGraph("tag");
-        }
-
-        private boolean containsNode(Value value) {
-            return graph.getNode(createId(value)) != null;
-        }
-
-        private boolean containsEdge(Value source, Value target) {
-            return graph.getEdge(createId(source) + "-" + createId(target)) != null;
-        }
-
-        private String createId(Value value) {
-            if (value instanceof JFieldRef) return value.toString();
-            return Integer.toHexString(System.identityHashCode(value));
-        }
-
-        public void addNode(Value value) {
-            if (!containsNode(value)) {
-                Node node = graph.addNode(createId(value));
-                node.setAttribute("value", value);
-                node.setAttribute("ui.label", value);
-                node.setAttribute("tags", new HashSet<ClassType>());
-            }
-        }
-
-        public void tagNode(Value value, ClassType classTag) {
-            if (containsNode(value)) {
-                getNodeTags(value).add(classTag);
-            }
-        }
-
-        public Set<Pair<Value, Set<ClassType>>> getTaggedNodes() {
-            return graph.getNodeSet().stream()
-                    .map(
-                            n -> new Pair<Value, Set<ClassType>>(n.getAttribute("value"), n.getAttribute("tags")))
-                    .filter(p -> p.second.size() > 0)
-                    .collect(Collectors.toSet());
-        }
-
-        public Set<ClassType> getNodeTags(Value val) {
-            return graph.getNode(createId(val)).getAttribute("tags");
-        }
-
-        public void addEdge(Value source, Value target) {
-            if (!containsEdge(source, target)) {
-                Node sourceNode = graph.getNode(createId(source));
-                Node targetNode = graph.getNode(createId(target));
-                if (sourceNode == null || targetNode == null)
-                    log.error(
-                            "Could not find one of the nodes. Source: "
-                                    + sourceNode
-                                    + " - Target: "
-                                    + targetNode);
-                graph.addEdge(createId(source) + "-" + createId(target), sourceNode, targetNode, true);
-            }
-        }
-
-        public Set<Value> getTargetsFor(Value initialNode) {
-            if (!containsNode(initialNode)) return Collections.emptySet();
-            Node source = graph.getNode(createId(initialNode));
-            Collection<org.graphstream.graph.Edge> edges = source.getLeavingEdgeSet();
-            return edges.stream()
-                    .map(e -> (Value) e.getTargetNode().getAttribute("value"))
-                    .collect(Collectors.toSet());
-        }
-
-        /**
-         * Use this method to start the SCC computation.
-         */
-        public void annotateScc() {
-            tscc.init(graph);
-            tscc.compute();
-        }
-
-        /**
-         * Retrieve the index assigned by the SCC algorithm
-         *
-         * @param value
-         * @return
-         */
-        public Object getSccIndex(Value value) {
-            if (!containsNode(value)) return null;
-            return graph.getNode(createId(value)).getAttribute(tscc.getSCCIndexAttribute());
-        }
-
-        /**
-         * Use this method to inspect your type assignment graph
-         */
-        public void draw() {
-            graph.display();
-        }
-    }
-
-    private MethodSignature formNewMethodSignature(final MethodSignature original, final ClassType newDeclClassType) {
-        return new MethodSignature(
-                newDeclClassType,
-                original.getName(),
-                original.getParameterTypes(),
-                original.getType()
-        );
-    }
-
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,318 @@
+package analysis.exercise3;
+
+import analysis.BodyCache;
+import analysis.CallGraph;
+import analysis.DispatchCache;
+import analysis.MethodSummary;
+import analysis.ReachableMethods;
+
+import java.util.*;
+import javax.annotation.Nonnull;
+
+import sootup.core.jimple.basic.Immediate;
+import sootup.core.jimple.basic.Local;
+import sootup.core.jimple.basic.Value;
+import sootup.core.jimple.common.expr.AbstractInvokeExpr;
+import sootup.core.jimple.common.expr.JNewExpr;
+import sootup.core.jimple.common.ref.JArrayRef;
+import sootup.core.jimple.common.ref.JFieldRef;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.types.ReferenceType;
+
+/**
+ * Whole-program VTA. All reachable methods share one {@link TypeAssignmentGraph} whose nodes are the
+ * locals of every method, one node per method for {@code this}, each parameter and the return value, one
+ * node per field and one per array type for the array elements. Method bodies are added when they become
+ * reachable; call edges link arguments to parameters and return values to results.
+ *
+ * <p>Propagation works on differences: every node keeps the types it received but has not passed on yet,
+ * and only those are pushed to its successors and dispatched at the virtual call sites it is the receiver
+ * of. A new edge forwards the types its source already has. Each type therefore travels each edge once.
+ */
+final class WholeProgramTypePropagation {
+
+    private static final String THIS = "@this";
+    private static final String RETURN = "@return";
+    private static final String ARRAY = "@array";
+
+    @Nonnull
+    private final BodyCache bodyCache;
+    @Nonnull
+    private final DispatchCache dispatchCache;
+    @Nonnull
+    private final ReachableMethods reachableMethods;
+    @Nonnull
+    private final CallGraph cg;
+
+    @Nonnull
+    private final TypeAssignmentGraph graph = new TypeAssignmentGraph();
+
+    /** Per node, the types not yet pushed to its successors and call sites. */
+    @Nonnull
+    private BitSet[] pending = new BitSet[64];
+    /** Per node, the virtual call sites it is the receiver of; null if none. */
+    @Nonnull
+    private List<CallSite>[] callSites = newCallSiteArray(64);
+
+    @Nonnull
+    private int[] worklist = new int[64];
+    private int worklistSize = 0;
+    @Nonnull
+    private final BitSet queued = new BitSet();
+
+    WholeProgramTypePropagation(final @Nonnull BodyCache bodyCache, final @Nonnull DispatchCache dispatchCache,
+                                final @Nonnull ReachableMethods reachableMethods, final @Nonnull CallGraph cg) {
+        this.bodyCache = bodyCache;
+        this.dispatchCache = dispatchCache;
+        this.reachableMethods = reachableMethods;
+        this.cg = cg;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Nonnull
+    private static List<CallSite>[] newCallSiteArray(final int size) {
+        return new List[size];
+    }
+
+    /** Adds the bodies of all queued reachable methods and propagates until nothing changes. */
+    void solve() {
+        while (true) {
+            final MethodSignature method = reachableMethods.poll();
+            if (method != null) {
+                cg.addNodeIfAbsent(method);
+                addBody(method);
+                continue;
+            }
+            if (worklistSize == 0) {
+                return;
+            }
+            final int node = worklist[--worklistSize];
+            queued.clear(node);
+            propagate(node);
+        }
+    }
+
+    @Nonnull
+    TypeAssignmentGraph getGraph() {
+        return graph;
+    }
+
+    private void addBody(final @Nonnull MethodSignature method) {
+        final MethodSummary summary = bodyCache.summaryOf(method);
+        if (summary == null) {
+            return;
+        }
+
+        reachableMethods.recordBodyVisit(method);
+        for (int i = 0; i < summary.getIdentityCount(); i++) {
+            final int parameter = summary.getIdentityParameter(i);
+            final int source = parameter < 0 ? node(method, THIS) : node(method, parameter);
+            addEdge(source, localNode(method, summary.getIdentityLocal(i)));
+        }
+        for (int i = 0; i < summary.getAllocationCount(); i++) {
+            final Value allocation = summary.getAllocation(i);
+            final int target = valueNode(method, summary.getAllocationTarget(i));
+            if (allocation instanceof JNewExpr && target >= 0) {
+                addType(target, graph.typeIdOf(((JNewExpr) allocation).getType()));
+            }
+        }
+        for (int i = 0; i < summary.getCopyCount(); i++) {
+            addEdge(localNode(method, summary.getCopySource(i)), localNode(method, summary.getCopyTarget(i)));
+        }
+        for (int i = 0; i < summary.getCastCount(); i++) {
+            addAssignment(method, summary.getCast(i).getOp(), summary.getCastTarget(i));
+        }
+        for (int i = 0; i < summary.getLoadCount(); i++) {
+            addAssignment(method, summary.getLoadSource(i), summary.getLoadTarget(i));
+        }
+        for (int i = 0; i < summary.getStoreCount(); i++) {
+            addAssignment(method, summary.getStoreSource(i), summary.getStoreTarget(i));
+        }
+        for (int i = 0; i < summary.getReturnCount(); i++) {
+            addEdge(localNode(method, summary.getReturnedLocal(i)), node(method, RETURN));
+        }
+        for (int i = 0; i < summary.getCallSiteCount(); i++) {
+            final Local result = summary.getResult(i);
+            addCall(method, summary, i,
+                    result != null && result.getType() instanceof ReferenceType ? localNode(method, result) : -1);
+        }
+    }
+
+    /** Adds the edge of {@code target = source} if both may hold objects. */
+    private void addAssignment(final @Nonnull MethodSignature method, final @Nonnull Value source,
+                               final @Nonnull Value target) {
+        final int sourceNode = valueNode(method, source);
+        final int targetNode = valueNode(method, target);
+        if (sourceNode >= 0 && targetNode >= 0) {
+            addEdge(sourceNode, targetNode);
+        }
+    }
+
+    private void addCall(final @Nonnull MethodSignature caller, final @Nonnull MethodSummary summary,
+                         final int callSite, final int result) {
+        final AbstractInvokeExpr invoke = summary.getInvoke(callSite);
+        final int[] arguments = new int[invoke.getArgCount()];
+        for (int i = 0; i < arguments.length; i++) {
+            final Immediate argument = invoke.getArg(i);
+            arguments[i] = argument instanceof Local && argument.getType() instanceof ReferenceType
+                    ? localNode(caller, (Local) argument) : -1;
+        }
+
+        final MethodSignature invocation = invoke.getMethodSignature();
+        final MethodSummary.CallKind kind = summary.getCallKind(callSite);
+        final Local receiverLocal = summary.getReceiver(callSite);
+        if (kind == MethodSummary.CallKind.VIRTUAL) {
+            final int receiver = localNode(caller, receiverLocal);
+            final CallSite site = new CallSite(caller, invocation, arguments, result);
+            if (callSites[receiver] == null) {
+                callSites[receiver] = new ArrayList<>(2);
+            }
+            callSites[receiver].add(site);
+            final BitSet types = graph.tagsOf(receiver);
+            for (int type = types.nextSetBit(0); type >= 0; type = types.nextSetBit(type + 1)) {
+                dispatch(site, type);
+            }
+        } else if (kind != MethodSummary.CallKind.DYNAMIC) {
+            final Optional<MethodSignature> target =
+                    dispatchCache.resolveDeclared(invocation.getDeclClassType(), invocation.getSubSignature());
+            if (!target.isPresent()) {
+                return;
+            }
+            link(caller, target.get(), arguments, result);
+            if (receiverLocal != null) {
+                addEdge(localNode(caller, receiverLocal), node(target.get(), THIS));
+            }
+        }
+    }
+
+    /** Resolves {@code site} for one receiver type; new targets are linked and receive the type as this. */
+    private void dispatch(final @Nonnull CallSite site, final int type) {
+        final Optional<MethodSignature> target =
+                dispatchCache.dispatch(graph.typeOf(type), site.invocation.getSubSignature());
+        if (!target.isPresent()) {
+            return;
+        }
+        if (site.targets.add(target.get())) {
+            link(site.caller, target.get(), site.arguments, site.result);
+        }
+        addType(node(target.get(), THIS), type);
+    }
+
+    private void link(final @Nonnull MethodSignature caller, final @Nonnull MethodSignature target,
+                      final @Nonnull int[] arguments, final int result) {
+        cg.addNodeIfAbsent(target);
+        cg.addEdgeIfAbsent(caller, target);
+        reachableMethods.add(target);
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] >= 0) {
+                addEdge(arguments[i], node(target, i));
+            }
+        }
+        if (result >= 0) {
+            addEdge(node(target, RETURN), result);
+        }
+    }
+
+    /** Pushes the pending types of {@code node} to its successors and receiver call sites. */
+    private void propagate(final int node) {
+        final BitSet delta = pending[node];
+        pending[node] = new BitSet();
+        graph.forEachSuccessor(node, successor -> addTypes(successor, delta));
+        final List<CallSite> sites = callSites[node];
+        if (sites != null) {
+            for (int i = 0; i < sites.size(); i++) {
+                final CallSite site = sites.get(i);
+                for (int type = delta.nextSetBit(0); type >= 0; type = delta.nextSetBit(type + 1)) {
+                    dispatch(site, type);
+                }
+            }
+        }
+    }
+
+    private void addEdge(final int source, final int target) {
+        if (graph.addEdge(source, target) && !graph.tagsOf(source).isEmpty()) {
+            addTypes(target, graph.tagsOf(source));
+        }
+    }
+
+    private void addTypes(final int node, final @Nonnull BitSet types) {
+        final BitSet fresh = (BitSet) types.clone();
+        fresh.andNot(graph.tagsOf(node));
+        if (!fresh.isEmpty()) {
+            graph.tagsOf(node).or(fresh);
+            pending[node].or(fresh);
+            enqueue(node);
+        }
+    }
+
+    private void addType(final int node, final int type) {
+        if (!graph.tagsOf(node).get(type)) {
+            graph.tagsOf(node).set(type);
+            pending[node].set(type);
+            enqueue(node);
+        }
+    }
+
+    private void enqueue(final int node) {
+        if (queued.get(node)) {
+            return;
+        }
+        queued.set(node);
+        if (worklistSize == worklist.length) {
+            worklist = Arrays.copyOf(worklist, worklistSize * 2);
+        }
+        worklist[worklistSize++] = node;
+    }
+
+    /** Node of a local, field or array element; -1 for values that hold no objects of interest. */
+    private int valueNode(final @Nonnull MethodSignature method, final @Nonnull Value value) {
+        if (value instanceof Local) {
+            return localNode(method, (Local) value);
+        }
+        if (value instanceof JFieldRef) {
+            return node(((JFieldRef) value).getFieldSignature());
+        }
+        if (value instanceof JArrayRef) {
+            return node(new VTAAlgorithm.Pair<>(ARRAY, ((JArrayRef) value).getBase().getType()));
+        }
+        return -1;
+    }
+
+    private int localNode(final @Nonnull MethodSignature method, final @Nonnull Local local) {
+        return node(method, local.getName());
+    }
+
+    /** {@code element} is a local name, a parameter index, {@link #THIS} or {@link #RETURN}. */
+    private int node(final @Nonnull MethodSignature method, final @Nonnull Object element) {
+        return node(new VTAAlgorithm.Pair<>(method, element));
+    }
+
+    private int node(final @Nonnull Object key) {
+        final int node = graph.addKeyedNode(key);
+        if (node >= pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(node + 1, pending.length * 2));
+            callSites = Arrays.copyOf(callSites, pending.length);
+        }
+        if (pending[node] == null) {
+            pending[node] = new BitSet();
+        }
+        return node;
+    }
+
+    /** A virtual or interface call site and the targets it was linked to so far. */
+    private static final class CallSite {
+        final MethodSignature caller;
+        final MethodSignature invocation;
+        final int[] arguments;
+        final int result;
+        final Set<MethodSignature> targets = new HashSet<>();
+
+        CallSite(final MethodSignature caller, final MethodSignature invocation, final int[] arguments,
+                 final int result) {
+            this.caller = caller;
+            this.invocation = invocation;
+            this.arguments = arguments;
+            this.result = result;
+        }
+    }
+}
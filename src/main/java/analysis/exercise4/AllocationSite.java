@@ -0,0 +1,40 @@
+package analysis.exercise4;
+
+import javax.annotation.Nonnull;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.types.Type;
+
+/** The n-th allocation (or string constant) in the body of a method. */
+public final class AllocationSite {
+  @Nonnull public final MethodSignature method;
+  public final int index;
+  @Nonnull public final Type type;
+
+  public AllocationSite(@Nonnull MethodSignature method, int index, @Nonnull Type type) {
+    this.method = method;
+    this.index = index;
+    this.type = type;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof AllocationSite)) {
+      return false;
+    }
+    AllocationSite other = (AllocationSite) o;
+    return index == other.index && method.equals(other.method);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * method.hashCode() + index;
+  }
+
+  @Override
+  public String toString() {
+    return "new " + type + " #" + index + " in " + method;
+  }
+}
@@ -0,0 +1,277 @@
+package analysis.exercise4;
+
+import analysis.TypeHierarchyIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Inclusion-based (Andersen) points-to solver over a {@link PointerAssignmentGraph}. Field
+ * sensitive: every abstract object has its own variable per field.
+ *
+ * <p>Works on differences. Every variable keeps the objects it received but has not passed on yet;
+ * only those are pushed along its assign edges, used to materialize the edges of the loads and
+ * stores based on it and reported to the {@link NewObjectsListener}. Edges added to the graph in
+ * the meantime (by the solver itself or by the listener) forward the complete points-to set of
+ * their source once.
+ *
+ * <p>Objects only enter a variable if their type fits the declared type of the variable, which
+ * filters at casts, parameters, returns and fields alike.
+ *
+ * <p>Cycles of assign edges are collapsed lazily: when an edge carries nothing new and both ends
+ * already have equal points-to sets, the solver looks for a cycle through that edge once and merges
+ * the variables on it into one representative (union-find). Only variables with the same type
+ * filter are merged, so the points-to sets stay exactly those of the uncollapsed graph.
+ *
+ * <p>Points-to sets are {@link PointsToSet}s, so a variable whose objects all came along one edge
+ * shares the set of the edge's source until one of them grows.
+ */
+public class AndersenSolver implements PointsToSolver {
+  @Nonnull private final PointerAssignmentGraph pag;
+  @Nonnull private final TypeFilters filters;
+  @Nonnull private final UnionFind classes = new UnionFind();
+  @Nonnull private final ComponentSearch cycleSearch;
+  @Nullable private NewObjectsListener listener;
+
+  @Nonnull private PointsToSet[] pointsTo = new PointsToSet[0];
+  @Nonnull private PointsToSet[] delta = new PointsToSet[0];
+
+  @Nonnull private int[] worklist = new int[64];
+  private int worklistSize = 0;
+  @Nonnull private final BitSet queued = new BitSet();
+
+  /** Edges between representatives that were searched for a cycle, as {@code source << 32 | target}. */
+  @Nonnull private final Set<Long> checkedEdges = new HashSet<>();
+
+  private long propagations = 0;
+
+  /** Called whenever a variable received new objects, e.g. to resolve calls on it on the fly. */
+  @FunctionalInterface
+  public interface NewObjectsListener {
+    void newObjects(int variable, @Nonnull PointsToSet objects);
+  }
+
+  public AndersenSolver(@Nonnull PointerAssignmentGraph pag, @Nonnull TypeHierarchyIndex hierarchy) {
+    this.pag = pag;
+    this.filters = new TypeFilters(pag, hierarchy);
+    this.cycleSearch = new ComponentSearch(pag, classes);
+  }
+
+  public void setListener(@Nullable NewObjectsListener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  @Nonnull
+  public PointerAssignmentGraph getPag() {
+    return pag;
+  }
+
+  /** Propagates until no variable has pending objects and the graph has no unprocessed edges. */
+  @Override
+  public void solve() {
+    while (true) {
+      if (pag.hasNewEdges()) {
+        ensureCapacity();
+        pag.drainNewAllocations(this::addObject);
+        pag.drainNewEdges(
+            (source, target) -> {
+              int from = classes.find(source);
+              int to = classes.find(target);
+              if (from != to) {
+                addObjects(to, pointsTo[from]);
+              }
+            });
+        continue;
+      }
+      if (worklistSize == 0) {
+        return;
+      }
+      int variable = worklist[--worklistSize];
+      queued.clear(variable);
+      if (!classes.isRepresentative(variable)) {
+        // merged since it was queued; its objects moved to the representative
+        continue;
+      }
+      PointsToSet objects = delta[variable];
+      delta[variable] = new PointsToSet();
+      propagate(variable, objects);
+    }
+  }
+
+  private void propagate(int representative, @Nonnull PointsToSet objects) {
+    propagations++;
+    ensureCapacity();
+    classes.forEachMember(
+        representative,
+        variable -> {
+          for (int i = 0; i < pag.outDegree(variable); i++) {
+            int successor = classes.find(pag.successor(variable, i));
+            if (successor != representative
+                && !addObjects(successor, objects)
+                && classes.isRepresentative(representative)) {
+              detectCycle(representative, successor);
+            }
+          }
+        });
+    if (!classes.isRepresentative(representative)) {
+      // collapsed into another representative, which propagates the merged set in full
+      return;
+    }
+
+    classes.forEachMember(
+        representative,
+        variable -> {
+          List<PointerAssignmentGraph.FieldAccess> loads = pag.loadsFrom(variable);
+          if (loads != null) {
+            for (PointerAssignmentGraph.FieldAccess load : loads) {
+              objects.forEach(o -> pag.addAssignEdge(pag.fieldVariable(o, load.field), load.other));
+            }
+          }
+          List<PointerAssignmentGraph.FieldAccess> stores = pag.storesInto(variable);
+          if (stores != null) {
+            for (PointerAssignmentGraph.FieldAccess store : stores) {
+              objects.forEach(o -> pag.addAssignEdge(store.other, pag.fieldVariable(o, store.field)));
+            }
+          }
+          if (listener != null) {
+            listener.newObjects(variable, objects);
+          }
+        });
+  }
+
+  /**
+   * The edge {@code source -> target} carried nothing new. If both have the same points-to set and
+   * type filter, and the edge was not checked before, searches for cycles through it.
+   */
+  private void detectCycle(int source, int target) {
+    PointsToSet filter = filters.filterOf(target);
+    if (filters.filterOf(source) != filter
+        || !pointsTo[source].equals(pointsTo[target])
+        || !checkedEdges.add(((long) source << 32) | target)) {
+      return;
+    }
+    ensureCapacity();
+    List<int[]> cycles = new ArrayList<>();
+    cycleSearch.start();
+    cycleSearch.searchFrom(
+        target,
+        (from, to) -> filters.filterOf(to) == filter,
+        component -> {
+          if (component.length > 1) {
+            cycles.add(component);
+          }
+        });
+    cycles.forEach(this::merge);
+  }
+
+  /** Merges the variables of {@code component} into its first one. */
+  private void merge(@Nonnull int[] component) {
+    int representative = component[0];
+    for (int i = 1; i < component.length; i++) {
+      pointsTo[representative].addAll(pointsTo[component[i]], null, null);
+      pointsTo[component[i]] = new PointsToSet();
+      delta[component[i]] = new PointsToSet();
+    }
+    classes.merge(component);
+    // the members' successors, loads, stores and call sites may lack some of the merged objects
+    delta[representative] = pointsTo[representative].copy();
+    enqueue(representative);
+  }
+
+  private void addObject(int object, int variable) {
+    ensureCapacity();
+    variable = classes.find(variable);
+    PointsToSet filter = filters.filterOf(variable);
+    if ((filter == null || filter.contains(object)) && pointsTo[variable].add(object)) {
+      delta[variable].add(object);
+      enqueue(variable);
+    }
+  }
+
+  /** Adds {@code objects} to the representative {@code variable}; returns whether it changed. */
+  private boolean addObjects(int variable, @Nonnull PointsToSet objects) {
+    if (objects.isEmpty()) {
+      return false;
+    }
+    ensureCapacity();
+    if (pointsTo[variable].addAll(objects, filters.filterOf(variable), delta[variable])) {
+      enqueue(variable);
+      return true;
+    }
+    return false;
+  }
+
+  private void enqueue(int variable) {
+    if (queued.get(variable)) {
+      return;
+    }
+    queued.set(variable);
+    if (worklistSize == worklist.length) {
+      worklist = Arrays.copyOf(worklist, worklistSize * 2);
+    }
+    worklist[worklistSize++] = variable;
+  }
+
+  /** Grows the per-variable arrays to the current size of the graph. */
+  private void ensureCapacity() {
+    int variables = pag.variableCount();
+    if (variables <= pointsTo.length) {
+      return;
+    }
+    int capacity = Math.max(variables, pointsTo.length * 2);
+    int old = pointsTo.length;
+    pointsTo = Arrays.copyOf(pointsTo, capacity);
+    delta = Arrays.copyOf(delta, capacity);
+    classes.grow(capacity);
+    for (int v = old; v < capacity; v++) {
+      pointsTo[v] = new PointsToSet();
+      delta[v] = new PointsToSet();
+    }
+  }
+
+  @Override
+  @Nonnull
+  public PointsToSet pointsTo(int variable) {
+    return variable < pointsTo.length ? pointsTo[classes.find(variable)] : new PointsToSet();
+  }
+
+  /** Covers the points-to sets of the representatives. */
+  @Override
+  @Nonnull
+  public PointsToSet.MemoryReport memoryReport() {
+    PointsToSet.MemoryReport report = new PointsToSet.MemoryReport();
+    for (int v = 0; v < Math.min(pointsTo.length, pag.variableCount()); v++) {
+      if (classes.isRepresentative(v)) {
+        report.add(pointsTo[v]);
+      }
+    }
+    return report;
+  }
+
+  @Override
+  public int getCollapsedVariableCount() {
+    return classes.getMergedVariableCount();
+  }
+
+  /** How often a variable passed on its pending objects. */
+  public long getPropagationCount() {
+    return propagations;
+  }
+
+  @Override
+  public String toString() {
+    return "AndersenSolver{"
+        + pag
+        + ", propagations="
+        + propagations
+        + ", collapsedVariables="
+        + classes.getMergedVariableCount()
+        + '}';
+  }
+}
@@ -0,0 +1,130 @@
+package analysis.exercise4;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+
+/**
+ * Tarjan's algorithm with explicit stacks over the assign edges between the representatives of a
+ * {@link UnionFind}. The per-variable arrays are kept between searches and told apart by a search
+ * number, so a search only touches the variables it reaches.
+ */
+final class ComponentSearch {
+
+  /** Decides which edges between two representatives a search walks along. */
+  @FunctionalInterface
+  interface EdgeFilter {
+    boolean follow(int source, int target);
+  }
+
+  @Nonnull private final PointerAssignmentGraph pag;
+  @Nonnull private final UnionFind classes;
+
+  @Nonnull private int[] visitedIn = new int[0];
+  @Nonnull private int[] index = new int[0];
+  @Nonnull private int[] lowLink = new int[0];
+  @Nonnull private int[] nextMember = new int[0];
+  @Nonnull private int[] nextEdge = new int[0];
+  @Nonnull private boolean[] onStack = new boolean[0];
+  @Nonnull private int[] stack = new int[0];
+  @Nonnull private int[] callStack = new int[0];
+  private int search = 0;
+  private int nextIndex = 0;
+
+  ComponentSearch(@Nonnull PointerAssignmentGraph pag, @Nonnull UnionFind classes) {
+    this.pag = pag;
+    this.classes = classes;
+  }
+
+  /** Starts a new search; every representative counts as unvisited again. */
+  void start() {
+    int size = classes.size();
+    if (visitedIn.length < size) {
+      visitedIn = Arrays.copyOf(visitedIn, size);
+      index = Arrays.copyOf(index, size);
+      lowLink = Arrays.copyOf(lowLink, size);
+      nextMember = Arrays.copyOf(nextMember, size);
+      nextEdge = Arrays.copyOf(nextEdge, size);
+      onStack = Arrays.copyOf(onStack, size);
+      stack = Arrays.copyOf(stack, size);
+      callStack = Arrays.copyOf(callStack, size);
+    }
+    search++;
+    nextIndex = 0;
+  }
+
+  boolean isVisited(int representative) {
+    return visitedIn[representative] == search;
+  }
+
+  /**
+   * Visits everything reachable from {@code root} that was not visited in this search yet and hands
+   * each component to {@code components}, in reverse topological order.
+   */
+  void searchFrom(int root, @Nonnull EdgeFilter follow, @Nonnull Consumer<int[]> components) {
+    if (isVisited(root)) {
+      return;
+    }
+    int stackSize = 0;
+    int depth = 0;
+    visit(root);
+    stack[stackSize++] = root;
+    callStack[0] = root;
+
+    while (depth >= 0) {
+      int node = callStack[depth];
+      int successor = nextSuccessor(node);
+      if (successor >= 0) {
+        if (!follow.follow(node, successor)) {
+          continue;
+        }
+        if (!isVisited(successor)) {
+          visit(successor);
+          stack[stackSize++] = successor;
+          callStack[++depth] = successor;
+        } else if (onStack[successor]) {
+          lowLink[node] = Math.min(lowLink[node], index[successor]);
+        }
+        continue;
+      }
+
+      if (lowLink[node] == index[node]) {
+        int start = stackSize;
+        do {
+          onStack[stack[--start]] = false;
+        } while (stack[start] != node);
+        components.accept(Arrays.copyOfRange(stack, start, stackSize));
+        stackSize = start;
+      }
+      if (--depth >= 0) {
+        int caller = callStack[depth];
+        lowLink[caller] = Math.min(lowLink[caller], lowLink[node]);
+      }
+    }
+  }
+
+  private void visit(int node) {
+    visitedIn[node] = search;
+    index[node] = lowLink[node] = nextIndex++;
+    onStack[node] = true;
+    nextMember[node] = 0;
+    nextEdge[node] = 0;
+  }
+
+  /** The next successor representative of {@code node}, or -1 once all edges are walked. */
+  private int nextSuccessor(int node) {
+    while (nextMember[node] < classes.memberCount(node)) {
+      int variable = classes.member(node, nextMember[node]);
+      if (nextEdge[node] < pag.outDegree(variable)) {
+        int successor = classes.find(pag.successor(variable, nextEdge[node]++));
+        if (successor != node) {
+          return successor;
+        }
+      } else {
+        nextMember[node]++;
+        nextEdge[node] = 0;
+      }
+    }
+    return -1;
+  }
+}
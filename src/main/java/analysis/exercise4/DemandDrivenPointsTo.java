@@ -0,0 +1,433 @@
+package analysis.exercise4;
+
+import analysis.BodyCache;
+import analysis.CallGraph;
+import analysis.DispatchCache;
+import analysis.MethodSummary;
+import analysis.exercise1.CHAAlgorithm;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.core.jimple.basic.Local;
+import sootup.core.jimple.basic.Value;
+import sootup.core.jimple.common.expr.AbstractInstanceInvokeExpr;
+import sootup.core.jimple.common.expr.AbstractInvokeExpr;
+import sootup.core.jimple.common.ref.JArrayRef;
+import sootup.core.jimple.common.ref.JFieldRef;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.types.ClassType;
+import sootup.core.types.Type;
+import sootup.java.core.views.JavaView;
+
+/**
+ * Answers "what may this local point to?" for single locals without solving the whole program. A
+ * query walks the pointer assignment graph backwards from the local and collects the allocations it
+ * reaches; the graph is only built for the methods the walk enters.
+ *
+ * <p>The walk follows assign edges into callers (for parameters and {@code this}) and callees (for
+ * return values) along CHA call edges. Fields are handled field-based: a load of {@code f} reaches
+ * the values stored into {@code f} on any object. Casts along the way are ignored; the result is
+ * filtered by the declared type of the queried local only.
+ *
+ * <p>A walk that visits more than {@code budget} variables gives up; the answer is then the CHA
+ * one, every concrete subtype of the declared type. Answers are cached per local, and the graph
+ * built so far is kept for later queries.
+ */
+public class DemandDrivenPointsTo {
+
+  @Nonnull private final JavaView view;
+  @Nonnull private final BodyCache bodyCache;
+  @Nonnull private final DispatchCache dispatchCache;
+  private final int budget;
+
+  @Nonnull private final PointerAssignmentGraph pag = new PointerAssignmentGraph();
+  @Nonnull private final PagBuilder builder;
+  @Nonnull private final TypeFilters filters;
+
+  /** Reverse of the assign edges and the allocations, per target variable. */
+  @Nonnull private int[][] predecessors = new int[64][];
+
+  @Nonnull private int[] predecessorCounts = new int[64];
+  @Nonnull private int[][] allocations = new int[64][];
+  @Nonnull private int[] allocationCounts = new int[64];
+
+  /** Per target variable of a load, the fields loaded into it; null if none. */
+  @Nonnull private List<Object>[] loadedFields = newFieldArray(64);
+
+  /** Per field, the variables stored into it on any object. */
+  @Nonnull private final Map<Object, List<Integer>> storedValues = new HashMap<>();
+
+  /** Methods whose call sites were linked to their CHA targets. */
+  @Nonnull private final Set<MethodSignature> expanded = new HashSet<>();
+
+  @Nonnull private final Set<MethodSignature> callersExpanded = new HashSet<>();
+  @Nonnull private final Set<Object> storesExpanded = new HashSet<>();
+
+  @Nullable private CallGraph chaCallGraph;
+
+  /** Per field, the methods of the CHA call graph storing into it. */
+  @Nullable private Map<Object, Set<MethodSignature>> storingMethods;
+
+  @Nonnull private final Map<Integer, Result> cache = new HashMap<>();
+  private long queries = 0;
+  private long cacheHits = 0;
+
+  /** The answer to one query. */
+  public static final class Result {
+    @Nonnull private final PointsToSet objects;
+    @Nonnull private final Set<Type> types;
+    private final boolean complete;
+    private final int visitedVariables;
+
+    Result(
+        @Nonnull PointsToSet objects,
+        @Nonnull Set<Type> types,
+        boolean complete,
+        int visitedVariables) {
+      this.objects = objects;
+      this.types = Collections.unmodifiableSet(types);
+      this.complete = complete;
+      this.visitedVariables = visitedVariables;
+    }
+
+    /** Objects of {@link DemandDrivenPointsTo#getPag()}; empty if the walk gave up. */
+    @Nonnull
+    public PointsToSet getObjects() {
+      return objects;
+    }
+
+    /** The runtime types the local may have. */
+    @Nonnull
+    public Set<Type> getTypes() {
+      return types;
+    }
+
+    /** False if the budget ran out and {@link #getTypes()} is the CHA answer. */
+    public boolean isComplete() {
+      return complete;
+    }
+
+    public int getVisitedVariables() {
+      return visitedVariables;
+    }
+
+    @Override
+    public String toString() {
+      return "Result{types=" + types + ", complete=" + complete + '}';
+    }
+  }
+
+  /** @param budget the most variables one query may visit */
+  public DemandDrivenPointsTo(
+      @Nonnull JavaView view, @Nonnull DispatchCache dispatchCache, int budget) {
+    if (budget < 1) {
+      throw new IllegalArgumentException("budget must be positive: " + budget);
+    }
+    this.view = view;
+    this.bodyCache = new BodyCache(view);
+    this.dispatchCache = dispatchCache;
+    this.budget = budget;
+    this.builder = new PagBuilder(bodyCache, pag, HeapAbstraction.perSite());
+    this.filters = new TypeFilters(pag, dispatchCache.getHierarchy());
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  @Nonnull
+  private static List<Object>[] newFieldArray(int size) {
+    return new List[size];
+  }
+
+  /** The objects and types {@code local} of {@code method} may point to. */
+  @Nonnull
+  public Result pointsTo(@Nonnull MethodSignature method, @Nonnull Local local) {
+    queries++;
+    expand(method);
+    int variable = builder.local(method, local);
+    grow();
+    Result result = cache.get(variable);
+    if (result != null) {
+      cacheHits++;
+      return result;
+    }
+    result = walk(variable);
+    cache.put(variable, result);
+    return result;
+  }
+
+  /**
+   * The targets of {@code invoke} in {@code caller}. Virtual calls dispatch on the types their
+   * receiver may point to, or fall back to CHA if that query gave up.
+   */
+  @Nonnull
+  public Set<MethodSignature> targets(
+      @Nonnull MethodSignature caller, @Nonnull AbstractInvokeExpr invoke) {
+    if (!PagBuilder.isVirtual(invoke)) {
+      return SparkLikeAlgorithm.staticTargets(invoke, dispatchCache);
+    }
+    Result receiver = pointsTo(caller, ((AbstractInstanceInvokeExpr) invoke).getBase());
+    if (!receiver.isComplete()) {
+      return SparkLikeAlgorithm.staticTargets(invoke, dispatchCache);
+    }
+    Set<MethodSignature> targets = new LinkedHashSet<>();
+    for (Type type : receiver.getTypes()) {
+      if (type instanceof ClassType) {
+        dispatchCache
+            .dispatch((ClassType) type, invoke.getMethodSignature().getSubSignature())
+            .ifPresent(targets::add);
+      }
+    }
+    return targets;
+  }
+
+  @Nonnull
+  private Result walk(int root) {
+    PointsToSet objects = new PointsToSet();
+    BitSet visited = new BitSet();
+    int[] stack = new int[16];
+    int stackSize = 0;
+    stack[stackSize++] = root;
+    visited.set(root);
+    int steps = 0;
+    List<Integer> next = new ArrayList<>();
+
+    while (stackSize > 0) {
+      int variable = stack[--stackSize];
+      if (++steps > budget) {
+        return fallback(root, steps - 1);
+      }
+      next.clear();
+      visit(variable, objects, next);
+      for (int predecessor : next) {
+        if (!visited.get(predecessor)) {
+          visited.set(predecessor);
+          if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+          }
+          stack[stackSize++] = predecessor;
+        }
+      }
+    }
+
+    PointsToSet filter = filters.filterOf(root);
+    if (filter != null) {
+      objects.retainAll(filter);
+    }
+    Set<Type> types = new LinkedHashSet<>();
+    objects.forEach(object -> types.add(pag.objectType(object)));
+    return new Result(objects, types, true, steps);
+  }
+
+  /** Builds the graph around {@code variable}; collects its objects and where its values come from. */
+  private void visit(int variable, @Nonnull PointsToSet objects, @Nonnull List<Integer> next) {
+    Object owner = pag.variableOwner(variable);
+    Object element = pag.variableElement(variable);
+    if (owner instanceof MethodSignature) {
+      MethodSignature method = (MethodSignature) owner;
+      expand(method);
+      if (element instanceof Integer || PagBuilder.THIS.equals(element)) {
+        expandCallers(method);
+      }
+    } else if (owner == null) {
+      expandStores(element);
+    }
+
+    for (int i = 0; i < allocationCounts[variable]; i++) {
+      objects.add(allocations[variable][i]);
+    }
+    for (int i = 0; i < predecessorCounts[variable]; i++) {
+      next.add(predecessors[variable][i]);
+    }
+    List<Object> fields = loadedFields[variable];
+    if (fields != null) {
+      for (Object field : fields) {
+        expandStores(field);
+        next.addAll(storedValues.getOrDefault(field, Collections.emptyList()));
+      }
+    }
+  }
+
+  @Nonnull
+  private Result fallback(int root, int steps) {
+    Set<Type> types = new LinkedHashSet<>();
+    Type type = pag.variableType(root);
+    if (type instanceof ClassType && dispatchCache.getHierarchy().contains((ClassType) type)) {
+      types.addAll(dispatchCache.getHierarchy().allConcreteSubtypes((ClassType) type));
+    } else {
+      types.add(type);
+    }
+    return new Result(new PointsToSet(), types, false, steps);
+  }
+
+  /** Adds the body of {@code method} and links its call sites to their CHA targets. */
+  private void expand(@Nonnull MethodSignature method) {
+    if (!expanded.add(method)) {
+      return;
+    }
+    int before = pag.variableCount();
+    builder.addMethod(method);
+    for (PagBuilder.CallSite site : builder.callSitesOf(method)) {
+      for (MethodSignature target : SparkLikeAlgorithm.staticTargets(site.invoke, dispatchCache)) {
+        builder.link(site, target);
+        if (site.receiver >= 0) {
+          pag.addAssignEdge(site.receiver, builder.thisVariable(target));
+        }
+      }
+    }
+    index(before);
+  }
+
+  /** Links the call sites of all CHA callers of {@code method}, so its parameters get their edges. */
+  private void expandCallers(@Nonnull MethodSignature method) {
+    if (!callersExpanded.add(method)) {
+      return;
+    }
+    for (MethodSignature caller : chaCallGraph().edgesInto(method)) {
+      expand(caller);
+    }
+  }
+
+  /** Adds every method storing into {@code field}, so the stored values are indexed. */
+  private void expandStores(@Nonnull Object field) {
+    if (!storesExpanded.add(field)) {
+      return;
+    }
+    for (MethodSignature method : storingMethods().getOrDefault(field, Collections.emptySet())) {
+      expand(method);
+    }
+  }
+
+  /** Records the edges added since the last call and the loads and stores of new variables. */
+  private void index(int firstNewVariable) {
+    grow();
+    pag.drainNewAllocations(
+        (object, variable) -> append(allocations, allocationCounts, variable, object));
+    pag.drainNewEdges(
+        (source, target) -> append(predecessors, predecessorCounts, target, source));
+    // loads and stores are based on locals, which only come into being with their method's body
+    for (int base = firstNewVariable; base < pag.variableCount(); base++) {
+      List<PointerAssignmentGraph.FieldAccess> loads = pag.loadsFrom(base);
+      if (loads != null) {
+        for (PointerAssignmentGraph.FieldAccess load : loads) {
+          if (loadedFields[load.other] == null) {
+            loadedFields[load.other] = new ArrayList<>(2);
+          }
+          loadedFields[load.other].add(load.field);
+        }
+      }
+      List<PointerAssignmentGraph.FieldAccess> stores = pag.storesInto(base);
+      if (stores != null) {
+        for (PointerAssignmentGraph.FieldAccess store : stores) {
+          storedValues.computeIfAbsent(store.field, k -> new ArrayList<>()).add(store.other);
+        }
+      }
+    }
+  }
+
+  private static void append(@Nonnull int[][] rows, @Nonnull int[] counts, int row, int value) {
+    if (counts[row] == 0) {
+      rows[row] = new int[2];
+    } else if (counts[row] == rows[row].length) {
+      rows[row] = Arrays.copyOf(rows[row], counts[row] * 2);
+    }
+    rows[row][counts[row]++] = value;
+  }
+
+  private void grow() {
+    int variables = pag.variableCount();
+    if (variables <= predecessors.length) {
+      return;
+    }
+    int capacity = Math.max(variables, predecessors.length * 2);
+    predecessors = Arrays.copyOf(predecessors, capacity);
+    predecessorCounts = Arrays.copyOf(predecessorCounts, capacity);
+    allocations = Arrays.copyOf(allocations, capacity);
+    allocationCounts = Arrays.copyOf(allocationCounts, capacity);
+    loadedFields = Arrays.copyOf(loadedFields, capacity);
+  }
+
+  @Nonnull
+  private CallGraph chaCallGraph() {
+    if (chaCallGraph == null) {
+      CHAAlgorithm cha = new CHAAlgorithm();
+      cha.setDispatchCache(dispatchCache);
+      cha.setBodyCache(bodyCache);
+      chaCallGraph = cha.constructCallGraph(view);
+    }
+    return chaCallGraph;
+  }
+
+  /** Scans the bodies of the CHA call graph once for the fields and arrays they store into. */
+  @Nonnull
+  private Map<Object, Set<MethodSignature>> storingMethods() {
+    if (storingMethods != null) {
+      return storingMethods;
+    }
+    Map<Object, Set<MethodSignature>> index = new HashMap<>();
+    for (MethodSignature method : chaCallGraph().getNodes()) {
+      MethodSummary summary = bodyCache.summaryOf(method);
+      if (summary == null) {
+        continue;
+      }
+      for (int i = 0; i < summary.getStoreCount(); i++) {
+        addStoringMethod(index, summary.getStoreTarget(i), method);
+      }
+      // string constants may be stored into fields directly
+      for (int i = 0; i < summary.getAllocationCount(); i++) {
+        addStoringMethod(index, summary.getAllocationTarget(i), method);
+      }
+    }
+    storingMethods = index;
+    return index;
+  }
+
+  private static void addStoringMethod(
+      @Nonnull Map<Object, Set<MethodSignature>> index,
+      @Nonnull Value target,
+      @Nonnull MethodSignature method) {
+    if (target instanceof JFieldRef) {
+      index
+          .computeIfAbsent(((JFieldRef) target).getFieldSignature(), k -> new HashSet<>())
+          .add(method);
+    } else if (target instanceof JArrayRef) {
+      index
+          .computeIfAbsent(PointerAssignmentGraph.ARRAY_ELEMENTS, k -> new HashSet<>())
+          .add(method);
+    }
+  }
+
+  /** The graph built by the queries so far; {@link Result#getObjects()} are its objects. */
+  @Nonnull
+  public PointerAssignmentGraph getPag() {
+    return pag;
+  }
+
+  public long getQueryCount() {
+    return queries;
+  }
+
+  public long getCacheHitCount() {
+    return cacheHits;
+  }
+
+  @Override
+  public String toString() {
+    return "DemandDrivenPointsTo{budget="
+        + budget
+        + ", queries="
+        + queries
+        + ", cacheHits="
+        + cacheHits
+        + ", "
+        + pag
+        + '}';
+  }
+}
@@ -0,0 +1,179 @@
+package analysis.exercise4;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import sootup.core.types.ArrayType;
+import sootup.core.types.ClassType;
+import sootup.core.types.Type;
+
+/**
+ * Decides which abstract object stands for the objects allocated at an {@link AllocationSite}.
+ * Sites mapped to the same key share one object in the {@link PointerAssignmentGraph}; merging
+ * sites trades precision for fewer objects and smaller points-to sets.
+ *
+ * <p>A policy counts the distinct abstract objects it produced over all graphs it was used for.
+ */
+public abstract class HeapAbstraction {
+
+  private static final List<String> JDK_PACKAGES =
+      Arrays.asList("java.", "javax.", "jdk.", "sun.", "com.sun.");
+
+  @Nonnull private final Set<Object> objects = new HashSet<>();
+
+  /** The key for {@link PointerAssignmentGraph#object} of the abstract object for {@code site}. */
+  @Nonnull
+  public final Object abstractObject(@Nonnull AllocationSite site) {
+    Object object = select(site);
+    objects.add(object);
+    return object;
+  }
+
+  @Nonnull
+  protected abstract Object select(@Nonnull AllocationSite site);
+
+  /** How many distinct abstract objects this policy produced. */
+  public int getAbstractObjectCount() {
+    return objects.size();
+  }
+
+  /** The one object standing for all merged allocations of a type. */
+  public static final class MergedObject {
+    @Nonnull public final Type type;
+
+    MergedObject(@Nonnull Type type) {
+      this.type = type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof MergedObject && type.equals(((MergedObject) o).type);
+    }
+
+    @Override
+    public int hashCode() {
+      return type.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return "new " + type + " (merged)";
+    }
+  }
+
+  /** One object per allocation site. */
+  @Nonnull
+  public static HeapAbstraction perSite() {
+    return new HeapAbstraction() {
+      @Override
+      @Nonnull
+      protected Object select(@Nonnull AllocationSite site) {
+        return site;
+      }
+
+      @Override
+      public String toString() {
+        return "perSite";
+      }
+    };
+  }
+
+  /**
+   * One object per type for the classes named in {@code typeNames} and arrays of them, one object
+   * per site for all others.
+   */
+  @Nonnull
+  public static HeapAbstraction mergeTypes(@Nonnull Collection<String> typeNames) {
+    Set<String> names = new HashSet<>(typeNames);
+    return new HeapAbstraction() {
+      @Override
+      @Nonnull
+      protected Object select(@Nonnull AllocationSite site) {
+        Type type = elementType(site.type);
+        boolean merged =
+            type instanceof ClassType
+                && names.contains(((ClassType) type).getFullyQualifiedName());
+        return merged ? new MergedObject(site.type) : site;
+      }
+
+      @Override
+      public String toString() {
+        return "mergeTypes" + names;
+      }
+    };
+  }
+
+  /**
+   * One object per type for the classes of the JDK and arrays of them or of primitives, one object
+   * per site for application types.
+   */
+  @Nonnull
+  public static HeapAbstraction mergeJdkTypes() {
+    return new HeapAbstraction() {
+      @Override
+      @Nonnull
+      protected Object select(@Nonnull AllocationSite site) {
+        Type type = elementType(site.type);
+        boolean merged = !(type instanceof ClassType) || isJdkType((ClassType) type);
+        return merged ? new MergedObject(site.type) : site;
+      }
+
+      @Override
+      public String toString() {
+        return "mergeJdkTypes";
+      }
+    };
+  }
+
+  /**
+   * At most {@code maxSitesPerType} objects per type: one per site for the first sites of each type
+   * encountered, one shared by the remaining sites of that type.
+   */
+  @Nonnull
+  public static HeapAbstraction capPerType(int maxSitesPerType) {
+    if (maxSitesPerType < 1) {
+      throw new IllegalArgumentException("maxSitesPerType must be positive: " + maxSitesPerType);
+    }
+    return new HeapAbstraction() {
+      private final Map<AllocationSite, Object> selected = new HashMap<>();
+      private final Map<Type, Integer> sitesPerType = new HashMap<>();
+
+      @Override
+      @Nonnull
+      protected Object select(@Nonnull AllocationSite site) {
+        return selected.computeIfAbsent(
+            site,
+            k -> {
+              int sites = sitesPerType.merge(site.type, 1, Integer::sum);
+              return sites < maxSitesPerType ? site : new MergedObject(site.type);
+            });
+      }
+
+      @Override
+      public String toString() {
+        return "capPerType(" + maxSitesPerType + ")";
+      }
+    };
+  }
+
+  /** The innermost element type of an array type, {@code type} itself otherwise. */
+  @Nonnull
+  private static Type elementType(@Nonnull Type type) {
+    return type instanceof ArrayType ? ((ArrayType) type).getBaseType() : type;
+  }
+
+  private static boolean isJdkType(@Nonnull ClassType type) {
+    String name = type.getFullyQualifiedName();
+    for (String prefix : JDK_PACKAGES) {
+      if (name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
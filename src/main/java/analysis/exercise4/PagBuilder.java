@@ -0,0 +1,313 @@
+package analysis.exercise4;
+
+import analysis.BodyCache;
+import analysis.MethodSummary;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.core.jimple.basic.Immediate;
+import sootup.core.jimple.basic.Local;
+import sootup.core.jimple.basic.Value;
+import sootup.core.jimple.common.expr.AbstractInvokeExpr;
+import sootup.core.jimple.common.expr.JInterfaceInvokeExpr;
+import sootup.core.jimple.common.expr.JVirtualInvokeExpr;
+import sootup.core.jimple.common.ref.JArrayRef;
+import sootup.core.jimple.common.ref.JInstanceFieldRef;
+import sootup.core.jimple.common.ref.JStaticFieldRef;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.types.ArrayType;
+import sootup.core.types.ReferenceType;
+import sootup.core.types.Type;
+import sootup.java.core.views.JavaView;
+
+/**
+ * Translates method bodies into a {@link PointerAssignmentGraph} and links call sites to their
+ * targets. Only statements moving references are translated; primitives never reach the graph.
+ */
+public class PagBuilder {
+  public static final String THIS = "@this";
+  public static final String RETURN = "@return";
+
+  @Nonnull private final BodyCache bodyCache;
+  @Nonnull private final PointerAssignmentGraph pag;
+  @Nonnull private final HeapAbstraction heapAbstraction;
+
+  @Nonnull private final Set<MethodSignature> methods = new HashSet<>();
+  @Nonnull private final Map<MethodSignature, List<CallSite>> callSites = new HashMap<>();
+
+  /** Per receiver variable, the virtual call sites on it; null if none. */
+  @Nonnull private List<CallSite>[] virtualCallSites = newCallSiteArray(64);
+
+  /** A call site with the variables of its receiver, arguments and result (-1 if absent). */
+  public static final class CallSite {
+    @Nonnull public final MethodSignature caller;
+    @Nonnull public final AbstractInvokeExpr invoke;
+    public final int receiver;
+    @Nonnull public final int[] arguments;
+    public final int result;
+
+    /** The targets {@link #link} connected so far. */
+    @Nonnull private final Set<MethodSignature> linkedTargets = new HashSet<>(2);
+
+    CallSite(
+        @Nonnull MethodSignature caller,
+        @Nonnull AbstractInvokeExpr invoke,
+        int receiver,
+        @Nonnull int[] arguments,
+        int result) {
+      this.caller = caller;
+      this.invoke = invoke;
+      this.receiver = receiver;
+      this.arguments = arguments;
+      this.result = result;
+    }
+
+    /** Whether the target depends on the runtime type of the receiver. */
+    public boolean isVirtual() {
+      return PagBuilder.isVirtual(invoke);
+    }
+
+    @Nonnull
+    public Set<MethodSignature> getLinkedTargets() {
+      return Collections.unmodifiableSet(linkedTargets);
+    }
+  }
+
+  public PagBuilder(@Nonnull JavaView view, @Nonnull PointerAssignmentGraph pag) {
+    this(new BodyCache(view), pag, HeapAbstraction.perSite());
+  }
+
+  /** @param heapAbstraction selects the abstract object of each allocation site */
+  public PagBuilder(
+      @Nonnull BodyCache bodyCache,
+      @Nonnull PointerAssignmentGraph pag,
+      @Nonnull HeapAbstraction heapAbstraction) {
+    this.bodyCache = bodyCache;
+    this.pag = pag;
+    this.heapAbstraction = heapAbstraction;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  @Nonnull
+  private static List<CallSite>[] newCallSiteArray(int size) {
+    return new List[size];
+  }
+
+  @Nonnull
+  public PointerAssignmentGraph getPag() {
+    return pag;
+  }
+
+  @Nonnull
+  public HeapAbstraction getHeapAbstraction() {
+    return heapAbstraction;
+  }
+
+  /**
+   * Adds the body of {@code method} to the graph.
+   *
+   * @return false if the method was added before or has no body
+   */
+  public boolean addMethod(@Nonnull MethodSignature method) {
+    if (!methods.add(method)) {
+      return false;
+    }
+    MethodSummary summary = bodyCache.summaryOf(method);
+    if (summary == null) {
+      return false;
+    }
+
+    for (int i = 0; i < summary.getIdentityCount(); i++) {
+      Local local = summary.getIdentityLocal(i);
+      int parameter = summary.getIdentityParameter(i);
+      if (parameter < 0) {
+        pag.addAssignEdge(thisVariable(method), local(method, local));
+      } else if (local.getType() instanceof ReferenceType) {
+        pag.addAssignEdge(parameterVariable(method, parameter), local(method, local));
+      }
+    }
+    for (int i = 0; i < summary.getAllocationCount(); i++) {
+      // Jimple allocates into locals; only string constants are stored into fields directly
+      Type type = summary.getAllocation(i).getType();
+      AllocationSite site = new AllocationSite(method, i, type);
+      Value target = summary.getAllocationTarget(i);
+      if (target instanceof Local) {
+        int object = pag.object(heapAbstraction.abstractObject(site), type);
+        pag.addAllocation(object, local(method, (Local) target));
+      }
+    }
+    for (int i = 0; i < summary.getCopyCount(); i++) {
+      pag.addAssignEdge(
+          local(method, summary.getCopySource(i)), local(method, summary.getCopyTarget(i)));
+    }
+    for (int i = 0; i < summary.getCastCount(); i++) {
+      Immediate source = summary.getCast(i).getOp();
+      if (source instanceof Local) {
+        // casts are filtered by the declared type of the target
+        pag.addAssignEdge(local(method, (Local) source), local(method, summary.getCastTarget(i)));
+      }
+    }
+    for (int i = 0; i < summary.getLoadCount(); i++) {
+      addLoad(method, summary.getLoadSource(i), local(method, summary.getLoadTarget(i)));
+    }
+    for (int i = 0; i < summary.getStoreCount(); i++) {
+      addStore(method, local(method, summary.getStoreSource(i)), summary.getStoreTarget(i));
+    }
+    for (int i = 0; i < summary.getReturnCount(); i++) {
+      Local op = summary.getReturnedLocal(i);
+      if (op.getType() instanceof ReferenceType) {
+        pag.addAssignEdge(local(method, op), returnVariable(method));
+      }
+    }
+
+    List<CallSite> sites = new ArrayList<>(summary.getCallSiteCount());
+    for (int i = 0; i < summary.getCallSiteCount(); i++) {
+      Local result = summary.getResult(i);
+      sites.add(
+          addCallSite(
+              method,
+              summary.getInvoke(i),
+              summary.getReceiver(i),
+              result != null && result.getType() instanceof ReferenceType
+                  ? local(method, result)
+                  : -1));
+    }
+    callSites.put(method, sites);
+    return true;
+  }
+
+  static boolean isVirtual(@Nonnull AbstractInvokeExpr invoke) {
+    return invoke instanceof JVirtualInvokeExpr || invoke instanceof JInterfaceInvokeExpr;
+  }
+
+  /** Translates {@code target = source} where source is a field or array element. */
+  private void addLoad(@Nonnull MethodSignature method, @Nonnull Value source, int target) {
+    if (source instanceof JInstanceFieldRef) {
+      JInstanceFieldRef ref = (JInstanceFieldRef) source;
+      pag.addLoad(local(method, ref.getBase()), ref.getFieldSignature(), target);
+    } else if (source instanceof JStaticFieldRef) {
+      pag.addAssignEdge(
+          pag.staticFieldVariable(((JStaticFieldRef) source).getFieldSignature()), target);
+    } else if (source instanceof JArrayRef) {
+      pag.addLoad(
+          local(method, ((JArrayRef) source).getBase()),
+          PointerAssignmentGraph.ARRAY_ELEMENTS,
+          target);
+    }
+  }
+
+  /** Translates {@code target = value} where target is a field or array element. */
+  private void addStore(@Nonnull MethodSignature method, int value, @Nonnull Value target) {
+    if (target instanceof JInstanceFieldRef) {
+      JInstanceFieldRef ref = (JInstanceFieldRef) target;
+      pag.addStore(value, local(method, ref.getBase()), ref.getFieldSignature());
+    } else if (target instanceof JStaticFieldRef) {
+      pag.addAssignEdge(
+          value, pag.staticFieldVariable(((JStaticFieldRef) target).getFieldSignature()));
+    } else if (target instanceof JArrayRef) {
+      pag.addStore(
+          value,
+          local(method, ((JArrayRef) target).getBase()),
+          PointerAssignmentGraph.ARRAY_ELEMENTS);
+    }
+  }
+
+  @Nonnull
+  private CallSite addCallSite(
+      @Nonnull MethodSignature caller,
+      @Nonnull AbstractInvokeExpr invoke,
+      @Nullable Local receiverLocal,
+      int result) {
+    int[] arguments = new int[invoke.getArgCount()];
+    for (int i = 0; i < arguments.length; i++) {
+      Immediate argument = invoke.getArg(i);
+      arguments[i] =
+          argument instanceof Local && argument.getType() instanceof ReferenceType
+              ? local(caller, (Local) argument)
+              : -1;
+    }
+    int receiver = receiverLocal != null ? local(caller, receiverLocal) : -1;
+    CallSite site = new CallSite(caller, invoke, receiver, arguments, result);
+    if (site.isVirtual()) {
+      if (receiver >= virtualCallSites.length) {
+        virtualCallSites =
+            Arrays.copyOf(virtualCallSites, Math.max(receiver + 1, virtualCallSites.length * 2));
+      }
+      if (virtualCallSites[receiver] == null) {
+        virtualCallSites[receiver] = new ArrayList<>(2);
+      }
+      virtualCallSites[receiver].add(site);
+    }
+    return site;
+  }
+
+  /**
+   * Adds the parameter and return edges between {@code site} and {@code target}. The receiver is
+   * not linked: depending on the caller, this gets all receiver objects or only those dispatching
+   * to {@code target}.
+   *
+   * @return false if the two were linked before
+   */
+  public boolean link(@Nonnull CallSite site, @Nonnull MethodSignature target) {
+    if (!site.linkedTargets.add(target)) {
+      return false;
+    }
+    List<Type> parameterTypes = target.getParameterTypes();
+    for (int i = 0; i < site.arguments.length && i < parameterTypes.size(); i++) {
+      if (site.arguments[i] >= 0) {
+        pag.addAssignEdge(site.arguments[i], parameterVariable(target, i));
+      }
+    }
+    if (site.result >= 0 && target.getType() instanceof ReferenceType) {
+      pag.addAssignEdge(returnVariable(target), site.result);
+    }
+    return true;
+  }
+
+  /** The call sites in the body of {@code method}; empty if it was not added. */
+  @Nonnull
+  public List<CallSite> callSitesOf(@Nonnull MethodSignature method) {
+    return callSites.getOrDefault(method, Collections.emptyList());
+  }
+
+  /** The virtual call sites whose receiver is {@code variable}; empty if none. */
+  @Nonnull
+  public List<CallSite> virtualCallSitesOn(int variable) {
+    List<CallSite> sites = variable < virtualCallSites.length ? virtualCallSites[variable] : null;
+    return sites == null ? Collections.emptyList() : sites;
+  }
+
+  @Nonnull
+  public Set<MethodSignature> getMethods() {
+    return Collections.unmodifiableSet(methods);
+  }
+
+  public int local(@Nonnull MethodSignature method, @Nonnull Local local) {
+    return pag.methodVariable(method, local.getName(), local.getType());
+  }
+
+  public int thisVariable(@Nonnull MethodSignature method) {
+    return pag.methodVariable(method, THIS, method.getDeclClassType());
+  }
+
+  public int parameterVariable(@Nonnull MethodSignature method, int index) {
+    return pag.methodVariable(method, index, method.getParameterTypes().get(index));
+  }
+
+  public int returnVariable(@Nonnull MethodSignature method) {
+    return pag.methodVariable(method, RETURN, method.getType());
+  }
+
+  /** The element type of arrays of type {@code type}, or {@code type} itself if it is no array. */
+  @Nonnull
+  static Type elementType(@Nonnull Type type) {
+    return type instanceof ArrayType ? ((ArrayType) type).getElementType() : type;
+  }
+}
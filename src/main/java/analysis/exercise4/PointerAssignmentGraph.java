@@ -0,0 +1,388 @@
+package analysis.exercise4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.core.signatures.FieldSignature;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.types.Type;
+
+/**
+ * Pointer assignment graph of the Spark-like analysis. Pointer variables (locals, the {@code this},
+ * parameter and return variables of each method, static fields and the fields of abstract objects)
+ * and abstract objects are interned to dense int ids.
+ *
+ * <p>Edges:
+ *
+ * <ul>
+ *   <li>allocation {@code o -> v}: v points to o
+ *   <li>assign {@code a -> b}: b points to everything a points to
+ *   <li>load {@code b = a.f}, indexed by the base a
+ *   <li>store {@code a.f = b}, indexed by the base a
+ * </ul>
+ *
+ * The graph only grows. New allocation and assign edges are also queued, so a solver running
+ * concurrently with the construction can pick them up with {@link #drainNewAllocations} and {@link
+ * #drainNewEdges}.
+ */
+public class PointerAssignmentGraph {
+
+  /** Pseudo field for the elements of an array object. */
+  public static final Object ARRAY_ELEMENTS = "[]";
+
+  private static final int[] EMPTY = new int[0];
+
+  @Nonnull private final Map<Object, Integer> variableIds = new HashMap<>();
+  @Nonnull private Object[] variableKeys = new Object[64];
+  @Nonnull private Type[] variableTypes = new Type[64];
+  private int variableCount = 0;
+
+  /** Per variable, its assign successors; {@code successorCounts} holds the used length. */
+  @Nonnull private int[][] successors = new int[64][];
+
+  @Nonnull private int[] successorCounts = new int[64];
+
+  /** All assign edges as {@code source << 32 | target}, open addressing with 0 as the free slot. */
+  @Nonnull private long[] edgeTable = new long[256];
+
+  private int edgeCount = 0;
+
+  /** Per base variable, the loads and stores through it; null if none. */
+  @Nonnull private List<FieldAccess>[] loads = newAccessArray(64);
+
+  @Nonnull private List<FieldAccess>[] stores = newAccessArray(64);
+
+  @Nonnull private final Map<Object, Integer> objectIds = new HashMap<>();
+  @Nonnull private final List<Object> objectSites = new ArrayList<>();
+  @Nonnull private final List<Type> objectTypes = new ArrayList<>();
+
+  @Nonnull private int[] pendingEdges = new int[64];
+  private int pendingEdgeCount = 0;
+  @Nonnull private int[] pendingAllocations = new int[64];
+  private int pendingAllocationCount = 0;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  @Nonnull
+  private static List<FieldAccess>[] newAccessArray(int size) {
+    return new List[size];
+  }
+
+  /** A load {@code other = base.field} or a store {@code base.field = other}. */
+  public static final class FieldAccess {
+    @Nonnull public final Object field;
+    public final int other;
+
+    FieldAccess(@Nonnull Object field, int other) {
+      this.field = field;
+      this.other = other;
+    }
+  }
+
+  /** Key of a variable that belongs to a method or an abstract object. */
+  private static final class Key {
+    private final Object owner;
+    private final Object element;
+
+    Key(@Nonnull Object owner, @Nonnull Object element) {
+      this.owner = owner;
+      this.element = element;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return owner.equals(key.owner) && element.equals(key.element);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * owner.hashCode() + element.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return owner + "." + element;
+    }
+  }
+
+  /** A variable of {@code method}: a local name, a parameter index, "@this" or "@return". */
+  public int methodVariable(
+      @Nonnull MethodSignature method, @Nonnull Object element, @Nonnull Type type) {
+    return variable(new Key(method, element), type);
+  }
+
+  /** Returns the variable of {@code method}, or -1 if it does not exist (yet). */
+  public int findMethodVariable(@Nonnull MethodSignature method, @Nonnull Object element) {
+    Integer id = variableIds.get(new Key(method, element));
+    return id == null ? -1 : id;
+  }
+
+  public int staticFieldVariable(@Nonnull FieldSignature field) {
+    return variable(field, field.getType());
+  }
+
+  /** The field {@code field} (or {@link #ARRAY_ELEMENTS}) of abstract object {@code object}. */
+  public int fieldVariable(int object, @Nonnull Object field, @Nonnull Type type) {
+    return variable(new Key(object, field), type);
+  }
+
+  /** The field variable of {@code object}, typed by the field or the array element type. */
+  public int fieldVariable(int object, @Nonnull Object field) {
+    Type type =
+        field instanceof FieldSignature
+            ? ((FieldSignature) field).getType()
+            : PagBuilder.elementType(objectType(object));
+    return fieldVariable(object, field, type);
+  }
+
+  private int variable(@Nonnull Object key, @Nonnull Type type) {
+    Integer id = variableIds.get(key);
+    if (id != null) {
+      return id;
+    }
+    if (variableCount == variableKeys.length) {
+      int capacity = variableCount * 2;
+      variableKeys = Arrays.copyOf(variableKeys, capacity);
+      variableTypes = Arrays.copyOf(variableTypes, capacity);
+      successors = Arrays.copyOf(successors, capacity);
+      successorCounts = Arrays.copyOf(successorCounts, capacity);
+      loads = Arrays.copyOf(loads, capacity);
+      stores = Arrays.copyOf(stores, capacity);
+    }
+    variableKeys[variableCount] = key;
+    variableTypes[variableCount] = type;
+    successors[variableCount] = EMPTY;
+    variableIds.put(key, variableCount);
+    return variableCount++;
+  }
+
+  public int variableCount() {
+    return variableCount;
+  }
+
+  @Nonnull
+  public Object variableKey(int variable) {
+    return variableKeys[variable];
+  }
+
+  /**
+   * What {@code variable} belongs to: its method, the id of its abstract object, or null for a
+   * static field.
+   */
+  @Nullable
+  public Object variableOwner(int variable) {
+    Object key = variableKeys[variable];
+    return key instanceof Key ? ((Key) key).owner : null;
+  }
+
+  /**
+   * What {@code variable} is within its owner: a local name, a parameter index, "@this", "@return",
+   * a field or {@link #ARRAY_ELEMENTS}; the field itself for a static field.
+   */
+  @Nonnull
+  public Object variableElement(int variable) {
+    Object key = variableKeys[variable];
+    return key instanceof Key ? ((Key) key).element : key;
+  }
+
+  /** The declared type of {@code variable}; points-to sets are filtered by it. */
+  @Nonnull
+  public Type variableType(int variable) {
+    return variableTypes[variable];
+  }
+
+  /** Returns the abstract object for allocation site {@code site}, creating it first if needed. */
+  public int object(@Nonnull Object site, @Nonnull Type type) {
+    Integer id = objectIds.get(site);
+    if (id != null) {
+      return id;
+    }
+    id = objectSites.size();
+    objectIds.put(site, id);
+    objectSites.add(site);
+    objectTypes.add(type);
+    return id;
+  }
+
+  public int objectCount() {
+    return objectSites.size();
+  }
+
+  @Nonnull
+  public Type objectType(int object) {
+    return objectTypes.get(object);
+  }
+
+  @Nonnull
+  public Object objectSite(int object) {
+    return objectSites.get(object);
+  }
+
+  public void addAllocation(int object, int variable) {
+    if (pendingAllocationCount + 2 > pendingAllocations.length) {
+      pendingAllocations = Arrays.copyOf(pendingAllocations, pendingAllocations.length * 2);
+    }
+    pendingAllocations[pendingAllocationCount++] = object;
+    pendingAllocations[pendingAllocationCount++] = variable;
+  }
+
+  /** @return whether the edge is new */
+  public boolean addAssignEdge(int source, int target) {
+    if (source == target || hasAssignEdge(source, target)) {
+      return false;
+    }
+    int[] row = successors[source];
+    if (successorCounts[source] == row.length) {
+      row = successors[source] = Arrays.copyOf(row, Math.max(4, row.length * 2));
+    }
+    row[successorCounts[source]++] = target;
+    insertEdge(edgeKey(source, target));
+    if (pendingEdgeCount + 2 > pendingEdges.length) {
+      pendingEdges = Arrays.copyOf(pendingEdges, pendingEdges.length * 2);
+    }
+    pendingEdges[pendingEdgeCount++] = source;
+    pendingEdges[pendingEdgeCount++] = target;
+    return true;
+  }
+
+  public boolean hasAssignEdge(int source, int target) {
+    long key = edgeKey(source, target);
+    for (int slot = slotOf(key); edgeTable[slot] != 0; slot = (slot + 1) & (edgeTable.length - 1)) {
+      if (edgeTable[slot] == key) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long edgeKey(int source, int target) {
+    // never 0: self edges are not stored
+    return ((long) source << 32) | (target & 0xFFFFFFFFL);
+  }
+
+  private int slotOf(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h >>> 32) & (edgeTable.length - 1);
+  }
+
+  private void insertEdge(long key) {
+    if (++edgeCount * 2 > edgeTable.length) {
+      long[] old = edgeTable;
+      edgeTable = new long[old.length * 2];
+      for (long oldKey : old) {
+        if (oldKey != 0) {
+          int slot = slotOf(oldKey);
+          while (edgeTable[slot] != 0) {
+            slot = (slot + 1) & (edgeTable.length - 1);
+          }
+          edgeTable[slot] = oldKey;
+        }
+      }
+    }
+    int slot = slotOf(key);
+    while (edgeTable[slot] != 0) {
+      slot = (slot + 1) & (edgeTable.length - 1);
+    }
+    edgeTable[slot] = key;
+  }
+
+  public int edgeCount() {
+    return edgeCount;
+  }
+
+  public int outDegree(int variable) {
+    return successorCounts[variable];
+  }
+
+  /** The {@code index}-th assign successor of {@code variable}, in insertion order. */
+  public int successor(int variable, int index) {
+    return successors[variable][index];
+  }
+
+  public void forEachSuccessor(int variable, @Nonnull IntConsumer action) {
+    int[] row = successors[variable];
+    for (int i = 0; i < successorCounts[variable]; i++) {
+      action.accept(row[i]);
+    }
+  }
+
+  /** {@code target = base.field} */
+  public void addLoad(int base, @Nonnull Object field, int target) {
+    if (loads[base] == null) {
+      loads[base] = new ArrayList<>(2);
+    }
+    loads[base].add(new FieldAccess(field, target));
+  }
+
+  /** {@code base.field = source} */
+  public void addStore(int source, int base, @Nonnull Object field) {
+    if (stores[base] == null) {
+      stores[base] = new ArrayList<>(2);
+    }
+    stores[base].add(new FieldAccess(field, source));
+  }
+
+  @Nullable
+  public List<FieldAccess> loadsFrom(int base) {
+    return loads[base];
+  }
+
+  @Nullable
+  public List<FieldAccess> storesInto(int base) {
+    return stores[base];
+  }
+
+  /** Hands every allocation added since the last call to {@code action} as (object, variable). */
+  public void drainNewAllocations(@Nonnull IntPairConsumer action) {
+    // the action may add allocations, so drain until nothing is left
+    while (pendingAllocationCount > 0) {
+      int[] batch = Arrays.copyOf(pendingAllocations, pendingAllocationCount);
+      pendingAllocationCount = 0;
+      for (int i = 0; i < batch.length; i += 2) {
+        action.accept(batch[i], batch[i + 1]);
+      }
+    }
+  }
+
+  /** Hands every assign edge added since the last call to {@code action} as (source, target). */
+  public void drainNewEdges(@Nonnull IntPairConsumer action) {
+    while (pendingEdgeCount > 0) {
+      int[] batch = Arrays.copyOf(pendingEdges, pendingEdgeCount);
+      pendingEdgeCount = 0;
+      for (int i = 0; i < batch.length; i += 2) {
+        action.accept(batch[i], batch[i + 1]);
+      }
+    }
+  }
+
+  public boolean hasNewEdges() {
+    return pendingEdgeCount > 0 || pendingAllocationCount > 0;
+  }
+
+  @FunctionalInterface
+  public interface IntPairConsumer {
+    void accept(int first, int second);
+  }
+
+  @Override
+  public String toString() {
+    return "PointerAssignmentGraph{variables="
+        + variableCount
+        + ", objects="
+        + objectSites.size()
+        + ", assignEdges="
+        + edgeCount
+        + '}';
+  }
+}
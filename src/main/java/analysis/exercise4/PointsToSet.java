@@ -0,0 +1,520 @@
+package analysis.exercise4;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A set of abstract object ids whose representation adapts to its contents:
+ *
+ * <ul>
+ *   <li>up to {@link #MAX_ARRAY_SIZE} elements: a sorted int array
+ *   <li>beyond that, a dense bitset (one word per 64 ids from 0 to the largest element) if at least
+ *       two thirds of its words are in use, otherwise a sparse bitset holding only the non-zero
+ *       words with their indices
+ * </ul>
+ *
+ * <p>{@link #copy()} shares the contents with the copy; whichever set is modified first copies them
+ * before writing. {@link #addAll} shares as well when it fills an empty set without a filter, so the
+ * many variables that end up with the same objects along a chain of assignments hold one set.
+ *
+ * <p>All bulk operations work on 64-bit words, whatever the representations of the operands.
+ */
+public final class PointsToSet {
+
+  /** The largest set kept as a sorted array. */
+  public static final int MAX_ARRAY_SIZE = 16;
+
+  private static final int[] NO_INTS = new int[0];
+  private static final long[] NO_WORDS = new long[0];
+
+  public enum Representation {
+    SORTED_ARRAY,
+    SPARSE_BITSET,
+    DENSE_BITSET
+  }
+
+  /** The contents, possibly shared between several sets. */
+  private static final class Data {
+    @Nonnull Representation representation = Representation.SORTED_ARRAY;
+    int size = 0;
+
+    /** Sorted array: the elements. Sparse bitset: the index of each word, ascending. */
+    @Nonnull int[] ints = NO_INTS;
+
+    /** Sparse bitset: the non-zero words. Dense bitset: word i holds the ids 64i to 64i+63. */
+    @Nonnull long[] words = NO_WORDS;
+
+    /** Used length of {@code ints} (sorted array, sparse) or {@code words} (dense). */
+    int length = 0;
+
+    /** Number of non-zero words; for the sorted array it is not maintained. */
+    int nonZeroWords = 0;
+
+    /** Whether another set may refer to this data; it must be copied before writing. */
+    boolean shared = false;
+
+    @Nonnull
+    Data copy() {
+      Data copy = new Data();
+      copy.representation = representation;
+      copy.size = size;
+      copy.ints = ints.length == 0 ? NO_INTS : ints.clone();
+      copy.words = words.length == 0 ? NO_WORDS : words.clone();
+      copy.length = length;
+      copy.nonZeroWords = nonZeroWords;
+      return copy;
+    }
+
+    long estimatedBytes() {
+      return 48 + (ints.length == 0 ? 0 : 16 + 4L * ints.length)
+          + (words.length == 0 ? 0 : 16 + 8L * words.length);
+    }
+  }
+
+  @Nonnull private Data data;
+
+  public PointsToSet() {
+    this.data = new Data();
+  }
+
+  private PointsToSet(@Nonnull Data data) {
+    this.data = data;
+  }
+
+  @Nonnull
+  public static PointsToSet of(int... ids) {
+    PointsToSet set = new PointsToSet();
+    for (int id : ids) {
+      set.add(id);
+    }
+    return set;
+  }
+
+  /** Returns a set with the same elements that shares the contents until either is modified. */
+  @Nonnull
+  public PointsToSet copy() {
+    data.shared = true;
+    return new PointsToSet(data);
+  }
+
+  /** Whether the two sets currently share their contents. */
+  public boolean sharesWith(@Nonnull PointsToSet other) {
+    return data == other.data;
+  }
+
+  @Nonnull
+  public Representation getRepresentation() {
+    return data.representation;
+  }
+
+  public int size() {
+    return data.size;
+  }
+
+  public boolean isEmpty() {
+    return data.size == 0;
+  }
+
+  public boolean contains(int id) {
+    if (data.representation == Representation.SORTED_ARRAY) {
+      return Arrays.binarySearch(data.ints, 0, data.length, id) >= 0;
+    }
+    return (word(id >>> 6) & (1L << id)) != 0;
+  }
+
+  /** @return whether {@code id} is new */
+  public boolean add(int id) {
+    return orWord(id >>> 6, 1L << id) != 0;
+  }
+
+  /**
+   * Adds the elements of {@code source} that are also in {@code filter} (all of them if it is null)
+   * and records the ones that were not in this set yet in {@code delta}.
+   *
+   * @return whether this set changed
+   */
+  public boolean addAll(
+      @Nonnull PointsToSet source, @Nullable PointsToSet filter, @Nullable PointsToSet delta) {
+    Data from = source.data;
+    if (from == data || from.size == 0) {
+      return false;
+    }
+    if (data.size == 0 && (filter == null || filter.containsAll(source))) {
+      from.shared = true;
+      data = from;
+      if (delta != null) {
+        delta.addAll(source, null, null);
+      }
+      return true;
+    }
+
+    boolean[] changed = {false};
+    forEachWord(from, (index, bits) -> changed[0] |= unionWord(index, bits, filter, delta));
+    return changed[0];
+  }
+
+  public boolean containsAll(@Nonnull PointsToSet other) {
+    if (other.data == data) {
+      return true;
+    }
+    if (other.data.size > data.size) {
+      return false;
+    }
+    boolean[] contained = {true};
+    forEachWord(
+        other.data,
+        (index, bits) -> {
+          if (contained[0] && (bits & ~word(index)) != 0) {
+            contained[0] = false;
+          }
+        });
+    return contained[0];
+  }
+
+  @FunctionalInterface
+  private interface WordConsumer {
+    void accept(int index, long bits);
+  }
+
+  /** Hands the non-zero words of {@code d} to {@code action}, ascending. */
+  private static void forEachWord(@Nonnull Data d, @Nonnull WordConsumer action) {
+    switch (d.representation) {
+      case SORTED_ARRAY:
+        for (int i = 0; i < d.length; ) {
+          int index = d.ints[i] >>> 6;
+          long bits = 0;
+          for (; i < d.length && d.ints[i] >>> 6 == index; i++) {
+            bits |= 1L << d.ints[i];
+          }
+          action.accept(index, bits);
+        }
+        break;
+      case SPARSE_BITSET:
+        for (int i = 0; i < d.length; i++) {
+          action.accept(d.ints[i], d.words[i]);
+        }
+        break;
+      default:
+        for (int i = 0; i < d.length; i++) {
+          if (d.words[i] != 0) {
+            action.accept(i, d.words[i]);
+          }
+        }
+    }
+  }
+
+  private boolean unionWord(
+      int index, long bits, @Nullable PointsToSet filter, @Nullable PointsToSet delta) {
+    if (filter != null) {
+      bits &= filter.word(index);
+    }
+    long fresh = bits == 0 ? 0 : orWord(index, bits);
+    if (fresh == 0) {
+      return false;
+    }
+    if (delta != null) {
+      delta.orWord(index, fresh);
+    }
+    return true;
+  }
+
+  /** Removes every element that is not in {@code filter}. */
+  public void retainAll(@Nonnull PointsToSet filter) {
+    if (filter.data == data || data.size == 0) {
+      return;
+    }
+    int[] indices = new int[Math.max(data.length, 1)];
+    long[] words = new long[indices.length];
+    int count = collectWords(data, indices, words);
+    int kept = 0;
+    int size = 0;
+    for (int i = 0; i < count; i++) {
+      long word = words[i] & filter.word(indices[i]);
+      if (word != 0) {
+        indices[kept] = indices[i];
+        words[kept++] = word;
+        size += Long.bitCount(word);
+      }
+    }
+    if (size != data.size) {
+      data = fromWords(indices, words, kept);
+    }
+  }
+
+  public void forEach(@Nonnull IntConsumer action) {
+    Data d = data;
+    if (d.representation == Representation.SORTED_ARRAY) {
+      for (int i = 0; i < d.length; i++) {
+        action.accept(d.ints[i]);
+      }
+    } else {
+      forEachWord(d, (index, word) -> forEachBit(index, word, action));
+    }
+  }
+
+  private static void forEachBit(int index, long word, @Nonnull IntConsumer action) {
+    while (word != 0) {
+      action.accept(index << 6 | Long.numberOfTrailingZeros(word));
+      word &= word - 1;
+    }
+  }
+
+  /** The elements in ascending order. */
+  @Nonnull
+  public int[] toArray() {
+    int[] result = new int[data.size];
+    int[] next = {0};
+    forEach(id -> result[next[0]++] = id);
+    return result;
+  }
+
+  /** The word holding the ids {@code 64 * index} to {@code 64 * index + 63}. */
+  private long word(int index) {
+    Data d = data;
+    switch (d.representation) {
+      case SORTED_ARRAY:
+        {
+          int i = Arrays.binarySearch(d.ints, 0, d.length, index << 6);
+          long word = 0;
+          for (i = i < 0 ? -i - 1 : i; i < d.length && d.ints[i] >>> 6 == index; i++) {
+            word |= 1L << d.ints[i];
+          }
+          return word;
+        }
+      case SPARSE_BITSET:
+        {
+          int i = Arrays.binarySearch(d.ints, 0, d.length, index);
+          return i < 0 ? 0 : d.words[i];
+        }
+      default:
+        return index < d.length ? d.words[index] : 0;
+    }
+  }
+
+  /** Sets {@code bits} in word {@code index}; returns the bits that were not set before. */
+  private long orWord(int index, long bits) {
+    long fresh = bits & ~word(index);
+    if (fresh == 0) {
+      return 0;
+    }
+    if (data.shared) {
+      data = data.copy();
+    }
+    Data d = data;
+    d.size += Long.bitCount(fresh);
+    switch (d.representation) {
+      case SORTED_ARRAY:
+        if (d.size > MAX_ARRAY_SIZE) {
+          d.size -= Long.bitCount(fresh);
+          int[] indices = new int[d.length + 1];
+          long[] words = new long[indices.length];
+          int count = collectWords(d, indices, words);
+          int at = Arrays.binarySearch(indices, 0, count, index);
+          if (at >= 0) {
+            words[at] |= fresh;
+          } else {
+            at = -at - 1;
+            System.arraycopy(indices, at, indices, at + 1, count - at);
+            System.arraycopy(words, at, words, at + 1, count - at);
+            indices[at] = index;
+            words[at] = fresh;
+            count++;
+          }
+          data = fromWords(indices, words, count);
+        } else {
+          insertSorted(d, index, fresh);
+        }
+        break;
+      case SPARSE_BITSET:
+        {
+          int at = Arrays.binarySearch(d.ints, 0, d.length, index);
+          if (at >= 0) {
+            d.words[at] |= fresh;
+            break;
+          }
+          at = -at - 1;
+          if (d.length == d.ints.length) {
+            d.ints = Arrays.copyOf(d.ints, Math.max(4, d.length * 2));
+            d.words = Arrays.copyOf(d.words, d.ints.length);
+          }
+          System.arraycopy(d.ints, at, d.ints, at + 1, d.length - at);
+          System.arraycopy(d.words, at, d.words, at + 1, d.length - at);
+          d.ints[at] = index;
+          d.words[at] = fresh;
+          d.length++;
+          d.nonZeroWords++;
+          if (prefersDense(d.nonZeroWords, d.ints[d.length - 1] + 1)) {
+            data = fromWords(d.ints, d.words, d.length);
+          }
+          break;
+        }
+      default:
+        if (index >= d.length) {
+          if (!prefersDense(d.nonZeroWords + 1, index + 1)) {
+            int[] indices = new int[d.nonZeroWords + 1];
+            long[] words = new long[indices.length];
+            int count = collectWords(d, indices, words);
+            indices[count] = index;
+            words[count++] = fresh;
+            d.size -= Long.bitCount(fresh);
+            data = fromWords(indices, words, count);
+            break;
+          }
+          if (index >= d.words.length) {
+            d.words = Arrays.copyOf(d.words, Math.max(index + 1, d.words.length * 2));
+          }
+          d.length = index + 1;
+        }
+        if (d.words[index] == 0) {
+          d.nonZeroWords++;
+        }
+        d.words[index] |= fresh;
+    }
+    return fresh;
+  }
+
+  private static void insertSorted(@Nonnull Data d, int index, long fresh) {
+    int needed = d.length + Long.bitCount(fresh);
+    if (needed > d.ints.length) {
+      d.ints = Arrays.copyOf(d.ints, Math.min(MAX_ARRAY_SIZE, Math.max(4, needed * 2)));
+    }
+    for (long bits = fresh; bits != 0; bits &= bits - 1) {
+      int id = index << 6 | Long.numberOfTrailingZeros(bits);
+      int at = -Arrays.binarySearch(d.ints, 0, d.length, id) - 1;
+      System.arraycopy(d.ints, at, d.ints, at + 1, d.length - at);
+      d.ints[at] = id;
+      d.length++;
+    }
+  }
+
+  /** A dense bitset of {@code span} words costs 8 bytes each, a sparse one 12 per non-zero word. */
+  private static boolean prefersDense(int nonZeroWords, int span) {
+    return span * 2 <= nonZeroWords * 3;
+  }
+
+  /** Writes the non-zero words of {@code d} with their indices, ascending; returns their number. */
+  private static int collectWords(@Nonnull Data d, @Nonnull int[] indices, @Nonnull long[] words) {
+    int[] count = {0};
+    forEachWord(
+        d,
+        (index, bits) -> {
+          indices[count[0]] = index;
+          words[count[0]++] = bits;
+        });
+    return count[0];
+  }
+
+  /** Builds the contents for the given non-zero words, picking the cheapest representation. */
+  @Nonnull
+  private static Data fromWords(@Nonnull int[] indices, @Nonnull long[] words, int count) {
+    Data d = new Data();
+    for (int i = 0; i < count; i++) {
+      d.size += Long.bitCount(words[i]);
+    }
+    if (d.size <= MAX_ARRAY_SIZE) {
+      d.ints = d.size == 0 ? NO_INTS : new int[d.size];
+      for (int i = 0; i < count; i++) {
+        for (long bits = words[i]; bits != 0; bits &= bits - 1) {
+          d.ints[d.length++] = indices[i] << 6 | Long.numberOfTrailingZeros(bits);
+        }
+      }
+      return d;
+    }
+    d.nonZeroWords = count;
+    int span = indices[count - 1] + 1;
+    if (prefersDense(count, span)) {
+      d.representation = Representation.DENSE_BITSET;
+      d.words = new long[span];
+      for (int i = 0; i < count; i++) {
+        d.words[indices[i]] = words[i];
+      }
+      d.length = span;
+    } else {
+      d.representation = Representation.SPARSE_BITSET;
+      d.ints = Arrays.copyOf(indices, count);
+      d.words = Arrays.copyOf(words, count);
+      d.length = count;
+    }
+    return d;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PointsToSet)) {
+      return false;
+    }
+    PointsToSet other = (PointsToSet) o;
+    return data.size == other.data.size && containsAll(other);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(toArray());
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+
+  /** Counts sets by representation and estimates their memory, counting shared contents once. */
+  public static final class MemoryReport {
+    @Nonnull private final int[] counts = new int[Representation.values().length];
+    @Nonnull private final Map<Data, Boolean> seen = new IdentityHashMap<>();
+    private int sets = 0;
+    private int sharedSets = 0;
+    private long estimatedBytes = 0;
+
+    public void add(@Nonnull PointsToSet set) {
+      sets++;
+      counts[set.data.representation.ordinal()]++;
+      if (seen.put(set.data, Boolean.TRUE) != null) {
+        sharedSets++;
+      } else {
+        estimatedBytes += set.data.estimatedBytes();
+      }
+      estimatedBytes += 16;
+    }
+
+    public int getSetCount() {
+      return sets;
+    }
+
+    public int getCount(@Nonnull Representation representation) {
+      return counts[representation.ordinal()];
+    }
+
+    /** Sets whose contents were already counted with another set. */
+    public int getSharedSetCount() {
+      return sharedSets;
+    }
+
+    public long getEstimatedBytes() {
+      return estimatedBytes;
+    }
+
+    @Override
+    public String toString() {
+      return "PointsToSet.MemoryReport{sets="
+          + sets
+          + ", sortedArrays="
+          + getCount(Representation.SORTED_ARRAY)
+          + ", sparseBitsets="
+          + getCount(Representation.SPARSE_BITSET)
+          + ", denseBitsets="
+          + getCount(Representation.DENSE_BITSET)
+          + ", shared="
+          + sharedSets
+          + ", estimatedBytes="
+          + estimatedBytes
+          + '}';
+    }
+  }
+}
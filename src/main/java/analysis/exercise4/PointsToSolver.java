@@ -0,0 +1,24 @@
+package analysis.exercise4;
+
+import javax.annotation.Nonnull;
+
+/** Computes the points-to sets of the variables of a {@link PointerAssignmentGraph}. */
+public interface PointsToSolver {
+
+  /** Propagates until every variable holds all objects it may point to. */
+  void solve();
+
+  @Nonnull
+  PointerAssignmentGraph getPag();
+
+  /** The points-to set of {@code variable} as object ids. Read-only; {@link PointsToSet#copy} it. */
+  @Nonnull
+  PointsToSet pointsTo(int variable);
+
+  /** The representations and estimated size of the points-to sets the solver keeps. */
+  @Nonnull
+  PointsToSet.MemoryReport memoryReport();
+
+  /** How many variables were merged into another one on a cycle. */
+  int getCollapsedVariableCount();
+}
@@ -2,24 +2,260 @@ package analysis.exercise4;
 
 import analysis.CallGraph;
 import analysis.CallGraphAlgorithm;
+import analysis.DispatchCache;
 import analysis.exercise1.CHAAlgorithm;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.core.jimple.common.expr.AbstractInvokeExpr;
+import sootup.core.jimple.common.expr.JDynamicInvokeExpr;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.types.ClassType;
+import sootup.core.types.Type;
 import sootup.java.core.views.JavaView;
 
+/**
+ * Call graph from a field-sensitive Andersen points-to analysis, in the style of Soot's Spark.
+ *
+ * <p>By default the pointer assignment graph covers every method reachable in a CHA call graph,
+ * with the parameters and return values linked along the CHA targets of each call site. After
+ * solving, a virtual call site only reaches the implementations selected by the objects its
+ * receiver may point to.
+ *
+ * <p>On the fly, the call graph is built during solving instead: a method body enters the graph
+ * once the method is reachable, and a virtual call site is linked to a target once an object
+ * dispatching to it reaches the receiver. That object alone is passed to the target's {@code
+ * this}.
+ *
+ * <p>The CHA-seeded graph can also be solved by a {@link WavePropagationSolver} on several threads,
+ * which yields the same points-to sets and call graph.
+ */
 public class SparkLikeAlgorithm extends CallGraphAlgorithm {
 
+  private final boolean onTheFly;
+
+  /** Threads of the wave propagation solver; 0 for the worklist solver. */
+  private final int parallelism;
+
+  @Nonnull private HeapAbstraction heapAbstraction = HeapAbstraction.perSite();
+
+  @Nullable private PagBuilder pagBuilder;
+  @Nullable private PointsToSolver solver;
+
+  public SparkLikeAlgorithm() {
+    this(false);
+  }
+
+  /** @param onTheFly whether to discover the call graph during solving instead of seeding CHA */
+  public SparkLikeAlgorithm(boolean onTheFly) {
+    this.onTheFly = onTheFly;
+    this.parallelism = 0;
+  }
+
+  /**
+   * Seeds CHA and solves by wave propagation.
+   *
+   * @param parallelism number of worker threads of the {@link WavePropagationSolver}
+   */
+  public SparkLikeAlgorithm(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    this.onTheFly = false;
+    this.parallelism = parallelism;
+  }
+
+  /** Selects the abstract objects of the allocation sites; one per site by default. */
+  public void setHeapAbstraction(@Nonnull HeapAbstraction heapAbstraction) {
+    this.heapAbstraction = heapAbstraction;
+  }
+
+  @Nonnull
+  public HeapAbstraction getHeapAbstraction() {
+    return heapAbstraction;
+  }
+
   @Override
   @Nonnull
   protected String getAlgorithm() {
     return "SparkLike";
   }
 
+  /** The wave propagation solver yields the same call graph, so its parallelism is left out. */
+  @Override
+  @Nonnull
+  protected String getOptions() {
+    return (onTheFly ? "onTheFly" : "chaSeeded") + "," + heapAbstraction;
+  }
+
   @Override
   protected void populateCallGraph(@Nonnull JavaView view, @Nonnull CallGraph cg) {
-    CallGraph initialCallGraph = new CHAAlgorithm().constructCallGraph(view);
+    if (onTheFly) {
+      populateOnTheFly(view, cg);
+      return;
+    }
 
-    // Your implementation goes here, also feel free to add methods as needed
-    // To get your entry points we prepared getEntryPoints(view) in the superclass for you
+    DispatchCache dispatchCache = getDispatchCache(view);
+    CHAAlgorithm cha = new CHAAlgorithm();
+    cha.setDispatchCache(dispatchCache);
+    CallGraph initialCallGraph = cha.constructCallGraph(view);
+
+    PointerAssignmentGraph pag = new PointerAssignmentGraph();
+    pagBuilder = new PagBuilder(getBodyCache(view), pag, heapAbstraction);
+    for (MethodSignature method : initialCallGraph.getNodes()) {
+      pagBuilder.addMethod(method);
+    }
+    for (MethodSignature method : pagBuilder.getMethods()) {
+      for (PagBuilder.CallSite site : pagBuilder.callSitesOf(method)) {
+        for (MethodSignature target : staticTargets(site.invoke, dispatchCache)) {
+          pagBuilder.link(site, target);
+          if (site.receiver >= 0) {
+            pag.addAssignEdge(site.receiver, pagBuilder.thisVariable(target));
+          }
+        }
+      }
+    }
+
+    solver =
+        parallelism > 0
+            ? new WavePropagationSolver(pag, dispatchCache.getHierarchy(), parallelism)
+            : new AndersenSolver(pag, dispatchCache.getHierarchy());
+    solver.solve();
+
+    getEntryPoints(view).forEach(reachableMethods::add);
+    MethodSignature method;
+    while ((method = reachableMethods.poll()) != null) {
+      cg.addNodeIfAbsent(method);
+      for (PagBuilder.CallSite site : pagBuilder.callSitesOf(method)) {
+        for (MethodSignature target : targets(site, dispatchCache)) {
+          cg.addNodeIfAbsent(target);
+          cg.addEdgeIfAbsent(method, target);
+          reachableMethods.add(target);
+        }
+      }
+    }
+  }
+
+  private void populateOnTheFly(@Nonnull JavaView view, @Nonnull CallGraph cg) {
+    DispatchCache dispatchCache = getDispatchCache(view);
+    PointerAssignmentGraph pag = new PointerAssignmentGraph();
+    PagBuilder builder = new PagBuilder(getBodyCache(view), pag, heapAbstraction);
+    AndersenSolver onTheFlySolver = new AndersenSolver(pag, dispatchCache.getHierarchy());
+    pagBuilder = builder;
+    solver = onTheFlySolver;
+
+    onTheFlySolver.setListener(
+        (variable, objects) -> {
+          for (PagBuilder.CallSite site : builder.virtualCallSitesOn(variable)) {
+            objects.forEach(
+                object -> {
+                  Type type = pag.objectType(object);
+                  if (!(type instanceof ClassType)) {
+                    return;
+                  }
+                  dispatchCache
+                      .dispatch((ClassType) type, site.invoke.getMethodSignature().getSubSignature())
+                      .ifPresent(
+                          target -> {
+                            addCallEdge(cg, builder, site, target);
+                            pag.addAllocation(object, builder.thisVariable(target));
+                          });
+                });
+          }
+        });
+
+    getEntryPoints(view).forEach(reachableMethods::add);
+    while (true) {
+      MethodSignature method = reachableMethods.poll();
+      if (method == null) {
+        onTheFlySolver.solve();
+        method = reachableMethods.poll();
+        if (method == null) {
+          return;
+        }
+      }
+      cg.addNodeIfAbsent(method);
+      if (!builder.addMethod(method)) {
+        continue;
+      }
+      for (PagBuilder.CallSite site : builder.callSitesOf(method)) {
+        if (site.isVirtual()) {
+          continue;
+        }
+        for (MethodSignature target : staticTargets(site.invoke, dispatchCache)) {
+          addCallEdge(cg, builder, site, target);
+          if (site.receiver >= 0) {
+            pag.addAssignEdge(site.receiver, builder.thisVariable(target));
+          }
+        }
+      }
+    }
+  }
+
+  private void addCallEdge(
+      @Nonnull CallGraph cg,
+      @Nonnull PagBuilder builder,
+      @Nonnull PagBuilder.CallSite site,
+      @Nonnull MethodSignature target) {
+    if (builder.link(site, target)) {
+      cg.addNodeIfAbsent(target);
+      cg.addEdgeIfAbsent(site.caller, target);
+      reachableMethods.add(target);
+    }
+  }
+
+  /** The targets a call site may have regardless of points-to information, as in CHA. */
+  @Nonnull
+  static Set<MethodSignature> staticTargets(
+      @Nonnull AbstractInvokeExpr invoke, @Nonnull DispatchCache dispatchCache) {
+    MethodSignature invocation = invoke.getMethodSignature();
+    if (invoke instanceof JDynamicInvokeExpr) {
+      return Collections.emptySet();
+    }
+    if (PagBuilder.isVirtual(invoke)) {
+      return dispatchCache.virtualTargets(
+          invocation.getDeclClassType(), invocation.getSubSignature());
+    }
+    return dispatchCache
+        .resolveDeclared(invocation.getDeclClassType(), invocation.getSubSignature())
+        .map(Collections::singleton)
+        .orElse(Collections.emptySet());
+  }
+
+  /** The targets of a call site, virtual ones selected by the points-to set of the receiver. */
+  @Nonnull
+  private Set<MethodSignature> targets(
+      @Nonnull PagBuilder.CallSite site, @Nonnull DispatchCache dispatchCache) {
+    if (!site.isVirtual()) {
+      return staticTargets(site.invoke, dispatchCache);
+    }
+    Set<MethodSignature> targets = new HashSet<>();
+    PointerAssignmentGraph pag = solver.getPag();
+    solver
+        .pointsTo(site.receiver)
+        .forEach(
+            object -> {
+              Type type = pag.objectType(object);
+              if (type instanceof ClassType) {
+                dispatchCache
+                    .dispatch((ClassType) type, site.invoke.getMethodSignature().getSubSignature())
+                    .ifPresent(targets::add);
+              }
+            });
+    return targets;
+  }
+
+  /** The pointer assignment graph of the last construction; null before the first one. */
+  @Nullable
+  public PagBuilder getPagBuilder() {
+    return pagBuilder;
+  }
 
+  /** The solver of the last construction, holding the points-to sets; null before the first one. */
+  @Nullable
+  public PointsToSolver getSolver() {
+    return solver;
   }
 }
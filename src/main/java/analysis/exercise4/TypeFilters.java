@@ -0,0 +1,91 @@
+package analysis.exercise4;
+
+import analysis.TypeHierarchyIndex;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import sootup.core.types.ArrayType;
+import sootup.core.types.ClassType;
+import sootup.core.types.Type;
+
+/**
+ * The objects whose type fits the declared type of each pointer variable. Variables of one type
+ * share one filter, extended as objects get created.
+ */
+final class TypeFilters {
+  private static final String OBJECT = "java.lang.Object";
+
+  @Nonnull private final PointerAssignmentGraph pag;
+  @Nonnull private final TypeHierarchyIndex hierarchy;
+
+  @Nonnull private final Map<Type, TypeFilter> filters = new HashMap<>();
+  @Nonnull private TypeFilter[] variableFilters = new TypeFilter[0];
+
+  private static final class TypeFilter {
+    @Nonnull final PointsToSet accepted = new PointsToSet();
+    int checkedObjects = 0;
+  }
+
+  TypeFilters(@Nonnull PointerAssignmentGraph pag, @Nonnull TypeHierarchyIndex hierarchy) {
+    this.pag = pag;
+    this.hierarchy = hierarchy;
+  }
+
+  /**
+   * Returns the objects {@code variable} may hold, brought up to date; null if it accepts
+   * everything. Variables of one type get the same set.
+   */
+  @Nullable
+  PointsToSet filterOf(int variable) {
+    if (variable >= variableFilters.length) {
+      variableFilters =
+          Arrays.copyOf(variableFilters, Math.max(pag.variableCount(), variable + 1));
+    }
+    TypeFilter filter = variableFilters[variable];
+    Type type = pag.variableType(variable);
+    if (filter == null) {
+      if (acceptsEverything(type)) {
+        return null;
+      }
+      filter = filters.computeIfAbsent(type, k -> new TypeFilter());
+      variableFilters[variable] = filter;
+    }
+    int objects = pag.objectCount();
+    for (int o = filter.checkedObjects; o < objects; o++) {
+      if (isCompatible(pag.objectType(o), type)) {
+        filter.accepted.add(o);
+      }
+    }
+    filter.checkedObjects = objects;
+    return filter.accepted;
+  }
+
+  private static boolean acceptsEverything(@Nonnull Type type) {
+    if (type instanceof ClassType) {
+      return ((ClassType) type).getFullyQualifiedName().equals(OBJECT);
+    }
+    return !(type instanceof ArrayType);
+  }
+
+  /**
+   * Whether an object of {@code objectType} may be stored in a variable of {@code variableType}.
+   * Library types outside the view are unknown; a library variable accepts them all, an
+   * application variable accepts no library object.
+   */
+  private boolean isCompatible(@Nonnull Type objectType, @Nonnull Type variableType) {
+    if (variableType instanceof ArrayType) {
+      return objectType instanceof ArrayType;
+    }
+    ClassType variableClass = (ClassType) variableType;
+    if (objectType instanceof ArrayType) {
+      String name = variableClass.getFullyQualifiedName();
+      return name.equals("java.lang.Cloneable") || name.equals("java.io.Serializable");
+    }
+    if (!(objectType instanceof ClassType) || !hierarchy.contains(variableClass)) {
+      return true;
+    }
+    return hierarchy.isSubtype((ClassType) objectType, variableClass);
+  }
+}
@@ -0,0 +1,102 @@
+package analysis.exercise4;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import javax.annotation.Nonnull;
+
+/**
+ * Partition of the pointer variables into classes of variables known to have equal points-to sets,
+ * each standing in for all of its members by one representative.
+ */
+final class UnionFind {
+  /** Parent of every variable; representatives are their own parent. */
+  @Nonnull private int[] parent = new int[0];
+
+  /** Per representative, all variables merged into it; null while it stands for itself only. */
+  @Nonnull private int[][] members = new int[0][];
+
+  private int mergedVariables = 0;
+
+  /** Makes room for the variables below {@code size}, each in a class of its own. */
+  void grow(int size) {
+    int old = parent.length;
+    if (size <= old) {
+      return;
+    }
+    parent = Arrays.copyOf(parent, size);
+    members = Arrays.copyOf(members, size);
+    for (int v = old; v < size; v++) {
+      parent[v] = v;
+    }
+  }
+
+  int size() {
+    return parent.length;
+  }
+
+  /** The representative of {@code variable}, compressing the path to it. */
+  int find(int variable) {
+    int root = variable;
+    while (parent[root] != root) {
+      root = parent[root];
+    }
+    while (parent[variable] != root) {
+      int next = parent[variable];
+      parent[variable] = root;
+      variable = next;
+    }
+    return root;
+  }
+
+  boolean isRepresentative(int variable) {
+    return parent[variable] == variable;
+  }
+
+  /** Merges the classes of the representatives in {@code component} into the first one. */
+  void merge(@Nonnull int[] component) {
+    int representative = component[0];
+    int[] merged = membersOf(representative);
+    for (int i = 1; i < component.length; i++) {
+      int[] variableMembers = membersOf(component[i]);
+      int count = merged.length;
+      merged = Arrays.copyOf(merged, count + variableMembers.length);
+      System.arraycopy(variableMembers, 0, merged, count, variableMembers.length);
+      parent[component[i]] = representative;
+      members[component[i]] = null;
+      mergedVariables++;
+    }
+    members[representative] = merged;
+  }
+
+  @Nonnull
+  int[] membersOf(int representative) {
+    int[] variables = members[representative];
+    return variables == null ? new int[] {representative} : variables;
+  }
+
+  int memberCount(int representative) {
+    int[] variables = members[representative];
+    return variables == null ? 1 : variables.length;
+  }
+
+  int member(int representative, int index) {
+    int[] variables = members[representative];
+    return variables == null ? representative : variables[index];
+  }
+
+  void forEachMember(int representative, @Nonnull IntConsumer action) {
+    int[] variables = members[representative];
+    if (variables == null) {
+      action.accept(representative);
+      return;
+    }
+    for (int variable : variables) {
+      action.accept(variable);
+    }
+  }
+
+  /** How many variables were merged into another one. */
+  int getMergedVariableCount() {
+    return mergedVariables;
+  }
+}
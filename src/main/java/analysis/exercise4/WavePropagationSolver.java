@@ -0,0 +1,344 @@
+package analysis.exercise4;
+
+import analysis.TypeHierarchyIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Points-to solver that propagates in waves, after Pereira and Berlin. Each round
+ *
+ * <ol>
+ *   <li>collapses the cycles of assign edges between variables with the same type filter,
+ *   <li>orders the remaining graph topologically and groups it into levels, each level depending
+ *       only on the ones before,
+ *   <li>propagates level by level, the variables of one level in parallel. Every variable pulls the
+ *       objects its predecessors received since the last round, so it only writes its own sets,
+ *   <li>materializes the edges of the loads and stores on the objects received in the round and
+ *       hands the new edges their source's complete set.
+ * </ol>
+ *
+ * Rounds repeat until no variable received anything. A cycle through variables with different type
+ * filters cannot be collapsed; it is solved to a fixpoint by one worker within its level.
+ *
+ * <p>The points-to sets are the same as those of the {@link AndersenSolver}. There is no listener:
+ * the solver expects a pointer assignment graph that only grows through loads and stores.
+ */
+public class WavePropagationSolver implements PointsToSolver {
+
+  @Nonnull private final PointerAssignmentGraph pag;
+  @Nonnull private final TypeFilters filters;
+  @Nonnull private final UnionFind classes = new UnionFind();
+  @Nonnull private final ComponentSearch componentSearch;
+  private final int parallelism;
+
+  @Nonnull private PointsToSet[] pointsTo = new PointsToSet[0];
+
+  /** Per variable, the objects it received since the end of the last round. */
+  @Nonnull private PointsToSet[] pending = new PointsToSet[0];
+
+  /** Per representative, its filter as of the start of the round; read by the workers. */
+  @Nullable private PointsToSet[] roundFilters;
+
+  @Nonnull private int[][] predecessors = new int[0][];
+  @Nonnull private int[] predecessorCounts = new int[0];
+  @Nonnull private int[] componentOf = new int[0];
+
+  private int rounds = 0;
+
+  /** @param parallelism number of worker threads; 1 propagates each level sequentially */
+  public WavePropagationSolver(
+      @Nonnull PointerAssignmentGraph pag, @Nonnull TypeHierarchyIndex hierarchy, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    this.pag = pag;
+    this.filters = new TypeFilters(pag, hierarchy);
+    this.componentSearch = new ComponentSearch(pag, classes);
+    this.parallelism = parallelism;
+  }
+
+  @Override
+  @Nonnull
+  public PointerAssignmentGraph getPag() {
+    return pag;
+  }
+
+  @Override
+  public void solve() {
+    rounds = 0;
+    ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    try {
+      addNewEdges();
+      while (hasPending()) {
+        rounds++;
+        collapseCycles();
+        propagate(levels(), pool);
+        addComplexEdges();
+        addNewEdges();
+      }
+    } finally {
+      if (pool != null) {
+        pool.shutdown();
+      }
+    }
+  }
+
+  private boolean hasPending() {
+    for (int v = 0; v < pag.variableCount(); v++) {
+      if (!pending[v].isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Hands allocations and assign edges added since the last call their objects. */
+  private void addNewEdges() {
+    ensureCapacity();
+    pag.drainNewAllocations(
+        (object, variable) -> {
+          int target = classes.find(variable);
+          PointsToSet filter = filters.filterOf(target);
+          if ((filter == null || filter.contains(object)) && pointsTo[target].add(object)) {
+            pending[target].add(object);
+          }
+        });
+    pag.drainNewEdges(
+        (source, target) -> {
+          int from = classes.find(source);
+          int to = classes.find(target);
+          if (from != to) {
+            pointsTo[to].addAll(pointsTo[from], filters.filterOf(to), pending[to]);
+          }
+        });
+  }
+
+  /** Merges the strongly connected components of variables with the same type filter. */
+  private void collapseCycles() {
+    List<int[]> cycles = new ArrayList<>();
+    componentSearch.start();
+    for (int v = 0; v < pag.variableCount(); v++) {
+      if (classes.isRepresentative(v)) {
+        componentSearch.searchFrom(
+            v,
+            (source, target) -> filters.filterOf(source) == filters.filterOf(target),
+            component -> {
+              if (component.length > 1) {
+                cycles.add(component);
+              }
+            });
+      }
+    }
+    for (int[] component : cycles) {
+      int representative = component[0];
+      for (int i = 1; i < component.length; i++) {
+        pointsTo[representative].addAll(pointsTo[component[i]], null, null);
+        pointsTo[component[i]] = new PointsToSet();
+        pending[component[i]] = new PointsToSet();
+      }
+      classes.merge(component);
+      // the members' successors may lack objects the others passed on in earlier rounds
+      pending[representative] = pointsTo[representative].copy();
+    }
+  }
+
+  /**
+   * Groups the components of the graph of representatives into levels; a component's predecessors
+   * are all in earlier levels. Also records the predecessors of every representative.
+   */
+  @Nonnull
+  private List<List<int[]>> levels() {
+    int variables = pag.variableCount();
+    PointsToSet[] currentFilters = new PointsToSet[variables];
+    Arrays.fill(predecessorCounts, 0);
+    for (int v = 0; v < variables; v++) {
+      if (!classes.isRepresentative(v)) {
+        continue;
+      }
+      currentFilters[v] = filters.filterOf(v);
+      int representative = v;
+      classes.forEachMember(
+          representative,
+          member -> {
+            for (int i = 0; i < pag.outDegree(member); i++) {
+              int successor = classes.find(pag.successor(member, i));
+              if (successor != representative) {
+                addPredecessor(successor, representative);
+              }
+            }
+          });
+    }
+    roundFilters = currentFilters;
+
+    List<int[]> components = new ArrayList<>();
+    componentSearch.start();
+    for (int v = 0; v < variables; v++) {
+      if (classes.isRepresentative(v)) {
+        componentSearch.searchFrom(v, (source, target) -> true, components::add);
+      }
+    }
+
+    // the search completes components in reverse topological order
+    int[] componentLevels = new int[components.size()];
+    List<List<int[]>> levels = new ArrayList<>();
+    for (int c = components.size() - 1; c >= 0; c--) {
+      int[] component = components.get(c);
+      for (int member : component) {
+        componentOf[member] = c;
+      }
+      int level = 0;
+      for (int member : component) {
+        for (int i = 0; i < predecessorCounts[member]; i++) {
+          int predecessor = componentOf[predecessors[member][i]];
+          if (predecessor != c) {
+            level = Math.max(level, componentLevels[predecessor] + 1);
+          }
+        }
+      }
+      componentLevels[c] = level;
+      while (levels.size() <= level) {
+        levels.add(new ArrayList<>());
+      }
+      levels.get(level).add(component);
+    }
+    return levels;
+  }
+
+  private void addPredecessor(int variable, int predecessor) {
+    int[] row = predecessors[variable];
+    if (row == null) {
+      row = predecessors[variable] = new int[4];
+    } else if (predecessorCounts[variable] == row.length) {
+      row = predecessors[variable] = Arrays.copyOf(row, row.length * 2);
+    }
+    row[predecessorCounts[variable]++] = predecessor;
+  }
+
+  private void propagate(@Nonnull List<List<int[]>> levels, @Nullable ForkJoinPool pool) {
+    for (List<int[]> level : levels) {
+      if (pool == null || level.size() == 1) {
+        level.forEach(this::pull);
+      } else {
+        pool.submit(() -> level.parallelStream().forEach(this::pull)).join();
+      }
+    }
+  }
+
+  /**
+   * Pulls into the members of {@code component} what their predecessors received. Predecessors in
+   * earlier levels are done for this round; within a component, whole sets are pulled until nothing
+   * changes.
+   */
+  private void pull(@Nonnull int[] component) {
+    PointsToSet[] currentFilters = roundFilters;
+    boolean changed;
+    do {
+      changed = false;
+      for (int variable : component) {
+        for (int i = 0; i < predecessorCounts[variable]; i++) {
+          int predecessor = predecessors[variable][i];
+          boolean inComponent = componentOf[predecessor] == componentOf[variable];
+          PointsToSet objects = inComponent ? pointsTo[predecessor] : pending[predecessor];
+          changed |=
+              pointsTo[variable].addAll(objects, currentFilters[variable], pending[variable])
+                  && inComponent;
+        }
+      }
+    } while (changed && component.length > 1);
+  }
+
+  /** Adds the edges of the loads and stores for the objects received in this round. */
+  private void addComplexEdges() {
+    int variables = pag.variableCount();
+    for (int v = 0; v < variables; v++) {
+      if (!classes.isRepresentative(v) || pending[v].isEmpty()) {
+        continue;
+      }
+      PointsToSet objects = pending[v];
+      pending[v] = new PointsToSet();
+      classes.forEachMember(
+          v,
+          variable -> {
+            List<PointerAssignmentGraph.FieldAccess> loads = pag.loadsFrom(variable);
+            if (loads != null) {
+              for (PointerAssignmentGraph.FieldAccess load : loads) {
+                objects.forEach(o -> pag.addAssignEdge(pag.fieldVariable(o, load.field), load.other));
+              }
+            }
+            List<PointerAssignmentGraph.FieldAccess> stores = pag.storesInto(variable);
+            if (stores != null) {
+              for (PointerAssignmentGraph.FieldAccess store : stores) {
+                objects.forEach(
+                    o -> pag.addAssignEdge(store.other, pag.fieldVariable(o, store.field)));
+              }
+            }
+          });
+    }
+  }
+
+  /** Grows the per-variable arrays to the current size of the graph. */
+  private void ensureCapacity() {
+    int variables = pag.variableCount();
+    if (variables <= pointsTo.length) {
+      return;
+    }
+    int capacity = Math.max(variables, pointsTo.length * 2);
+    int old = pointsTo.length;
+    pointsTo = Arrays.copyOf(pointsTo, capacity);
+    pending = Arrays.copyOf(pending, capacity);
+    predecessors = Arrays.copyOf(predecessors, capacity);
+    predecessorCounts = Arrays.copyOf(predecessorCounts, capacity);
+    componentOf = Arrays.copyOf(componentOf, capacity);
+    classes.grow(capacity);
+    for (int v = old; v < capacity; v++) {
+      pointsTo[v] = new PointsToSet();
+      pending[v] = new PointsToSet();
+    }
+  }
+
+  @Override
+  @Nonnull
+  public PointsToSet pointsTo(int variable) {
+    return variable < pointsTo.length ? pointsTo[classes.find(variable)] : new PointsToSet();
+  }
+
+  /** Covers the points-to sets of the representatives. */
+  @Override
+  @Nonnull
+  public PointsToSet.MemoryReport memoryReport() {
+    PointsToSet.MemoryReport report = new PointsToSet.MemoryReport();
+    for (int v = 0; v < Math.min(pointsTo.length, pag.variableCount()); v++) {
+      if (classes.isRepresentative(v)) {
+        report.add(pointsTo[v]);
+      }
+    }
+    return report;
+  }
+
+  @Override
+  public int getCollapsedVariableCount() {
+    return classes.getMergedVariableCount();
+  }
+
+  /** How many rounds the last {@link #solve()} took. */
+  public int getRoundCount() {
+    return rounds;
+  }
+
+  @Override
+  public String toString() {
+    return "WavePropagationSolver{"
+        + pag
+        + ", parallelism="
+        + parallelism
+        + ", rounds="
+        + rounds
+        + ", collapsedVariables="
+        + classes.getMergedVariableCount()
+        + '}';
+  }
+}
@@ -0,0 +1,111 @@
+package base;
+
+import analysis.TypeHierarchyIndex;
+import analysis.exercise4.AllocationSite;
+import analysis.exercise4.AndersenSolver;
+import analysis.exercise4.PointerAssignmentGraph;
+import analysis.exercise4.PointsToSet;
+import analysis.exercise4.WavePropagationSolver;
+import org.junit.Assert;
+import org.junit.Test;
+import sootup.core.signatures.FieldSignature;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.types.ClassType;
+
+public class AndersenSolverTest extends TestSetup {
+
+  private ClassType type(String name) {
+    return view.getIdentifierFactory().getClassType(name);
+  }
+
+  private MethodSignature method() {
+    return view.getIdentifierFactory()
+        .parseMethodSignature("<target.exercise2.Starter: void main(java.lang.String[])>");
+  }
+
+  /**
+   * Variables a, b, c of type Object and d of type IntermediateClass on the cycles a -> b -> c -> a
+   * and c -> d -> a, with a pointing to a LeafClass object. The cast to d keeps it out of the copy
+   * cycle.
+   */
+  private PointerAssignmentGraph cycles() {
+    MethodSignature method = method();
+    PointerAssignmentGraph pag = new PointerAssignmentGraph();
+    int a = pag.methodVariable(method, "a", type("java.lang.Object"));
+    int b = pag.methodVariable(method, "b", type("java.lang.Object"));
+    int c = pag.methodVariable(method, "c", type("java.lang.Object"));
+    int d = pag.methodVariable(method, "d", type("target.exercise2.IntermediateClass"));
+    pag.addAssignEdge(a, b);
+    pag.addAssignEdge(b, c);
+    pag.addAssignEdge(c, a);
+    pag.addAssignEdge(c, d);
+    pag.addAssignEdge(d, a);
+    int leaf =
+        pag.object(
+            new AllocationSite(method, 0, type("target.exercise2.LeafClass")),
+            type("target.exercise2.LeafClass"));
+    pag.addAllocation(leaf, a);
+    return pag;
+  }
+
+  @Test
+  public void copyCyclesAreCollapsed() {
+    MethodSignature method = method();
+    PointerAssignmentGraph pag = cycles();
+    int a = pag.findMethodVariable(method, "a");
+    int b = pag.findMethodVariable(method, "b");
+    int c = pag.findMethodVariable(method, "c");
+    int d = pag.findMethodVariable(method, "d");
+    int leaf = 0; // the only object so far
+
+    AndersenSolver solver = new AndersenSolver(pag, new TypeHierarchyIndex(view));
+    solver.solve();
+    Assert.assertEquals(2, solver.getCollapsedVariableCount());
+    for (int variable : new int[] {a, b, c, d}) {
+      Assert.assertEquals(PointsToSet.of(leaf), solver.pointsTo(variable));
+    }
+
+    // objects added to a merged variable reach the whole cycle, but not through the cast
+    int subclass =
+        pag.object(
+            new AllocationSite(method, 1, type("target.exercise2.Subclass")),
+            type("target.exercise2.Subclass"));
+    pag.addAllocation(subclass, b);
+    solver.solve();
+    Assert.assertEquals(PointsToSet.of(leaf, subclass), solver.pointsTo(a));
+    Assert.assertEquals(PointsToSet.of(leaf, subclass), solver.pointsTo(c));
+    Assert.assertEquals(PointsToSet.of(leaf), solver.pointsTo(d));
+    Assert.assertEquals(2, solver.memoryReport().getSetCount());
+  }
+
+  @Test
+  public void waveSolverMatchesWorklistSolver() {
+    MethodSignature method = method();
+    PointerAssignmentGraph pag = cycles();
+    int d = pag.findMethodVariable(method, "d");
+    // e = d.f; d.f = b: a load and a store through d
+    int e = pag.methodVariable(method, "e", type("java.lang.Object"));
+    FieldSignature field =
+        view.getIdentifierFactory()
+            .getFieldSignature("f", type("target.exercise2.IntermediateClass"), "java.lang.Object");
+    pag.addLoad(d, field, e);
+    pag.addStore(pag.findMethodVariable(method, "b"), d, field);
+
+    PointerAssignmentGraph copy = cycles();
+    int copyE = copy.methodVariable(method, "e", type("java.lang.Object"));
+    copy.addLoad(d, field, copyE);
+    copy.addStore(copy.findMethodVariable(method, "b"), d, field);
+
+    AndersenSolver worklist = new AndersenSolver(pag, new TypeHierarchyIndex(view));
+    worklist.solve();
+    WavePropagationSolver wave = new WavePropagationSolver(copy, new TypeHierarchyIndex(view), 2);
+    wave.solve();
+
+    Assert.assertEquals(PointsToSet.of(0), wave.pointsTo(copyE));
+    Assert.assertEquals(pag.variableCount(), copy.variableCount());
+    for (int v = 0; v < pag.variableCount(); v++) {
+      Assert.assertEquals(worklist.pointsTo(v), wave.pointsTo(v));
+    }
+    Assert.assertEquals(2, wave.getCollapsedVariableCount());
+  }
+}
@@ -0,0 +1,83 @@
+package base;
+
+import analysis.BodyCache;
+import analysis.CallGraph;
+import analysis.MethodSummary;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import sootup.core.IdentifierFactory;
+import sootup.core.jimple.common.stmt.Stmt;
+import sootup.core.signatures.MethodSignature;
+
+public class BodyCacheTest extends TestSetup {
+
+  @Test
+  public void bodiesAreMemoized() {
+    IdentifierFactory identifierFactory = view.getIdentifierFactory();
+    MethodSignature main =
+        identifierFactory.parseMethodSignature(
+            "<target.exercise2.Starter: void main(java.lang.String[])>");
+    MethodSignature abstractMethod =
+        identifierFactory.parseMethodSignature(
+            "<target.exercise2.SomeInterface: void doSomething()>");
+
+    BodyCache cache = new BodyCache(view);
+    List<Stmt> stmts = cache.statementsOf(main);
+    Assert.assertNotNull(stmts);
+    Assert.assertEquals(1, cache.getMisses());
+    Assert.assertSame(stmts, cache.statementsOf(main));
+    Assert.assertEquals(1, cache.getHits());
+
+    MethodSummary summary = cache.summaryOf(main);
+    Assert.assertEquals(
+        stmts.stream().filter(Stmt::containsInvokeExpr).count(), summary.getCallSiteCount());
+    Assert.assertSame(summary, cache.summaryOf(main));
+    Assert.assertEquals(3, cache.getHits());
+
+    Assert.assertNull(cache.statementsOf(abstractMethod));
+    Assert.assertNull(cache.summaryOf(abstractMethod));
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals(stmts.size() + 2, cache.getWeight());
+  }
+
+  @Test
+  public void leastRecentlyUsedBodiesAreEvicted() {
+    // a body of one statement still exceeds the weight, so only the newest entry stays
+    BodyCache cache = new BodyCache(view, 1, false);
+    CHAAlgorithm cha = new CHAAlgorithm();
+    cha.setBodyCache(cache);
+    CallGraph cg = cha.constructCallGraph(view);
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(cg.getNodes().size() - 1, cache.getEvictions());
+
+    // summaries alone weigh less than the statements
+    BodyCache full = new BodyCache(view);
+    BodyCache summaries = new BodyCache(view, BodyCache.DEFAULT_MAX_WEIGHT, true);
+    for (MethodSignature method : cg.getNodes()) {
+      full.summaryOf(method);
+      summaries.summaryOf(method);
+    }
+    Assert.assertTrue(summaries.isSummariesOnly());
+    Assert.assertEquals(full.size(), summaries.size());
+    Assert.assertTrue(summaries.getWeight() < full.getWeight());
+  }
+
+  @Test
+  public void algorithmsShareBodies() {
+    BodyCache cache = new BodyCache(view);
+    CHAAlgorithm cha = new CHAAlgorithm();
+    cha.setBodyCache(cache);
+    cha.constructCallGraph(view);
+    long chaMisses = cache.getMisses();
+
+    // RTA only reaches methods CHA has read already
+    RTAAlgorithm rta = new RTAAlgorithm();
+    rta.setBodyCache(cache);
+    rta.constructCallGraph(view);
+    Assert.assertEquals(chaMisses, cache.getMisses());
+    Assert.assertTrue(cache.getHits() > 0);
+  }
+}
@@ -0,0 +1,101 @@
+package base;
+
+import analysis.CallGraph;
+import analysis.CallGraphFile;
+import analysis.exercise1.CHAAlgorithm;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import sootup.core.signatures.MethodSignature;
+
+public class CallGraphFileTest extends TestSetup {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void fileAnswersLikeCallGraph() throws IOException {
+    CallGraph cg = new CHAAlgorithm().constructCallGraph(view);
+    Path file = folder.newFile("cha.cg").toPath();
+    CallGraphFile.write(cg, file);
+
+    CallGraphFile read = CallGraphFile.open(file);
+    Assert.assertEquals(cg.algorithm, read.algorithm);
+    Assert.assertEquals(cg.getNodes().size(), read.nodeCount());
+    Assert.assertEquals(cg.getEdges().size(), read.edgeCount());
+
+    for (MethodSignature m : cg.getNodes()) {
+      int id = read.idOf(m);
+      Assert.assertTrue(read.hasNode(m));
+      Assert.assertEquals(m, read.signatureOf(id));
+      Assert.assertEquals(cg.edgesOutOf(m), read.edgesOutOf(m));
+      Assert.assertEquals(cg.edgesInto(m), read.edgesInto(m));
+      Assert.assertEquals(cg.edgesOutOf(m).size(), read.outDegree(id));
+      Assert.assertEquals(cg.edgesInto(m).size(), read.inDegree(id));
+      for (MethodSignature other : cg.edgesOutOf(m)) {
+        Assert.assertTrue(read.hasEdge(m, other));
+        Assert.assertEquals(cg.hasEdge(other, m), read.hasEdge(other, m));
+      }
+
+      List<Integer> successors = new ArrayList<>();
+      read.forEachSuccessor(id, successors::add);
+      List<Integer> sorted = new ArrayList<>(successors);
+      sorted.sort(null);
+      Assert.assertEquals(sorted, successors);
+    }
+
+    MethodSignature unknown =
+        view.getIdentifierFactory().parseMethodSignature("<some.package.Unknown: void unknown()>");
+    Assert.assertFalse(read.hasNode(unknown));
+    Assert.assertEquals(-1, read.idOf(unknown));
+    Assert.assertTrue(read.edgesOutOf(unknown).isEmpty());
+
+    CallGraph decoded = read.toCallGraph();
+    Assert.assertEquals(cg.getNodes(), decoded.getNodes());
+    Assert.assertEquals(cg.getEdges(), decoded.getEdges());
+  }
+
+  @Test
+  public void otherVersionsAreRejected() throws IOException {
+    Path file = folder.newFile("empty.cg").toPath();
+    CallGraphFile.write(new CallGraph("Test"), file);
+    Assert.assertEquals(0, CallGraphFile.open(file).nodeCount());
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, CallGraphFile.VERSION + 1), 4);
+    }
+    try {
+      CallGraphFile.open(file);
+      Assert.fail("expected an IOException");
+    } catch (IOException expected) {
+      Assert.assertTrue(expected.getMessage().contains("version"));
+    }
+  }
+
+  @Test
+  public void truncatedFilesAreRejected() throws IOException {
+    Path file = folder.newFile("cha.cg").toPath();
+    CallGraphFile.write(new CHAAlgorithm().constructCallGraph(view), file);
+    byte[] bytes = Files.readAllBytes(file);
+
+    Path truncated = folder.newFile("truncated.cg").toPath();
+    for (int length : new int[] {5 * Integer.BYTES + 1, bytes.length / 2, bytes.length - 1}) {
+      Files.write(truncated, Arrays.copyOf(bytes, length));
+      try {
+        CallGraphFile.open(truncated);
+        Assert.fail("expected an IOException for " + length + " of " + bytes.length + " bytes");
+      } catch (IOException expected) {
+        Assert.assertTrue(expected.getMessage().contains("Truncated"));
+      }
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package base;
+
+import analysis.CallGraph;
+import analysis.ConcurrentCallGraph;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.signatures.PackageName;
+import sootup.core.types.ClassType;
+import sootup.java.core.types.JavaClassType;
+
+public class ConcurrentCallGraphTest {
+
+  private static final int THREADS = 8;
+  private static final int METHODS = 200;
+
+  private static MethodSignature method(int i) {
+    ClassType type = new JavaClassType("TestClass", new PackageName("some.package"));
+    return new MethodSignature(
+        type, "m" + i, Collections.emptyList(), sootup.core.types.PrimitiveType.getBoolean());
+  }
+
+  @Test
+  public void concurrentInsertionIsAtomic() throws Exception {
+    CallGraph cg = new ConcurrentCallGraph("Test");
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    List<Callable<int[]>> tasks = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      tasks.add(
+          () -> {
+            int[] inserted = new int[2];
+            for (int i = 0; i < METHODS; i++) {
+              MethodSignature source = method(i);
+              MethodSignature target = method((i + 1) % METHODS);
+              if (cg.addNodeIfAbsent(source)) {
+                inserted[0]++;
+              }
+              cg.addNodeIfAbsent(target);
+              if (cg.addEdgeIfAbsent(source, target)) {
+                inserted[1]++;
+              }
+              // iterating while other threads write must not fail
+              Assert.assertTrue(cg.edgesOutOf(source).contains(target));
+              Assert.assertTrue(cg.getEdges().size() <= METHODS);
+            }
+            return inserted;
+          });
+    }
+
+    int insertedNodes = 0;
+    int insertedEdges = 0;
+    for (Future<int[]> result : executor.invokeAll(tasks)) {
+      insertedNodes += result.get()[0];
+      insertedEdges += result.get()[1];
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(METHODS, cg.getNodes().size());
+    Assert.assertEquals(METHODS, cg.getEdges().size());
+    Assert.assertEquals(METHODS, insertedEdges);
+    Assert.assertTrue(insertedNodes <= METHODS);
+    for (int i = 0; i < METHODS; i++) {
+      Assert.assertEquals(1, cg.edgesOutOf(method(i)).size());
+      Assert.assertEquals(1, cg.edgesInto(method(i)).size());
+    }
+    Assert.assertEquals(METHODS, cg.freeze().edgeCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void duplicateEdgeStillRejected() {
+    CallGraph cg = new ConcurrentCallGraph("Test");
+    cg.addNode(method(0));
+    cg.addNode(method(1));
+    cg.addEdge(method(0), method(1));
+    cg.addEdge(method(0), method(1));
+  }
+}
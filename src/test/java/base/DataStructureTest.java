@@ -219,4 +219,80 @@ public class DataStructureTest {
     Assert.assertArrayEquals(new MethodSignature[] {secondMethod}, eOutOfFirst.toArray());
     Assert.assertArrayEquals(new MethodSignature[] {firstMethod}, eIntoSecond.toArray());
   }
+
+  @Test
+  public void callGraphAdjacencyViews() {
+    ClassType testClass = new JavaClassType("TestClass", new PackageName("some.package"));
+    MethodSignature source =
+        new MethodSignature(
+            testClass,
+            "sourceMethod",
+            Collections.emptyList(),
+            sootup.core.types.PrimitiveType.getBoolean());
+    MethodSignature target =
+        new MethodSignature(
+            testClass,
+            "targetMethod",
+            Collections.emptyList(),
+            sootup.core.types.PrimitiveType.getBoolean());
+
+    CallGraph testCG = new CallGraph("Test");
+    testCG.addNode(source);
+    testCG.addNode(target);
+
+    Set<MethodSignature> eOutOfSource = testCG.edgesOutOf(source);
+    Assert.assertTrue(eOutOfSource.isEmpty());
+
+    testCG.addEdge(source, target);
+    Assert.assertTrue(testCG.edgesOutOf(source).contains(target));
+    Assert.assertTrue(testCG.edgesInto(target).contains(source));
+    Assert.assertEquals(1, testCG.getEdges().size());
+
+    CallGraph copy = new CallGraph("Copy", testCG);
+    testCG.clear();
+    Assert.assertFalse(testCG.hasNode(source));
+    Assert.assertTrue(testCG.edgesOutOf(source).isEmpty());
+    Assert.assertTrue(copy.hasEdge(source, target));
+    Assert.assertTrue(copy.edgesInto(target).contains(source));
+
+    thrown.expect(UnsupportedOperationException.class);
+    copy.edgesOutOf(source).add(source);
+  }
+
+  @Test
+  public void callGraphAdjacencyViewsAreLive() {
+    ClassType testClass = new JavaClassType("TestClass", new PackageName("some.package"));
+    MethodSignature source =
+        new MethodSignature(
+            testClass,
+            "sourceMethod",
+            Collections.emptyList(),
+            sootup.core.types.PrimitiveType.getBoolean());
+    MethodSignature target =
+        new MethodSignature(
+            testClass,
+            "targetMethod",
+            Collections.emptyList(),
+            sootup.core.types.PrimitiveType.getBoolean());
+
+    CallGraph testCG = new CallGraph("Test");
+    testCG.addNode(source);
+    testCG.addNode(target);
+
+    // taken before either node has an edge
+    Set<MethodSignature> eOutOfSource = testCG.edgesOutOf(source);
+    Set<MethodSignature> eIntoTarget = testCG.edgesInto(target);
+
+    testCG.addEdge(source, target);
+    Assert.assertEquals(Collections.singleton(target), eOutOfSource);
+    Assert.assertEquals(Collections.singleton(source), eIntoTarget);
+
+    testCG.removeNode(target);
+    Assert.assertTrue(eOutOfSource.isEmpty());
+    Assert.assertTrue(eIntoTarget.isEmpty());
+
+    testCG.addNode(target);
+    testCG.addEdge(source, target);
+    Assert.assertTrue(eIntoTarget.contains(source));
+  }
 }
@@ -0,0 +1,53 @@
+package base;
+
+import analysis.DispatchCache;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import sootup.core.IdentifierFactory;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.signatures.MethodSubSignature;
+import sootup.core.types.ClassType;
+
+public class DispatchCacheTest extends TestSetup {
+
+  @Test
+  public void dispatchIsMemoized() {
+    IdentifierFactory identifierFactory = view.getIdentifierFactory();
+    MethodSignature interfaceMethod =
+        identifierFactory.parseMethodSignature(
+            "<target.exercise2.SomeInterface: void doSomething()>");
+    MethodSubSignature doSomething = interfaceMethod.getSubSignature();
+    ClassType leafClass = identifierFactory.getClassType("target.exercise2.LeafClass");
+    ClassType superclass = identifierFactory.getClassType("target.exercise2.Superclass");
+
+    DispatchCache cache = new DispatchCache(view);
+
+    Optional<MethodSignature> leafTarget = cache.dispatch(leafClass, doSomething);
+    Assert.assertEquals(
+        Optional.of(
+            identifierFactory.parseMethodSignature(
+                "<target.exercise2.LeafClass: void doSomething()>")),
+        leafTarget);
+    Assert.assertEquals(0, cache.getHits());
+    Assert.assertEquals(1, cache.getMisses());
+
+    Assert.assertSame(leafTarget, cache.dispatch(leafClass, doSomething));
+    Assert.assertEquals(1, cache.getHits());
+
+    // abstract classes are never runtime types, but call sites may still name them
+    Assert.assertFalse(cache.dispatch(superclass, doSomething).isPresent());
+    Assert.assertTrue(cache.resolveDeclared(superclass, doSomething).isPresent());
+
+    Set<MethodSignature> targets =
+        cache.virtualTargets(interfaceMethod.getDeclClassType(), doSomething);
+    Assert.assertTrue(targets.contains(interfaceMethod));
+    Assert.assertTrue(targets.contains(leafTarget.get()));
+    Assert.assertFalse(
+        targets.contains(
+            identifierFactory.parseMethodSignature(
+                "<target.exercise2.Superclass: void doSomething()>")));
+    Assert.assertSame(targets, cache.virtualTargets(interfaceMethod.getDeclClassType(), doSomething));
+  }
+}
@@ -0,0 +1,100 @@
+package base;
+
+import analysis.CallGraph;
+import analysis.Edge;
+import analysis.FrozenCallGraph;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import org.junit.Assert;
+import org.junit.Test;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.signatures.PackageName;
+import sootup.core.types.ClassType;
+import sootup.java.core.types.JavaClassType;
+
+public class FrozenCallGraphTest {
+
+  private static MethodSignature method(String className, String name) {
+    ClassType type = new JavaClassType(className, new PackageName("some.package"));
+    return new MethodSignature(
+        type, name, Collections.emptyList(), sootup.core.types.PrimitiveType.getBoolean());
+  }
+
+  @Test
+  public void frozenGraphAnswersLikeCallGraph() {
+    MethodSignature source = method("TestClass", "sourceMethod");
+    MethodSignature target = method("TestClass", "targetMethod");
+    MethodSignature firstMethod = method("AnotherClass", "firstMethod");
+    MethodSignature secondMethod = method("AnotherClass", "secondMethod");
+    MethodSignature isolated = method("AnotherClass", "isolated");
+    MethodSignature unknown = method("AnotherClass", "unknown");
+
+    CallGraph testCG = new CallGraph("Test");
+    testCG.addNode(source);
+    testCG.addNode(target);
+    testCG.addNode(firstMethod);
+    testCG.addNode(secondMethod);
+    testCG.addNode(isolated);
+    testCG.addEdge(source, target);
+    testCG.addEdge(source, firstMethod);
+    testCG.addEdge(target, firstMethod);
+    testCG.addEdge(firstMethod, secondMethod);
+
+    FrozenCallGraph frozen = testCG.freeze();
+    Assert.assertEquals("Test", frozen.algorithm);
+    Assert.assertEquals(5, frozen.nodeCount());
+    Assert.assertEquals(4, frozen.edgeCount());
+    Assert.assertEquals(testCG.getNodes(), frozen.getNodes());
+    Assert.assertEquals(testCG.getEdges(), frozen.getEdges());
+
+    for (MethodSignature m : testCG.getNodes()) {
+      Assert.assertTrue(frozen.hasNode(m));
+      Assert.assertEquals(m, frozen.signatureOf(frozen.idOf(m)));
+      Assert.assertEquals(testCG.edgesOutOf(m), frozen.edgesOutOf(m));
+      Assert.assertEquals(testCG.edgesInto(m), frozen.edgesInto(m));
+      for (MethodSignature other : testCG.getNodes()) {
+        Assert.assertEquals(testCG.hasEdge(m, other), frozen.hasEdge(m, other));
+      }
+    }
+
+    Assert.assertFalse(frozen.hasNode(unknown));
+    Assert.assertEquals(-1, frozen.idOf(unknown));
+    Assert.assertTrue(frozen.edgesOutOf(unknown).isEmpty());
+    Assert.assertFalse(frozen.getEdges().contains(new Edge<>(target, source)));
+  }
+
+  @Test
+  public void primitiveIterationIsSorted() {
+    MethodSignature caller = method("Caller", "call");
+    CallGraph testCG = new CallGraph("Test");
+    testCG.addNode(caller);
+    for (int i = 0; i < 50; i++) {
+      MethodSignature callee = method("Callee", "m" + i);
+      testCG.addNode(callee);
+      testCG.addEdge(caller, callee);
+    }
+
+    FrozenCallGraph frozen = testCG.freeze();
+    int callerId = frozen.idOf(caller);
+    Assert.assertEquals(50, frozen.outDegree(callerId));
+
+    List<Integer> visited = new ArrayList<>();
+    PrimitiveIterator.OfInt successors = frozen.successors(callerId);
+    while (successors.hasNext()) {
+      int callee = successors.nextInt();
+      Assert.assertEquals(1, frozen.inDegree(callee));
+      Assert.assertEquals(callerId, frozen.predecessors(callee).nextInt());
+      visited.add(callee);
+    }
+
+    List<Integer> sorted = new ArrayList<>(visited);
+    Collections.sort(sorted);
+    Assert.assertEquals(sorted, visited);
+
+    List<Integer> forEach = new ArrayList<>();
+    frozen.forEachSuccessor(callerId, forEach::add);
+    Assert.assertEquals(visited, forEach);
+  }
+}
@@ -0,0 +1,121 @@
+package base;
+
+import analysis.CallGraph;
+import analysis.ResultCache;
+import analysis.exercise1.CHAAlgorithm;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import sootup.core.types.ClassType;
+import sootup.java.bytecode.inputlocation.JavaClassPathAnalysisInputLocation;
+import sootup.java.core.views.JavaView;
+
+public class IncrementalCallGraphTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  /** A copy of the test classes, so classes can be taken away and put back. */
+  private Path copyTestClasses() throws IOException {
+    Path source = Paths.get(System.getProperty("user.dir"), "target", "test-classes");
+    Path copy = folder.newFolder("classes").toPath();
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(source)) {
+      files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      Path target = copy.resolve(source.relativize(file).toString());
+      Files.createDirectories(target.getParent());
+      Files.copy(file, target);
+    }
+    return copy;
+  }
+
+  private static JavaView viewOf(Path classes) {
+    return new JavaView(new JavaClassPathAnalysisInputLocation(classes.toString()));
+  }
+
+  private static void assertSameGraph(CallGraph expected, CallGraph actual) {
+    Assert.assertEquals(expected.getNodes(), actual.getNodes());
+    Assert.assertEquals(expected.getEdges(), actual.getEdges());
+  }
+
+  @Test
+  public void updateMatchesRebuild() throws IOException {
+    Path classes = copyTestClasses();
+    Path exercise2 = classes.resolve("target").resolve("exercise2");
+    Path stash = folder.newFolder("stash").toPath();
+
+    JavaView view = viewOf(classes);
+    ClassType leaf = view.getIdentifierFactory().getClassType("target.exercise2.SixthLeafClass");
+    ClassType starter = view.getIdentifierFactory().getClassType("target.exercise2.Starter");
+    CHAAlgorithm cha = new CHAAlgorithm();
+    CallGraph cg = cha.constructCallGraph(view);
+    CallGraph original = new CallGraph(cg.algorithm, cg);
+    int fullBodyCount = cha.getReachableMethods().getVisitedBodyCount();
+    Assert.assertTrue(cg.getNodes().stream().anyMatch(m -> m.getDeclClassType().equals(leaf)));
+
+    // an override disappears: only the callers dispatching into its hierarchy are re-resolved
+    Files.move(exercise2.resolve("SixthLeafClass.class"), stash.resolve("SixthLeafClass.class"));
+    JavaView withoutLeaf = viewOf(classes);
+    cha.updateCallGraph(withoutLeaf, cg, Collections.singleton(leaf));
+    // the unchanged classes and the bodies of the re-resolved callers are taken over; only building
+    // the body of a changed class would load the view, as sootup resolves its local types
+    Assert.assertEquals(0, withoutLeaf.getCachedClassesCount());
+    assertSameGraph(new CHAAlgorithm().constructCallGraph(withoutLeaf), cg);
+    Assert.assertTrue(cg.getNodes().stream().noneMatch(m -> m.getDeclClassType().equals(leaf)));
+    Assert.assertTrue(cha.getReachableMethods().getVisitedBodyCount() < fullBodyCount);
+
+    // an entry point disappears, and with it the methods only it reached
+    Files.move(exercise2.resolve("Starter.class"), stash.resolve("Starter.class"));
+    JavaView withoutStarter = viewOf(classes);
+    cha.updateCallGraph(withoutStarter, cg, Collections.singleton(starter));
+    Assert.assertEquals(0, withoutStarter.getCachedClassesCount());
+    assertSameGraph(new CHAAlgorithm().constructCallGraph(withoutStarter), cg);
+    Assert.assertTrue(cg.getNodes().stream().noneMatch(m -> m.getDeclClassType().equals(starter)));
+
+    // both come back
+    Files.move(stash.resolve("SixthLeafClass.class"), exercise2.resolve("SixthLeafClass.class"));
+    Files.move(stash.resolve("Starter.class"), exercise2.resolve("Starter.class"));
+    cha.updateCallGraph(viewOf(classes), cg, Arrays.asList(leaf, starter));
+    assertSameGraph(original, cg);
+  }
+
+  @Test
+  public void cachedGraphIsRebuiltOnUpdate() throws IOException {
+    Path classes = copyTestClasses();
+    Path exercise2 = classes.resolve("target").resolve("exercise2");
+    Path stash = folder.newFolder("stash").toPath();
+    Files.move(exercise2.resolve("SixthLeafClass.class"), stash.resolve("SixthLeafClass.class"));
+
+    ResultCache cache =
+        new ResultCache(folder.newFolder("cache").toPath(), Collections.singletonList(classes));
+    CHAAlgorithm cold = new CHAAlgorithm();
+    cold.setResultCache(cache);
+    cold.constructCallGraph(cache.createView());
+
+    // read back, so this instance never saw the entry points and call sites of the graph
+    CHAAlgorithm cha = new CHAAlgorithm();
+    cha.setResultCache(cache);
+    JavaView view = cache.createView();
+    ClassType leaf = view.getIdentifierFactory().getClassType("target.exercise2.SixthLeafClass");
+    CallGraph cg = cha.constructCallGraph(view);
+    Assert.assertEquals(1, cache.getHits());
+
+    // the new override is only found by re-resolving the callers dispatching into its hierarchy
+    Files.move(stash.resolve("SixthLeafClass.class"), exercise2.resolve("SixthLeafClass.class"));
+    JavaView withLeaf = viewOf(classes);
+    cha.updateCallGraph(withLeaf, cg, Collections.singleton(leaf));
+    assertSameGraph(new CHAAlgorithm().constructCallGraph(withLeaf), cg);
+    Assert.assertTrue(cg.getNodes().stream().anyMatch(m -> m.getDeclClassType().equals(leaf)));
+  }
+}
@@ -0,0 +1,104 @@
+package base;
+
+import analysis.CallGraph;
+import analysis.LazyCallGraph;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+import sootup.core.signatures.MethodSignature;
+
+public class LazyCallGraphTest extends TestSetup {
+
+  /** Resolves the entry points of {@code eager} and all the lazy graph discovers from them. */
+  private static void walk(CallGraph eager, LazyCallGraph lazy) {
+    eager.getNodes().stream().filter(m -> m.getName().contains("main")).forEach(lazy::resolve);
+    List<MethodSignature> unresolved;
+    do {
+      unresolved =
+          lazy.getNodes().stream().filter(m -> !lazy.isResolved(m)).collect(Collectors.toList());
+      unresolved.forEach(lazy::edgesOutOf);
+    } while (!unresolved.isEmpty());
+  }
+
+  @Test
+  public void queryResolvesOneMethod() {
+    MethodSignature main =
+        view.getIdentifierFactory()
+            .parseMethodSignature("<target.exercise2.Starter: void main(java.lang.String[])>");
+    CallGraph eager = new CHAAlgorithm().constructCallGraph(view);
+
+    CHAAlgorithm cha = new CHAAlgorithm();
+    LazyCallGraph lazy = cha.constructLazyCallGraph(view);
+    Assert.assertEquals(eager.edgesOutOf(main), lazy.edgesOutOf(main));
+    Assert.assertEquals(1, lazy.getResolvedCount());
+    Assert.assertEquals(1, cha.getReachableMethods().getVisitedBodyCount());
+
+    // asking again or testing an edge does not resolve it again
+    for (MethodSignature callee : new ArrayList<>(lazy.edgesOutOf(main))) {
+      Assert.assertTrue(lazy.hasEdge(main, callee));
+      Assert.assertFalse(lazy.isResolved(callee));
+    }
+    Assert.assertEquals(1, cha.getReachableMethods().getBodyVisitCount());
+  }
+
+  @Test
+  public void walkEndsWithEagerGraph() {
+    CallGraph chaGraph = new CHAAlgorithm().constructCallGraph(view);
+    LazyCallGraph lazyCha = new CHAAlgorithm().constructLazyCallGraph(view);
+    walk(chaGraph, lazyCha);
+    Assert.assertEquals(chaGraph.getNodes(), lazyCha.getNodes());
+    Assert.assertEquals(chaGraph.getEdges(), lazyCha.getEdges());
+
+    CallGraph rtaGraph = new RTAAlgorithm().constructCallGraph(view);
+    LazyCallGraph lazyRta = new RTAAlgorithm().constructLazyCallGraph(view);
+    Assert.assertEquals("RTA", lazyRta.algorithm);
+    walk(rtaGraph, lazyRta);
+    Assert.assertEquals(rtaGraph.getNodes(), lazyRta.getNodes());
+    Assert.assertEquals(rtaGraph.getEdges(), lazyRta.getEdges());
+  }
+
+  @Test
+  public void rtaAnswersColdQueriesLikeEagerGraph() {
+    CallGraph eager = new RTAAlgorithm().constructCallGraph(view);
+    for (MethodSignature method : eager.getNodes()) {
+      // a fresh graph per query, so no earlier resolution contributes instantiated types
+      RTAAlgorithm rta = new RTAAlgorithm();
+      LazyCallGraph lazy = rta.constructLazyCallGraph(view);
+      Assert.assertEquals(method.toString(), eager.edgesOutOf(method), lazy.edgesOutOf(method));
+      Assert.assertEquals(1, lazy.getResolvedCount());
+      Assert.assertEquals(1, rta.getReachableMethods().getReachable().size());
+    }
+  }
+
+  @Test
+  public void rtaQueriesInterleaveWithEagerConstruction() {
+    MethodSignature main =
+        view.getIdentifierFactory()
+            .parseMethodSignature("<target.exercise2.Starter: void main(java.lang.String[])>");
+    RTAAlgorithm alone = new RTAAlgorithm();
+    CallGraph eager = alone.constructCallGraph(view);
+    LazyCallGraph expected = new RTAAlgorithm().constructLazyCallGraph(view);
+    walk(eager, expected);
+
+    RTAAlgorithm rta = new RTAAlgorithm();
+    LazyCallGraph lazy = rta.constructLazyCallGraph(view);
+    lazy.edgesOutOf(main);
+    // the same instance constructs a call graph between the queries
+    CallGraph interleaved = rta.constructCallGraph(view);
+    walk(eager, lazy);
+    Assert.assertEquals(expected.getNodes(), lazy.getNodes());
+    Assert.assertEquals(expected.getEdges(), lazy.getEdges());
+
+    // and the later queries leave the eager results alone
+    Assert.assertEquals(eager.getEdges(), interleaved.getEdges());
+    Assert.assertEquals(alone.getInstantiatedTypes(), rta.getInstantiatedTypes());
+    Assert.assertEquals(interleaved.getNodes(), rta.getReachableMethods().getReachable());
+    Assert.assertEquals(
+        alone.getReachableMethods().getBodyVisitCount(),
+        rta.getReachableMethods().getBodyVisitCount());
+  }
+}
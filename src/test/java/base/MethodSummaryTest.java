@@ -0,0 +1,46 @@
+package base;
+
+import analysis.BodyCache;
+import analysis.MethodSummary;
+import analysis.MethodSummary.CallKind;
+import org.junit.Assert;
+import org.junit.Test;
+import sootup.core.jimple.common.ref.JStaticFieldRef;
+import sootup.core.signatures.MethodSignature;
+
+public class MethodSummaryTest extends TestSetup {
+
+  @Test
+  public void scenarioMainIsSummarized() {
+    MethodSignature main =
+        view.getIdentifierFactory()
+            .parseMethodSignature(
+                "<target.exercise3.SimpleScenario: void main(java.lang.String[])>");
+    MethodSummary summary = new BodyCache(view).summaryOf(main);
+
+    // two constructors, the static factory, three interface and one virtual call
+    Assert.assertEquals(7, summary.getCallSiteCount());
+    int virtualCalls = 0;
+    for (int i = 0; i < summary.getCallSiteCount(); i++) {
+      CallKind kind = summary.getCallKind(i);
+      Assert.assertEquals(kind != CallKind.STATIC, summary.getReceiver(i) != null);
+      Assert.assertEquals(kind == CallKind.STATIC, summary.getResult(i) != null);
+      if (kind == CallKind.VIRTUAL) {
+        virtualCalls++;
+      }
+    }
+    Assert.assertEquals(4, virtualCalls);
+
+    Assert.assertEquals(2, summary.getAllocationCount());
+    Assert.assertEquals(
+        "target.exercise2.SixthLeafClass", summary.getAllocation(1).getType().toString());
+    Assert.assertEquals(1, summary.getCastCount());
+    Assert.assertEquals(1, summary.getLoadCount());
+    Assert.assertTrue(summary.getLoadSource(0) instanceof JStaticFieldRef);
+    Assert.assertEquals(1, summary.getStoreCount());
+    Assert.assertTrue(summary.getStoreTarget(0) instanceof JStaticFieldRef);
+    Assert.assertEquals(1, summary.getIdentityCount());
+    Assert.assertEquals(0, summary.getIdentityParameter(0));
+    Assert.assertEquals(0, summary.getReturnCount());
+  }
+}
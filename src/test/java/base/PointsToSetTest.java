@@ -0,0 +1,118 @@
+package base;
+
+import analysis.exercise4.PointsToSet;
+import analysis.exercise4.PointsToSet.Representation;
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PointsToSetTest {
+
+  @Test
+  public void representationFollowsContents() {
+    PointsToSet set = PointsToSet.of(5, 3, 200);
+    Assert.assertEquals(Representation.SORTED_ARRAY, set.getRepresentation());
+    Assert.assertArrayEquals(new int[] {3, 5, 200}, set.toArray());
+    Assert.assertFalse(set.add(5));
+
+    for (int id = 0; id < 200; id++) {
+      set.add(id);
+    }
+    Assert.assertEquals(Representation.DENSE_BITSET, set.getRepresentation());
+    Assert.assertEquals(201, set.size());
+    Assert.assertTrue(set.contains(200));
+    Assert.assertFalse(set.contains(201));
+
+    PointsToSet spread = new PointsToSet();
+    for (int id = 0; id <= PointsToSet.MAX_ARRAY_SIZE; id++) {
+      spread.add(id * 1000);
+    }
+    Assert.assertEquals(Representation.SPARSE_BITSET, spread.getRepresentation());
+    Assert.assertTrue(spread.contains(16000));
+    Assert.assertFalse(spread.contains(16001));
+  }
+
+  @Test
+  public void unionWithDeltaAndFilter() {
+    PointsToSet target = PointsToSet.of(1, 2);
+    PointsToSet delta = new PointsToSet();
+    PointsToSet filter = PointsToSet.of(2, 3, 4, 100);
+
+    Assert.assertTrue(target.addAll(PointsToSet.of(2, 3, 5, 100), filter, delta));
+    Assert.assertArrayEquals(new int[] {1, 2, 3, 100}, target.toArray());
+    Assert.assertArrayEquals(new int[] {3, 100}, delta.toArray());
+    Assert.assertFalse(target.addAll(PointsToSet.of(3, 5), filter, delta));
+
+    target.retainAll(PointsToSet.of(1, 100, 7));
+    Assert.assertArrayEquals(new int[] {1, 100}, target.toArray());
+  }
+
+  @Test
+  public void copiesShareUntilWritten() {
+    PointsToSet source = PointsToSet.of(1, 2, 3);
+    PointsToSet copy = source.copy();
+    Assert.assertTrue(copy.sharesWith(source));
+
+    PointsToSet empty = new PointsToSet();
+    PointsToSet delta = new PointsToSet();
+    Assert.assertTrue(empty.addAll(source, null, delta));
+    Assert.assertTrue(empty.sharesWith(source));
+    Assert.assertTrue(delta.sharesWith(source));
+
+    copy.add(4);
+    Assert.assertFalse(copy.sharesWith(source));
+    Assert.assertArrayEquals(new int[] {1, 2, 3}, source.toArray());
+    Assert.assertArrayEquals(new int[] {1, 2, 3}, empty.toArray());
+    Assert.assertEquals(4, copy.size());
+
+    PointsToSet.MemoryReport report = new PointsToSet.MemoryReport();
+    report.add(source);
+    report.add(empty);
+    report.add(copy);
+    Assert.assertEquals(3, report.getCount(Representation.SORTED_ARRAY));
+    Assert.assertEquals(1, report.getSharedSetCount());
+  }
+
+  @Test
+  public void agreesWithBitSet() {
+    Random random = new Random(42);
+    for (int round = 0; round < 200; round++) {
+      int range = 1 + random.nextInt(5000);
+      PointsToSet set = new PointsToSet();
+      PointsToSet filter = new PointsToSet();
+      BitSet expected = new BitSet();
+      BitSet accepted = new BitSet();
+      for (int i = random.nextInt(100); i > 0; i--) {
+        int id = random.nextInt(range);
+        Assert.assertEquals(!expected.get(id), set.add(id));
+        expected.set(id);
+        int allowed = random.nextInt(range);
+        filter.add(allowed);
+        accepted.set(allowed);
+      }
+      PointsToSet other = new PointsToSet();
+      BitSet otherExpected = new BitSet();
+      for (int i = random.nextInt(100); i > 0; i--) {
+        int id = random.nextInt(range);
+        other.add(id);
+        otherExpected.set(id);
+      }
+
+      PointsToSet delta = new PointsToSet();
+      set.addAll(other, filter, delta);
+      BitSet fresh = (BitSet) otherExpected.clone();
+      fresh.and(accepted);
+      fresh.andNot(expected);
+      expected.or(fresh);
+
+      Assert.assertArrayEquals(expected.stream().toArray(), set.toArray());
+      Assert.assertArrayEquals(fresh.stream().toArray(), delta.toArray());
+      Assert.assertEquals(expected.cardinality(), set.size());
+
+      set.retainAll(other);
+      expected.and(otherExpected);
+      Assert.assertArrayEquals(expected.stream().toArray(), set.toArray());
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package base;
+
+import analysis.CallGraph;
+import analysis.ResultCache;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise3.VTAAlgorithm;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import sootup.java.core.views.JavaView;
+
+public class ResultCacheTest extends TestSetup {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<Path> inputs =
+      Collections.singletonList(
+          Paths.get(System.getProperty("user.dir"), "target", "test-classes"));
+
+  @Test
+  public void unchangedInputIsReadBack() throws IOException {
+    File directory = folder.newFolder("cache");
+    ResultCache cache = new ResultCache(directory.toPath(), inputs);
+    JavaView cold = cache.createView();
+    CHAAlgorithm cha = new CHAAlgorithm();
+    cha.setResultCache(cache);
+    CallGraph computed = cha.constructCallGraph(cold);
+    Assert.assertEquals(1, cache.getMisses());
+
+    // a later run on the same input starts from the directory
+    ResultCache restarted = new ResultCache(directory.toPath(), inputs);
+    JavaView view = restarted.createView();
+    Assert.assertEquals(cache.getFingerprint(cold), restarted.getFingerprint(view));
+    CHAAlgorithm warm = new CHAAlgorithm(4);
+    warm.setResultCache(restarted);
+    CallGraph cached = warm.constructCallGraph(view);
+    Assert.assertEquals(1, restarted.getHits());
+    Assert.assertEquals(computed.algorithm, cached.algorithm);
+    Assert.assertEquals(computed.getNodes(), cached.getNodes());
+    Assert.assertEquals(computed.getEdges(), cached.getEdges());
+    Assert.assertEquals(computed.getNodes(), warm.getReachableMethods().getReachable());
+
+    // the options are part of the key
+    VTAAlgorithm perMethod = new VTAAlgorithm();
+    perMethod.setResultCache(restarted);
+    perMethod.constructCallGraph(view);
+    VTAAlgorithm wholeProgram = new VTAAlgorithm(true);
+    wholeProgram.setResultCache(restarted);
+    wholeProgram.constructCallGraph(view);
+    Assert.assertEquals(2, restarted.getMisses());
+    Assert.assertEquals(3, entries(directory));
+  }
+
+  @Test
+  public void changedContentChangesFingerprint() throws IOException {
+    File directory = folder.newFolder("cache");
+    File input = folder.newFolder("input");
+    Path classFile = input.toPath().resolve("A.class");
+    Files.write(classFile, new byte[] {1, 2, 3});
+    List<Path> changingInputs = Collections.singletonList(input.toPath());
+
+    Path cache = directory.toPath();
+    ResultCache running = new ResultCache(cache, changingInputs);
+    String first = running.getFingerprint(running.createView());
+    Assert.assertEquals(first, fingerprintOf(new ResultCache(cache, changingInputs)));
+
+    // same size, so only the modification time tells the content apart without reading it
+    Files.write(classFile, new byte[] {1, 2, 4});
+    Files.setLastModifiedTime(classFile, FileTime.fromMillis(1_000_000));
+    String changed = fingerprintOf(new ResultCache(cache, changingInputs));
+    Assert.assertNotEquals(first, changed);
+    // taken again for every view
+    Assert.assertEquals(changed, fingerprintOf(running));
+
+    // restoring the content restores the fingerprint, whatever the modification time
+    Files.write(classFile, new byte[] {1, 2, 3});
+    Files.setLastModifiedTime(classFile, FileTime.fromMillis(2_000_000));
+    Assert.assertEquals(first, fingerprintOf(new ResultCache(cache, changingInputs)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void viewsOfUnknownInputAreRejected() throws IOException {
+    ResultCache cache = new ResultCache(folder.newFolder("cache").toPath(), inputs);
+    CHAAlgorithm cha = new CHAAlgorithm();
+    cha.setResultCache(cache);
+    // the same input, but read through a view the cache cannot check
+    cha.constructCallGraph(view);
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+    // every entry exceeds the size, so only the newest one stays
+    File directory = folder.newFolder("cache");
+    ResultCache cache = new ResultCache(directory.toPath(), inputs, 1);
+    JavaView view = cache.createView();
+    CHAAlgorithm cha = new CHAAlgorithm();
+    cha.setResultCache(cache);
+    cha.constructCallGraph(view);
+    VTAAlgorithm vta = new VTAAlgorithm();
+    vta.setResultCache(cache);
+    vta.constructCallGraph(view);
+    Assert.assertEquals(1, cache.getEvictions());
+    Assert.assertEquals(1, entries(directory));
+
+    vta.constructCallGraph(view);
+    Assert.assertEquals(1, cache.getHits());
+  }
+
+  @Test
+  public void damagedEntriesAreMissesAndDeleted() throws IOException {
+    File directory = folder.newFolder("cache");
+    ResultCache cache = new ResultCache(directory.toPath(), inputs);
+    JavaView view = cache.createView();
+    CHAAlgorithm cha = new CHAAlgorithm();
+    cha.setResultCache(cache);
+    CallGraph computed = cha.constructCallGraph(view);
+    Path entry = onlyEntry(directory);
+
+    // intact structure, but no signature parses
+    byte[] bytes = Files.readAllBytes(entry);
+    for (int i = 0; i < bytes.length; i++) {
+      if (bytes[i] == '<') {
+        bytes[i] = '#';
+      }
+    }
+    Files.write(entry, bytes);
+    Assert.assertNull(cache.load(view, computed.algorithm, ""));
+    Assert.assertEquals(2, cache.getMisses());
+    Assert.assertFalse(Files.exists(entry));
+
+    // cut off
+    cha.constructCallGraph(view);
+    bytes = Files.readAllBytes(entry);
+    Files.write(entry, Arrays.copyOf(bytes, bytes.length - 1));
+    Assert.assertNull(cache.load(view, computed.algorithm, ""));
+    Assert.assertEquals(4, cache.getMisses());
+    Assert.assertFalse(Files.exists(entry));
+
+    // recomputed and stored again
+    Assert.assertEquals(computed.getEdges(), cha.constructCallGraph(view).getEdges());
+    Assert.assertEquals(computed.getEdges(), cha.constructCallGraph(view).getEdges());
+    Assert.assertEquals(1, cache.getHits());
+  }
+
+  private static String fingerprintOf(ResultCache cache) throws IOException {
+    return cache.getFingerprint(cache.createView());
+  }
+
+  private static Path onlyEntry(File directory) {
+    File[] entries = directory.listFiles((dir, name) -> name.endsWith(".cg"));
+    Assert.assertNotNull(entries);
+    Assert.assertEquals(1, entries.length);
+    return entries[0].toPath();
+  }
+
+  private static int entries(File directory) {
+    File[] entries = directory.listFiles((dir, name) -> name.endsWith(".cg"));
+    return entries == null ? 0 : entries.length;
+  }
+}
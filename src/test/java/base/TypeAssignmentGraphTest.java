@@ -0,0 +1,107 @@
+package base;
+
+import analysis.exercise3.TypeAssignmentGraph;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import sootup.core.signatures.PackageName;
+import sootup.core.types.ClassType;
+import sootup.java.core.jimple.basic.JavaLocal;
+import sootup.java.core.types.JavaClassType;
+
+public class TypeAssignmentGraphTest {
+
+  private static final ClassType LEAF = new JavaClassType("Leaf", new PackageName("some.package"));
+  private static final ClassType OTHER = new JavaClassType("Other", new PackageName("some.package"));
+
+  private static JavaLocal local(String name) {
+    return new JavaLocal(name, LEAF, Collections.emptyList());
+  }
+
+  @Test
+  public void nodesEdgesAndTags() {
+    TypeAssignmentGraph tag = new TypeAssignmentGraph();
+    int a = tag.addNode(local("a"));
+    int b = tag.addNode(local("b"));
+
+    // locals are identified by name
+    Assert.assertEquals(a, tag.addNode(local("a")));
+    Assert.assertEquals(-1, tag.idOf(local("c")));
+    Assert.assertEquals(2, tag.nodeCount());
+
+    Assert.assertTrue(tag.addEdge(a, b));
+    Assert.assertFalse(tag.addEdge(local("a"), local("b")));
+    Assert.assertTrue(tag.containsEdge(a, b));
+    Assert.assertFalse(tag.containsEdge(b, a));
+    Assert.assertEquals(1, tag.edgeCount());
+
+    List<Integer> successors = new ArrayList<>();
+    tag.forEachSuccessor(a, successors::add);
+    Assert.assertEquals(Collections.singletonList(b), successors);
+
+    Assert.assertTrue(tag.tagNode(a, LEAF));
+    Assert.assertFalse(tag.tagNode(a, LEAF));
+    tag.tagNode(b, OTHER);
+    tag.tagsOf(b).or(tag.tagsOf(a));
+    Assert.assertEquals(2, tag.getNodeTags(local("b")).size());
+    Assert.assertTrue(tag.getNodeTags(local("b")).contains(LEAF));
+    Assert.assertTrue(tag.getNodeTags(local("c")).isEmpty());
+  }
+
+  @Test
+  public void growsPastInitialCapacity() {
+    TypeAssignmentGraph tag = new TypeAssignmentGraph();
+    for (int i = 0; i < 100; i++) {
+      tag.addNode(local("l" + i));
+      if (i > 0) {
+        tag.addEdge(0, i);
+      }
+    }
+    Assert.assertEquals(100, tag.nodeCount());
+    Assert.assertEquals(99, tag.outDegree(0));
+    Assert.assertTrue(tag.containsEdge(0, 99));
+    Assert.assertFalse(tag.containsEdge(99, 0));
+
+    // duplicates are still found once the edge set has been rehashed
+    for (int i = 1; i < 100; i++) {
+      Assert.assertFalse(tag.addEdge(0, i));
+    }
+    Assert.assertEquals(99, tag.edgeCount());
+
+    Assert.assertFalse(tag.containsEdge(0, 0));
+    Assert.assertTrue(tag.addEdge(0, 0));
+    Assert.assertTrue(tag.containsEdge(0, 0));
+    Assert.assertFalse(tag.addEdge(0, 0));
+  }
+
+  @Test
+  public void propagateCollapsesCycles() {
+    TypeAssignmentGraph tag = new TypeAssignmentGraph();
+    // a -> b <-> c -> d, e -> c, f isolated
+    int a = tag.addNode(local("a"));
+    int b = tag.addNode(local("b"));
+    int c = tag.addNode(local("c"));
+    int d = tag.addNode(local("d"));
+    int e = tag.addNode(local("e"));
+    int f = tag.addNode(local("f"));
+    tag.addEdge(a, b);
+    tag.addEdge(b, c);
+    tag.addEdge(c, b);
+    tag.addEdge(c, d);
+    tag.addEdge(e, c);
+    tag.tagNode(a, LEAF);
+    tag.tagNode(e, OTHER);
+    tag.tagNode(f, OTHER);
+
+    Assert.assertEquals(5, tag.propagate());
+
+    Assert.assertEquals(Collections.singleton(LEAF), tag.getNodeTags(local("a")));
+    Assert.assertEquals(2, tag.getNodeTags(local("b")).size());
+    Assert.assertEquals(tag.getNodeTags(local("b")), tag.getNodeTags(local("c")));
+    Assert.assertEquals(tag.getNodeTags(local("b")), tag.getNodeTags(local("d")));
+    Assert.assertEquals(Collections.singleton(OTHER), tag.getNodeTags(local("e")));
+    Assert.assertEquals(Collections.singleton(OTHER), tag.getNodeTags(local("f")));
+  }
+}
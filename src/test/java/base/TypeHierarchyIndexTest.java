@@ -0,0 +1,68 @@
+package base;
+
+import analysis.TypeHierarchyIndex;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import sootup.core.IdentifierFactory;
+import sootup.core.types.ClassType;
+
+public class TypeHierarchyIndexTest extends TestSetup {
+
+  private ClassType type(String name) {
+    IdentifierFactory identifierFactory = view.getIdentifierFactory();
+    return identifierFactory.getClassType("target.exercise2." + name);
+  }
+
+  @Test
+  public void subtypeQueries() {
+    TypeHierarchyIndex index = new TypeHierarchyIndex(view);
+
+    Assert.assertTrue(index.isSubtype(type("SixthLeafClass"), type("SixthLeafClass")));
+    Assert.assertTrue(index.isSubtype(type("SixthLeafClass"), type("LeafClass")));
+    Assert.assertTrue(index.isSubtype(type("SixthLeafClass"), type("Superclass")));
+    Assert.assertTrue(index.isSubtype(type("SixthLeafClass"), type("SomeInterface")));
+    Assert.assertTrue(
+        index.isSubtype(
+            type("Subclass"), view.getIdentifierFactory().getClassType("java.lang.Object")));
+    Assert.assertFalse(index.isSubtype(type("LeafClass"), type("SixthLeafClass")));
+    Assert.assertFalse(index.isSubtype(type("Specialization"), type("IntermediateClass")));
+    Assert.assertFalse(index.isSubtype(type("SomeInterface"), type("Superclass")));
+
+    Assert.assertTrue(index.isInterface(type("SomeInterface")));
+    Assert.assertFalse(index.isConcrete(type("Superclass")));
+    Assert.assertTrue(index.isConcrete(type("Subclass")));
+  }
+
+  @Test
+  public void concreteSubtypes() {
+    TypeHierarchyIndex index = new TypeHierarchyIndex(view);
+
+    Set<ClassType> expected = new HashSet<>();
+    for (String name :
+        new String[] {
+          "Subclass",
+          "Specialization",
+          "IntermediateClass",
+          "LeafClass",
+          "SixthLeafClass",
+          "OtherLeafClass",
+          "ThirdLeafClass",
+          "FourthLeafClass",
+          "FifthLeafClass"
+        }) {
+      expected.add(type(name));
+    }
+
+    List<ClassType> viaInterface = index.allConcreteSubtypes(type("SomeInterface"));
+    Assert.assertEquals(expected, new HashSet<>(viaInterface));
+    Assert.assertEquals(expected, new HashSet<>(index.allConcreteSubtypes(type("Superclass"))));
+    Assert.assertSame(viaInterface, index.allConcreteSubtypes(type("SomeInterface")));
+
+    Set<ClassType> leaves = new HashSet<>(index.allConcreteSubtypes(type("LeafClass")));
+    Assert.assertEquals(2, leaves.size());
+    Assert.assertTrue(leaves.contains(type("SixthLeafClass")));
+  }
+}
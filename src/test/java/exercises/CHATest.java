@@ -1,6 +1,7 @@
 package exercises;
 
 import analysis.CallGraph;
+import analysis.ReachableMethods;
 import analysis.exercise1.CHAAlgorithm;
 import base.TestSetup;
 import java.util.Set;
@@ -92,4 +93,23 @@ public class CHATest extends TestSetup {
     Assert.assertTrue(calledMethods.contains(exampleUpdate));
     Assert.assertTrue(calledMethods.contains(observerUpdate));
   }
+
+  @Test
+  public void parallelModeMatchesSequential() {
+    CallGraph parallelCg = new CHAAlgorithm(4).constructCallGraph(view);
+
+    Assert.assertEquals(cg.getNodes(), parallelCg.getNodes());
+    Assert.assertEquals(cg.getEdges(), parallelCg.getEdges());
+  }
+
+  @Test
+  public void everyBodyIsVisitedOnce() {
+    CHAAlgorithm cha = new CHAAlgorithm();
+    CallGraph chaCg = cha.constructCallGraph(view);
+    ReachableMethods reachable = cha.getReachableMethods();
+
+    Assert.assertEquals(chaCg.getNodes(), reachable.getReachable());
+    Assert.assertTrue(reachable.getVisitedBodyCount() > 0);
+    Assert.assertEquals(reachable.getVisitedBodyCount(), reachable.getBodyVisitCount());
+  }
 }
@@ -1,6 +1,7 @@
 package exercises;
 
 import analysis.CallGraph;
+import analysis.ReachableMethods;
 import analysis.exercise2.RTAAlgorithm;
 import base.TestSetup;
 import java.util.Set;
@@ -8,9 +9,11 @@ import org.junit.Assert;
 import org.junit.Test;
 import sootup.core.IdentifierFactory;
 import sootup.core.signatures.MethodSignature;
+import sootup.core.types.ClassType;
 
 public class RTATest extends TestSetup {
 
+  private final RTAAlgorithm rta;
   private final CallGraph cg;
   private final MethodSignature interfaceMethod;
   private final MethodSignature superclassMethod;
@@ -56,7 +59,7 @@ public class RTATest extends TestSetup {
         identifierFactory.parseMethodSignature(
             "<target.exercise2.Starter: void main(java.lang.String[])>");
 
-    RTAAlgorithm rta = new RTAAlgorithm();
+    rta = new RTAAlgorithm();
     cg = rta.constructCallGraph(view);
   }
 
@@ -74,4 +77,17 @@ public class RTATest extends TestSetup {
     Assert.assertFalse(callsFromMain.contains(thirdLeafMethod));
     Assert.assertFalse(callsFromMain.contains(fourthLeafMethod));
   }
+
+  @Test
+  public void instantiatedTypes() {
+    Set<ClassType> instantiated = rta.getInstantiatedTypes();
+
+    // allocated in generateObject, which main calls before dispatching on the result
+    Assert.assertTrue(instantiated.contains(leafMethod.getDeclClassType()));
+    Assert.assertTrue(instantiated.contains(subclassMethod.getDeclClassType()));
+    Assert.assertFalse(instantiated.contains(thirdLeafMethod.getDeclClassType()));
+
+    ReachableMethods reachable = rta.getReachableMethods();
+    Assert.assertEquals(reachable.getVisitedBodyCount(), reachable.getBodyVisitCount());
+  }
 }
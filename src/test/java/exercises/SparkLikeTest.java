@@ -0,0 +1,198 @@
+package exercises;
+
+import analysis.CallGraph;
+import analysis.DispatchCache;
+import analysis.exercise4.DemandDrivenPointsTo;
+import analysis.exercise4.HeapAbstraction;
+import analysis.exercise4.PagBuilder;
+import analysis.exercise4.PointerAssignmentGraph;
+import analysis.exercise4.PointsToSet;
+import analysis.exercise4.PointsToSolver;
+import analysis.exercise4.SparkLikeAlgorithm;
+import base.TestSetup;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import sootup.core.jimple.basic.Local;
+import sootup.core.jimple.common.expr.AbstractInstanceInvokeExpr;
+import sootup.core.jimple.common.expr.AbstractInvokeExpr;
+import sootup.core.jimple.common.stmt.Stmt;
+import sootup.core.signatures.MethodSignature;
+
+public class SparkLikeTest extends TestSetup {
+  private final SparkLikeAlgorithm spark;
+  private final CallGraph cg;
+
+  public SparkLikeTest() {
+    super();
+    spark = new SparkLikeAlgorithm();
+    cg = spark.constructCallGraph(view);
+  }
+
+  @Test
+  public void testScenario() {
+    assertScenario(cg);
+  }
+
+  @Test
+  public void onTheFlyScenario() {
+    SparkLikeAlgorithm onTheFly = new SparkLikeAlgorithm(true);
+    CallGraph onTheFlyCg = onTheFly.constructCallGraph(view);
+    assertScenario(onTheFlyCg);
+
+    // only reachable bodies enter the pointer assignment graph
+    Assert.assertEquals(onTheFlyCg.getNodes(), onTheFly.getPagBuilder().getMethods());
+    Assert.assertTrue(
+        onTheFly.getPagBuilder().getMethods().size()
+            < spark.getPagBuilder().getMethods().size());
+    for (MethodSignature method : onTheFlyCg.getNodes()) {
+      Assert.assertTrue(cg.edgesOutOf(method).containsAll(onTheFlyCg.edgesOutOf(method)));
+    }
+  }
+
+  @Test
+  public void waveSolverMatchesWorklistSolver() {
+    SparkLikeAlgorithm wave = new SparkLikeAlgorithm(4);
+    CallGraph waveCg = wave.constructCallGraph(view);
+    Assert.assertEquals(cg.getNodes(), waveCg.getNodes());
+    for (MethodSignature method : cg.getNodes()) {
+      Assert.assertEquals(cg.edgesOutOf(method), waveCg.edgesOutOf(method));
+    }
+
+    // both graphs get the same method variables and objects, field variables may be numbered apart
+    PointsToSolver worklistSolver = spark.getSolver();
+    PointsToSolver waveSolver = wave.getSolver();
+    PointerAssignmentGraph worklistPag = worklistSolver.getPag();
+    PointerAssignmentGraph wavePag = waveSolver.getPag();
+    Assert.assertEquals(worklistPag.variableCount(), wavePag.variableCount());
+    Map<String, Integer> waveVariables = new HashMap<>();
+    for (int v = 0; v < wavePag.variableCount(); v++) {
+      waveVariables.put(wavePag.variableKey(v).toString(), v);
+    }
+    for (int v = 0; v < worklistPag.variableCount(); v++) {
+      Integer waveVariable = waveVariables.get(worklistPag.variableKey(v).toString());
+      Assert.assertNotNull(worklistPag.variableKey(v).toString(), waveVariable);
+      Assert.assertEquals(worklistSolver.pointsTo(v), waveSolver.pointsTo(waveVariable));
+    }
+  }
+
+  @Test
+  public void heapAbstractions() {
+    int perSite = spark.getHeapAbstraction().getAbstractObjectCount();
+    Assert.assertEquals(spark.getSolver().getPag().objectCount(), perSite);
+
+    // merging only shrinks the heap; call targets depend on the types alone
+    Map<HeapAbstraction, Integer> policies = new HashMap<>();
+    policies.put(HeapAbstraction.mergeJdkTypes(), perSite);
+    // LeafClass is the only type allocated at two sites
+    policies.put(
+        HeapAbstraction.mergeTypes(Collections.singleton("target.exercise2.LeafClass")),
+        perSite - 1);
+    policies.put(HeapAbstraction.capPerType(1), perSite - 1);
+    for (Map.Entry<HeapAbstraction, Integer> policy : policies.entrySet()) {
+      SparkLikeAlgorithm merged = new SparkLikeAlgorithm();
+      merged.setHeapAbstraction(policy.getKey());
+      assertScenario(merged.constructCallGraph(view));
+      int objects = policy.getKey().getAbstractObjectCount();
+      Assert.assertTrue(policy.getKey().toString(), objects <= policy.getValue());
+      Assert.assertEquals(merged.getSolver().getPag().objectCount(), objects);
+    }
+  }
+
+  private void assertScenario(CallGraph cg) {
+    MethodSignature scenarioMain =
+        view.getIdentifierFactory()
+            .parseMethodSignature(
+                "<target.exercise3.SimpleScenario: void main(java.lang.String[])>");
+    Set<MethodSignature> callsFromMain = cg.edgesOutOf(scenarioMain);
+    assertCallExists(callsFromMain, "<target.exercise2.LeafClass: void doSomething()>");
+    assertCallExists(callsFromMain, "<target.exercise2.FifthLeafClass: void doSomething()>");
+    assertCallExists(callsFromMain, "<target.exercise2.SixthLeafClass: void doSomething()>");
+
+    assertCallMissing(callsFromMain, "<target.exercise2.SomeInterface: void doSomething()>");
+    assertCallMissing(callsFromMain, "<target.exercise2.FourthLeafClass: void doSomething()>");
+    assertCallMissing(callsFromMain, "<target.exercise2.IntermediateClass: void doSomething()>");
+    assertCallMissing(callsFromMain, "<target.exercise2.OtherLeafClass: void doSomething()>");
+    assertCallMissing(callsFromMain, "<target.exercise2.Subclass: void doSomething()>");
+  }
+
+  @Test
+  public void genericCall() {
+    MethodSignature starterMain =
+        view.getIdentifierFactory()
+            .parseMethodSignature("<target.exercise2.Starter: void main(java.lang.String[])>");
+    Set<MethodSignature> callsFromMain = cg.edgesOutOf(starterMain);
+    assertCallExists(callsFromMain, "<target.exercise2.LeafClass: void doSomething()>");
+    assertCallExists(callsFromMain, "<target.exercise2.OtherLeafClass: void doSomething()>");
+    assertCallExists(callsFromMain, "<target.exercise2.Specialization: void doSomething()>");
+    assertCallExists(callsFromMain, "<target.exercise2.Subclass: void doSomething()>");
+
+    assertCallMissing(callsFromMain, "<target.exercise2.ThirdLeafClass: void doSomething()>");
+    assertCallMissing(callsFromMain, "<target.exercise2.FourthLeafClass: void doSomething()>");
+  }
+
+  @Test
+  public void returnValuePointsToAllocation() {
+    MethodSignature getFifthLeafClass =
+        view.getIdentifierFactory()
+            .parseMethodSignature(
+                "<target.exercise3.SimpleScenario: target.exercise2.SomeInterface getFifthLeafClass()>");
+    PointsToSolver solver = spark.getSolver();
+    int returnVariable =
+        solver.getPag().findMethodVariable(getFifthLeafClass, PagBuilder.RETURN);
+    Assert.assertTrue(returnVariable >= 0);
+
+    PointsToSet objects = solver.pointsTo(returnVariable);
+    Assert.assertEquals(1, objects.size());
+    Assert.assertEquals(
+        "target.exercise2.FifthLeafClass",
+        solver.getPag().objectType(objects.toArray()[0]).toString());
+
+    PointsToSet.MemoryReport report = solver.memoryReport();
+    Assert.assertEquals(
+        solver.getPag().variableCount() - solver.getCollapsedVariableCount(), report.getSetCount());
+    Assert.assertTrue(report.getSharedSetCount() > 0);
+  }
+
+  @Test
+  public void demandDrivenQueries() {
+    MethodSignature scenarioMain =
+        view.getIdentifierFactory()
+            .parseMethodSignature(
+                "<target.exercise3.SimpleScenario: void main(java.lang.String[])>");
+    List<AbstractInvokeExpr> invokes = new ArrayList<>();
+    for (Stmt stmt : view.getMethod(scenarioMain).get().getBody().getStmts()) {
+      if (stmt.containsInvokeExpr()) {
+        invokes.add(stmt.getInvokeExpr());
+      }
+    }
+
+    // the targets of each call site together are the Spark-like edges
+    DemandDrivenPointsTo demand = new DemandDrivenPointsTo(view, new DispatchCache(view), 1000);
+    Set<MethodSignature> targets = new HashSet<>();
+    for (AbstractInvokeExpr invoke : invokes) {
+      targets.addAll(demand.targets(scenarioMain, invoke));
+    }
+    Assert.assertEquals(cg.edgesOutOf(scenarioMain), targets);
+
+    Local receiver = ((AbstractInstanceInvokeExpr) invokes.get(invokes.size() - 1)).getBase();
+    DemandDrivenPointsTo.Result result = demand.pointsTo(scenarioMain, receiver);
+    Assert.assertTrue(result.isComplete());
+    Assert.assertEquals("[target.exercise2.SixthLeafClass]", result.getTypes().toString());
+    Assert.assertTrue(demand.getCacheHitCount() > 0);
+
+    // without enough budget, the receiver may be anything CHA allows
+    DemandDrivenPointsTo tight = new DemandDrivenPointsTo(view, new DispatchCache(view), 1);
+    DemandDrivenPointsTo.Result fallback = tight.pointsTo(scenarioMain, receiver);
+    Assert.assertFalse(fallback.isComplete());
+    Assert.assertTrue(fallback.getObjects().isEmpty());
+    Assert.assertTrue(fallback.getTypes().size() > 1);
+    Assert.assertTrue(fallback.getTypes().containsAll(result.getTypes()));
+  }
+}
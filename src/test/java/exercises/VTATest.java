@@ -1,13 +1,16 @@
 package exercises;
 
 import analysis.CallGraph;
+import analysis.ReachableMethods;
 import analysis.exercise3.VTAAlgorithm;
 import base.TestSetup;
 import java.util.Set;
+import org.junit.Assert;
 import org.junit.Test;
 import sootup.core.signatures.MethodSignature;
 
 public class VTATest extends TestSetup {
+  private final VTAAlgorithm vta;
   private final CallGraph cg;
   private final MethodSignature scenarioMain;
 
@@ -18,12 +21,27 @@ public class VTATest extends TestSetup {
             .parseMethodSignature(
                 "<target.exercise3.SimpleScenario: void main(java.lang.String[])>");
 
-    VTAAlgorithm vta = new VTAAlgorithm();
+    vta = new VTAAlgorithm();
     cg = vta.constructCallGraph(view);
   }
 
   @Test
   public void testScenario() {
+    assertScenario(cg);
+  }
+
+  @Test
+  public void wholeProgramScenario() {
+    CallGraph wholeProgramCg = new VTAAlgorithm(true).constructCallGraph(view);
+    assertScenario(wholeProgramCg);
+
+    // types flow through the return value and the static field into the callees
+    assertCallExists(
+        wholeProgramCg.edgesOutOf(scenarioMain),
+        "<target.exercise3.SimpleScenario: target.exercise2.SomeInterface getFifthLeafClass()>");
+  }
+
+  private void assertScenario(CallGraph cg) {
     Set<MethodSignature> callsFromMain = cg.edgesOutOf(scenarioMain);
     assertCallExists(callsFromMain, "<target.exercise2.LeafClass: void doSomething()>");
     assertCallExists(callsFromMain, "<target.exercise2.FifthLeafClass: void doSomething()>");
@@ -37,4 +55,12 @@ public class VTATest extends TestSetup {
     assertCallMissing(callsFromMain, "<target.exercise2.Subclass: void doSomething()>");
     assertCallMissing(callsFromMain, "<target.exercise2.Superclass: void doSomething()>");
   }
+
+  @Test
+  public void bodyIsScannedOnce() {
+    ReachableMethods reachable = vta.getReachableMethods();
+    Assert.assertEquals(1, reachable.getBodyVisitCount(scenarioMain));
+    // peeking into a static factory is not a visit of its body
+    Assert.assertEquals(reachable.getVisitedBodyCount(), reachable.getBodyVisitCount());
+  }
 }